@@ -0,0 +1,129 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * The cost of associating a Context with the current thread, as paid by
+ * embeddings that enter a Context around each call into scripts, with and
+ * without a pool of Contexts, and of setting up a new top-level scope.
+ * The threaded benchmarks enter from several threads at once.
+ */
+@State(Scope.Thread)
+public class ContextBenchmark
+{
+    private final ContextFactory factory = new ContextFactory();
+    private final ContextFactory pooledFactory = new ContextFactory();
+
+    /**
+     * Factories shared by the threads of the threaded benchmarks.
+     */
+    @State(Scope.Benchmark)
+    public static class Shared
+    {
+        final ContextFactory factory = new ContextFactory();
+        final ContextFactory pooledFactory = new ContextFactory();
+
+        @Setup(Level.Trial)
+        public void setup() {
+            pooledFactory.initContextPool(64);
+        }
+    }
+
+    private final ContextAction action = new ContextAction() {
+        public Object run(Context cx) {
+            return cx;
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setup() {
+        pooledFactory.initContextPool(1);
+    }
+
+    /**
+     * A Context entered around each iteration.
+     */
+    @State(Scope.Thread)
+    public static class Entered
+    {
+        Context cx;
+
+        @Setup(Level.Iteration)
+        public void enter() {
+            cx = Context.enter();
+        }
+
+        @TearDown(Level.Iteration)
+        public void exit() {
+            cx = null;
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    public Object enterExit() {
+        Context cx = factory.enterContext();
+        Context.exit();
+        return cx;
+    }
+
+    @Benchmark
+    public Object enterExitPooled() {
+        Context cx = pooledFactory.enterContext();
+        Context.exit();
+        return cx;
+    }
+
+    @Benchmark
+    public Object enterExitNested(Entered entered) {
+        Context cx = Context.enter();
+        Context.exit();
+        return cx;
+    }
+
+    @Benchmark
+    public Object getCurrentContext(Entered entered) {
+        return Context.getCurrentContext();
+    }
+
+    @Benchmark
+    public Object call() {
+        return factory.call(action);
+    }
+
+    @Benchmark
+    public Object callPooled() {
+        return pooledFactory.call(action);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object callThreaded(Shared shared) {
+        return shared.factory.call(action);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object callPooledThreaded(Shared shared) {
+        return shared.pooledFactory.call(action);
+    }
+
+    @Benchmark
+    public Object initStandardObjects(Entered entered) {
+        return entered.cx.initStandardObjects();
+    }
+
+    @Benchmark
+    public Object initSealedStandardObjects(Entered entered) {
+        return entered.cx.initStandardObjects(null, true);
+    }
+}
@@ -0,0 +1,130 @@
+package org.mozilla.javascript.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+/**
+ * Calls from scripts into Java: static and instance methods, overload
+ * resolution, bean properties, wrapping of returned objects and access to
+ * Java arrays of primitive types.
+ */
+public class JavaInteropBenchmark extends RhinoState
+{
+    private static final int COUNT = 1000;
+
+    private static final String SOURCE =
+        "var JMath = java.lang.Math;\n" +
+        "function staticCall() {\n" +
+        "  var s = 0;\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) s += JMath.max(i, 10);\n" +
+        "  return s;\n" +
+        "}\n" +
+        "function instanceCall(list) {\n" +
+        "  var s = 0;\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) s += list.size();\n" +
+        "  return s;\n" +
+        "}\n" +
+        "function overloadedCall(sb) {\n" +
+        "  sb.setLength(0);\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) sb.append(i & 1 ? 'a' : i);\n" +
+        "  return sb;\n" +
+        "}\n" +
+        "function wrapResult(list) {\n" +
+        "  var r;\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) r = list.get(i & 15);\n" +
+        "  return r;\n" +
+        "}\n" +
+        "function beanProperty(list) {\n" +
+        "  var r;\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) r = list.empty;\n" +
+        "  return r;\n" +
+        "}\n" +
+        "function primitiveArray(a) {\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) a[i] = a[i] + 1;\n" +
+        "  return a;\n" +
+        "}\n" +
+        "var numbers = [];\n" +
+        "for (var i = 0; i < " + COUNT + "; i++) numbers.push(i / 2);\n" +
+        "function toPrimitiveArray() {\n" +
+        "  return java.nio.DoubleBuffer.wrap(numbers);\n" +
+        "}\n";
+
+    private Object list;
+    private Object builder;
+    private Function staticCall;
+    private Function instanceCall;
+    private Function overloadedCall;
+    private Function wrapResult;
+    private Function beanProperty;
+    private Object doubles;
+    private Function primitiveArray;
+    private Function toPrimitiveArray;
+
+    @Override
+    protected void init(Context cx, ScriptableObject scope) {
+        evaluate(cx, scope, SOURCE);
+        List<Object> values = new ArrayList<Object>();
+        for (int i = 0; i != 16; ++i) {
+            values.add(new StringBuilder().append(i));
+        }
+        list = Context.javaToJS(values, scope);
+        builder = Context.javaToJS(new StringBuilder(), scope);
+        staticCall = getFunction(scope, "staticCall");
+        instanceCall = getFunction(scope, "instanceCall");
+        overloadedCall = getFunction(scope, "overloadedCall");
+        wrapResult = getFunction(scope, "wrapResult");
+        beanProperty = getFunction(scope, "beanProperty");
+        doubles = Context.javaToJS(new double[COUNT], scope);
+        primitiveArray = getFunction(scope, "primitiveArray");
+        toPrimitiveArray = getFunction(scope, "toPrimitiveArray");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object staticCall() {
+        return staticCall.call(cx, scope, scope, ScriptRuntime.emptyArgs);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object instanceCall() {
+        return instanceCall.call(cx, scope, scope, new Object[] { list });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object overloadedCall() {
+        return overloadedCall.call(cx, scope, scope, new Object[] { builder });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object wrapResult() {
+        return wrapResult.call(cx, scope, scope, new Object[] { list });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object beanProperty() {
+        return beanProperty.call(cx, scope, scope, new Object[] { list });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object primitiveArray() {
+        return primitiveArray.call(cx, scope, scope, new Object[] { doubles });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object toPrimitiveArray() {
+        return toPrimitiveArray.call(cx, scope, scope, ScriptRuntime.emptyArgs);
+    }
+}
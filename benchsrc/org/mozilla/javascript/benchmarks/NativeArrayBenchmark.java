@@ -0,0 +1,201 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+/**
+ * Element access and the <code>Array.prototype</code> methods, including
+ * the ES5 iteration methods, on dense arrays of a thousand elements.
+ */
+public class NativeArrayBenchmark extends RhinoState
+{
+    private static final int COUNT = 1000;
+
+    private static final String SOURCE =
+        "var numbers = [];\n" +
+        "for (var i = 0; i < " + COUNT + "; i++) numbers.push((i * 7919) % " +
+            COUNT + ");\n" +
+        "function readElements(a) {\n" +
+        "  var s = 0;\n" +
+        "  for (var i = 0; i < a.length; i++) s += a[i];\n" +
+        "  return s;\n" +
+        "}\n" +
+        "function writeElements() {\n" +
+        "  var a = [];\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) a[i] = i;\n" +
+        "  return a;\n" +
+        "}\n" +
+        "function pushPop() {\n" +
+        "  var a = [];\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) a.push(i);\n" +
+        "  while (a.length > 0) a.pop();\n" +
+        "  return a;\n" +
+        "}\n" +
+        "function sort(a) {\n" +
+        "  return a.slice(0).sort(function(x, y) { return x - y; });\n" +
+        "}\n" +
+        "function join(a) { return a.join(','); }\n" +
+        "function indexOf(a) { return a.indexOf(-1); }\n" +
+        "function lastIndexOf(a) { return a.lastIndexOf(-1); }\n" +
+        "function slice(a) { return a.slice(1); }\n" +
+        "function reverse(a) { return a.reverse(); }\n" +
+        "function unshift(a) {\n" +
+        "  var b = [];\n" +
+        "  for (var i = 0; i < 100; i++) b.unshift(i);\n" +
+        "  return b;\n" +
+        "}\n" +
+        "function forEach(a) {\n" +
+        "  var s = 0;\n" +
+        "  a.forEach(function(x) { s += x; });\n" +
+        "  return s;\n" +
+        "}\n" +
+        "function map(a) { return a.map(function(x) { return x + 1; }); }\n" +
+        "function filter(a) {\n" +
+        "  return a.filter(function(x) { return (x & 1) == 0; });\n" +
+        "}\n" +
+        "function reduce(a) {\n" +
+        "  return a.reduce(function(s, x) { return s + x; }, 0);\n" +
+        "}\n" +
+        "function concat(a) { return a.concat(a, a); }\n" +
+        "function spliceShift(a) {\n" +
+        "  var b = a.slice(0);\n" +
+        "  b.splice(10, 100);\n" +
+        "  while (b.length > 0) b.shift();\n" +
+        "  return b;\n" +
+        "}\n";
+
+    private Scriptable numbers;
+    private Function readElements;
+    private Function writeElements;
+    private Function pushPop;
+    private Function sort;
+    private Function join;
+    private Function indexOf;
+    private Function lastIndexOf;
+    private Function slice;
+    private Function reverse;
+    private Function unshift;
+    private Function forEach;
+    private Function map;
+    private Function filter;
+    private Function reduce;
+    private Function concat;
+    private Function spliceShift;
+
+    @Override
+    protected void init(Context cx, ScriptableObject scope) {
+        evaluate(cx, scope, SOURCE);
+        numbers = (Scriptable)scope.get("numbers", scope);
+        readElements = getFunction(scope, "readElements");
+        writeElements = getFunction(scope, "writeElements");
+        pushPop = getFunction(scope, "pushPop");
+        sort = getFunction(scope, "sort");
+        join = getFunction(scope, "join");
+        indexOf = getFunction(scope, "indexOf");
+        lastIndexOf = getFunction(scope, "lastIndexOf");
+        slice = getFunction(scope, "slice");
+        reverse = getFunction(scope, "reverse");
+        unshift = getFunction(scope, "unshift");
+        forEach = getFunction(scope, "forEach");
+        map = getFunction(scope, "map");
+        filter = getFunction(scope, "filter");
+        reduce = getFunction(scope, "reduce");
+        concat = getFunction(scope, "concat");
+        spliceShift = getFunction(scope, "spliceShift");
+    }
+
+    private Object call(Function f) {
+        return f.call(cx, scope, scope, new Object[] { numbers });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object readElements() {
+        return call(readElements);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object writeElements() {
+        return call(writeElements);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object pushPop() {
+        return call(pushPop);
+    }
+
+    @Benchmark
+    public Object sort() {
+        return call(sort);
+    }
+
+    @Benchmark
+    public Object join() {
+        return call(join);
+    }
+
+    @Benchmark
+    public Object indexOf() {
+        return call(indexOf);
+    }
+
+    @Benchmark
+    public Object lastIndexOf() {
+        return call(lastIndexOf);
+    }
+
+    @Benchmark
+    public Object slice() {
+        return call(slice);
+    }
+
+    @Benchmark
+    public Object reverse() {
+        return call(reverse);
+    }
+
+    @Benchmark
+    public Object unshift() {
+        return call(unshift);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object forEach() {
+        return call(forEach);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object map() {
+        return call(map);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object filter() {
+        return call(filter);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object reduce() {
+        return call(reduce);
+    }
+
+    @Benchmark
+    public Object concat() {
+        return call(concat);
+    }
+
+    @Benchmark
+    public Object spliceShift() {
+        return call(spliceShift);
+    }
+}
@@ -0,0 +1,73 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * <code>JSON.parse</code> and <code>JSON.stringify</code> of a document
+ * of a few kilobytes mixing objects, arrays, strings and numbers.
+ */
+public class NativeJsonBenchmark extends RhinoState
+{
+    private static final String SOURCE =
+        "var doc = { name: 'benchmark', version: 3, items: [] };\n" +
+        "for (var i = 0; i < 100; i++) {\n" +
+        "  doc.items.push({ id: i, label: 'item \\\"' + i + '\\\"',\n" +
+        "                   price: i * 1.25, tags: ['a', 'b', 'c'],\n" +
+        "                   available: (i & 1) == 0, owner: null });\n" +
+        "}\n" +
+        "var text = JSON.stringify(doc);\n" +
+        "var indented = JSON.stringify(doc, null, 2);\n" +
+        "function reviver(key, value) {\n" +
+        "  return key == 'price' ? Math.round(value) : value;\n" +
+        "}\n";
+
+    private Object document;
+    private Object text;
+    private Object indented;
+    private Object indent;
+    private Function parse;
+    private Function stringify;
+    private Function reviver;
+
+    @Override
+    protected void init(Context cx, ScriptableObject scope) {
+        evaluate(cx, scope, SOURCE);
+        document = scope.get("doc", scope);
+        text = scope.get("text", scope);
+        indented = scope.get("indented", scope);
+        indent = Integer.valueOf(2);
+        ScriptableObject json = (ScriptableObject)scope.get("JSON", scope);
+        parse = getFunction(json, "parse");
+        stringify = getFunction(json, "stringify");
+        reviver = getFunction(scope, "reviver");
+    }
+
+    @Benchmark
+    public Object parse() {
+        return parse.call(cx, scope, scope, new Object[] { text });
+    }
+
+    @Benchmark
+    public Object parseIndented() {
+        return parse.call(cx, scope, scope, new Object[] { indented });
+    }
+
+    @Benchmark
+    public Object parseWithReviver() {
+        return parse.call(cx, scope, scope, new Object[] { text, reviver });
+    }
+
+    @Benchmark
+    public Object stringify() {
+        return stringify.call(cx, scope, scope, new Object[] { document });
+    }
+
+    @Benchmark
+    public Object stringifyIndented() {
+        return stringify.call(cx, scope, scope,
+                new Object[] { document, null, indent });
+    }
+}
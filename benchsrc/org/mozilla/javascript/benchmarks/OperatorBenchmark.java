@@ -0,0 +1,77 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+/**
+ * Operators whose runtime helpers need the Context: conditions testing
+ * objects, <code>typeof</code> of names and for-in loops over iterators.
+ */
+public class OperatorBenchmark extends RhinoState
+{
+    private static final int COUNT = 1000;
+
+    private static final String SOURCE =
+        "var objects = [{}, null, [], undefined];\n" +
+        "function objectConditions() {\n" +
+        "  var n = 0;\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) {\n" +
+        "    var o = objects[i & 3];\n" +
+        "    if (o) n++;\n" +
+        "    n += (o || objects[0]) ? 1 : 0;\n" +
+        "  }\n" +
+        "  return n;\n" +
+        "}\n" +
+        "function typeofName() {\n" +
+        "  var n = 0;\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) {\n" +
+        "    if (typeof objects == 'object') n++;\n" +
+        "  }\n" +
+        "  return n;\n" +
+        "}\n" +
+        "var entries = {};\n" +
+        "for (var i = 0; i < " + COUNT + "; i++) entries['k' + i] = i;\n" +
+        "function iterate() {\n" +
+        "  var n = 0;\n" +
+        "  for (var e in Iterator(entries)) n++;\n" +
+        "  return n;\n" +
+        "}\n";
+
+    private Function objectConditions;
+    private Function typeofName;
+    private Function iterate;
+
+    @Override
+    protected void init(Context cx, ScriptableObject scope) {
+        evaluate(cx, scope, SOURCE);
+        objectConditions = getFunction(scope, "objectConditions");
+        typeofName = getFunction(scope, "typeofName");
+        iterate = getFunction(scope, "iterate");
+    }
+
+    private Object call(Function f) {
+        return f.call(cx, scope, scope, ScriptRuntime.emptyArgs);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object objectConditions() {
+        return call(objectConditions);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object typeofName() {
+        return call(typeofName);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object iterate() {
+        return call(iterate);
+    }
+}
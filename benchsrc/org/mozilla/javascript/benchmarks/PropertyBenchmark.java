@@ -0,0 +1,104 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+/**
+ * Property access on plain objects, both from scripts and through the
+ * {@link ScriptableObject} API embeddings use.
+ */
+public class PropertyBenchmark extends RhinoState
+{
+    private static final int COUNT = 1000;
+
+    private static final String SOURCE =
+        "var o = { a: 1, b: 2, c: 3, x: 4, y: 5 };\n" +
+        "var proto = { inherited: 6 };\n" +
+        "function Derived() { this.own = 7; }\n" +
+        "Derived.prototype = proto;\n" +
+        "var derived = new Derived();\n" +
+        "var keys = [];\n" +
+        "for (var i = 0; i < 16; i++) keys.push('k' + i);\n" +
+        "function get(o) {\n" +
+        "  var s = 0;\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) s += o.x;\n" +
+        "  return s;\n" +
+        "}\n" +
+        "function put(o) {\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) o.x = i;\n" +
+        "  return o;\n" +
+        "}\n" +
+        "function getInherited(o) {\n" +
+        "  var s = 0;\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) s += o.inherited;\n" +
+        "  return s;\n" +
+        "}\n" +
+        "function putElem(keys) {\n" +
+        "  var o = {};\n" +
+        "  for (var i = 0; i < " + COUNT + "; i++) o[keys[i & 15]] = i;\n" +
+        "  return o;\n" +
+        "}\n";
+
+    private Scriptable object;
+    private Scriptable derived;
+    private Scriptable keys;
+    private Function get;
+    private Function put;
+    private Function getInherited;
+    private Function putElem;
+
+    @Override
+    protected void init(Context cx, ScriptableObject scope) {
+        evaluate(cx, scope, SOURCE);
+        object = (Scriptable)scope.get("o", scope);
+        derived = (Scriptable)scope.get("derived", scope);
+        keys = (Scriptable)scope.get("keys", scope);
+        get = getFunction(scope, "get");
+        put = getFunction(scope, "put");
+        getInherited = getFunction(scope, "getInherited");
+        putElem = getFunction(scope, "putElem");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object scriptGet() {
+        return get.call(cx, scope, scope, new Object[] { object });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object scriptPut() {
+        return put.call(cx, scope, scope, new Object[] { object });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object scriptGetInherited() {
+        return getInherited.call(cx, scope, scope, new Object[] { derived });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object scriptPutElem() {
+        return putElem.call(cx, scope, scope, new Object[] { keys });
+    }
+
+    @Benchmark
+    public Object apiGet() {
+        return ScriptableObject.getProperty(object, "x");
+    }
+
+    @Benchmark
+    public Object apiGetInherited() {
+        return ScriptableObject.getProperty(derived, "inherited");
+    }
+
+    @Benchmark
+    public void apiPut() {
+        ScriptableObject.putProperty(object, "y", "value");
+    }
+}
@@ -0,0 +1,169 @@
+package org.mozilla.javascript.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Kit;
+import org.mozilla.javascript.RegExpEngine;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.TopLevel;
+import org.mozilla.javascript.regexp.REJavaUtilRegex;
+import org.mozilla.javascript.regexp.REJoni;
+import org.mozilla.javascript.regexp.RERhino;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Common state of the Rhino benchmarks: a top-level scope set up once per
+ * trial, and a Context entered by the benchmark thread for each iteration
+ * so that entering it is not part of the measured time.
+ * <p>
+ * Every benchmark runs at each of the optimization levels given by the
+ * {@link #optimizationLevel} parameter. Subclasses compile their scripts in
+ * {@link #init(Context, ScriptableObject)}, which runs with a Context
+ * configured like the one the benchmark methods see.
+ */
+@State(Scope.Thread)
+public abstract class RhinoState
+{
+    /**
+     * System property with the directory holding the v8 and SunSpider
+     * suites. Defaults to <code>testsrc/benchmarks</code>.
+     */
+    public static final String BENCHMARKS_DIR = "rhino.benchmarks.dir";
+
+    @Param({"-1", "0", "9"})
+    public int optimizationLevel;
+
+    protected Context cx;
+    protected ScriptableObject scope;
+
+    @Setup(Level.Trial)
+    public void setUpScope() throws Exception {
+        Context cx = enterContext();
+        try {
+            // a TopLevel keeps using the builtin constructors after
+            // scripts assign their names, as regexp.js does with RegExp
+            TopLevel global = new TopLevel();
+            cx.initStandardObjects(global);
+            scope = global;
+            init(cx, scope);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownScope() throws Exception {
+        Context cx = enterContext();
+        try {
+            dispose(cx, scope);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void enter() {
+        cx = enterContext();
+    }
+
+    @TearDown(Level.Iteration)
+    public void exit() {
+        cx = null;
+        Context.exit();
+    }
+
+    /**
+     * Prepares the state for the benchmark methods.
+     * @param cx the current Context
+     * @param scope the top-level scope of the benchmark
+     */
+    protected abstract void init(Context cx, ScriptableObject scope)
+        throws Exception;
+
+    /**
+     * Releases what {@link #init(Context, ScriptableObject)} set up. Does
+     * nothing by default.
+     * @param cx the current Context
+     * @param scope the top-level scope of the benchmark
+     */
+    protected void dispose(Context cx, ScriptableObject scope)
+        throws Exception
+    {
+    }
+
+    /**
+     * Returns the factory of the RegExp engine to use, or null for the
+     * engine Rhino selects by default.
+     */
+    protected RegExpEngine.Factory getRegExpEngineFactory() {
+        return null;
+    }
+
+    private Context enterContext() {
+        Context cx = Context.enter();
+        cx.setOptimizationLevel(optimizationLevel);
+        RegExpEngine.Factory regExpEngineFactory = getRegExpEngineFactory();
+        if (regExpEngineFactory != null) {
+            cx.setRegExpEngineFactory(regExpEngineFactory);
+        }
+        return cx;
+    }
+
+    /**
+     * Returns the factory of a RegExp engine by the name also accepted by
+     * the <code>rhino.regexp.engine</code> system property.
+     */
+    static RegExpEngine.Factory createRegExpEngineFactory(String name) {
+        if ("rhino".equals(name)) {
+            return new RERhino.Factory();
+        } else if ("java.util.regex".equals(name)) {
+            return new REJavaUtilRegex.Factory();
+        } else if ("joni".equals(name)) {
+            return new REJoni.Factory();
+        }
+        throw new IllegalArgumentException("Unknown RegExp engine: " + name);
+    }
+
+    /**
+     * Returns a file of the benchmark suites.
+     * @param path the path of the file relative to the suites directory
+     */
+    static File getBenchmarkFile(String path) {
+        String dir = System.getProperty(BENCHMARKS_DIR, "testsrc/benchmarks");
+        return new File(dir, path);
+    }
+
+    /**
+     * Evaluates a script defining the functions a benchmark calls.
+     */
+    static void evaluate(Context cx, Scriptable scope, String source) {
+        cx.evaluateString(scope, source, "<benchmark>", 1, null);
+    }
+
+    static Function getFunction(Scriptable scope, String name) {
+        return (Function)ScriptableObject.getProperty(scope, name);
+    }
+
+    static Script compileFile(Context cx, File file) throws IOException {
+        Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            String source = Kit.readReader(in);
+            return cx.compileString(source, file.getName(), 1, null);
+        } finally {
+            in.close();
+        }
+    }
+}
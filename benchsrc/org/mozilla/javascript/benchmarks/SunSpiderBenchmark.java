@@ -0,0 +1,56 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.RegExpEngine;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Runs the tests of <code>testsrc/benchmarks/sunspider-0.9.1</code>. A
+ * test is compiled once per trial and each invocation executes it in a
+ * fresh scope sharing the standard objects, so that globals left over by
+ * one run do not leak into the next.
+ */
+public class SunSpiderBenchmark extends RhinoState
+{
+    @Param({"3d-cube", "3d-morph", "3d-raytrace",
+            "access-binary-trees", "access-fannkuch", "access-nbody",
+            "access-nsieve",
+            "bitops-3bit-bits-in-byte", "bitops-bits-in-byte",
+            "bitops-bitwise-and", "bitops-nsieve-bits",
+            "controlflow-recursive",
+            "crypto-aes", "crypto-md5", "crypto-sha1",
+            "date-format-tofte", "date-format-xparb",
+            "math-cordic", "math-partial-sums", "math-spectral-norm",
+            "regexp-dna",
+            "string-base64", "string-fasta", "string-tagcloud",
+            "string-unpack-code", "string-validate-input"})
+    public String test;
+
+    @Param({"rhino", "java.util.regex", "joni"})
+    public String regExpEngine;
+
+    private Script script;
+
+    @Override
+    protected RegExpEngine.Factory getRegExpEngineFactory() {
+        return createRegExpEngineFactory(regExpEngine);
+    }
+
+    @Override
+    protected void init(Context cx, ScriptableObject scope) throws Exception {
+        script = compileFile(cx, getBenchmarkFile(
+                "sunspider-0.9.1/" + test + ".js"));
+    }
+
+    @Benchmark
+    public Object run() {
+        Scriptable global = cx.newObject(scope);
+        global.setPrototype(scope);
+        global.setParentScope(null);
+        return script.exec(cx, global);
+    }
+}
@@ -0,0 +1,75 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.RegExpEngine;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Runs the suites of <code>testsrc/benchmarks/v8</code>. Each suite is
+ * loaded after <code>base.js</code> as <code>run.js</code> does, and a
+ * benchmark invocation calls the <code>run</code> function of every
+ * benchmark in the suite once. <code>Setup</code> and
+ * <code>TearDown</code> run once per trial, outside the measurement.
+ */
+public class V8Benchmark extends RhinoState
+{
+    @Param({"richards", "deltablue", "crypto", "raytrace", "earley-boyer",
+            "regexp", "splay"})
+    public String suite;
+
+    @Param({"rhino", "java.util.regex", "joni"})
+    public String regExpEngine;
+
+    private Scriptable[] benchmarks;
+    private Function[] runs;
+
+    @Override
+    protected RegExpEngine.Factory getRegExpEngineFactory() {
+        return createRegExpEngineFactory(regExpEngine);
+    }
+
+    @Override
+    protected void init(Context cx, ScriptableObject scope) throws Exception {
+        compileFile(cx, getBenchmarkFile("v8/base.js")).exec(cx, scope);
+        compileFile(cx, getBenchmarkFile("v8/" + suite + ".js")).exec(cx,
+                scope);
+        Scriptable suites = (Scriptable)ScriptableObject.getProperty(
+                (Scriptable)scope.get("BenchmarkSuite", scope), "suites");
+        Scriptable list = (Scriptable)ScriptableObject.getProperty(
+                (Scriptable)suites.get(0, suites), "benchmarks");
+        int length = (int)ScriptRuntime.toUint32(
+                ScriptableObject.getProperty(list, "length"));
+        benchmarks = new Scriptable[length];
+        runs = new Function[length];
+        for (int i = 0; i != length; ++i) {
+            benchmarks[i] = (Scriptable)list.get(i, list);
+            runs[i] = (Function)ScriptableObject.getProperty(benchmarks[i],
+                    "run");
+            ScriptableObject.callMethod(cx, benchmarks[i], "Setup",
+                    ScriptRuntime.emptyArgs);
+        }
+    }
+
+    @Override
+    protected void dispose(Context cx, ScriptableObject scope) {
+        for (int i = 0; i != benchmarks.length; ++i) {
+            ScriptableObject.callMethod(cx, benchmarks[i], "TearDown",
+                    ScriptRuntime.emptyArgs);
+        }
+    }
+
+    @Benchmark
+    public Object run() {
+        Object result = null;
+        for (int i = 0; i != runs.length; ++i) {
+            result = runs[i].call(cx, scope, benchmarks[i],
+                    ScriptRuntime.emptyArgs);
+        }
+        return result;
+    }
+}
@@ -4433,6 +4433,10 @@ final class ConstantPool
 
     int getWriteSize()
     {
+        if (itsTopIndex > MAX_POOL_INDEX + 1) {
+            throw new ClassFileWriter.ClassFileFormatException(
+                "Too many constants");
+        }
         return 2 + itsTop;
     }
 
@@ -4704,6 +4708,11 @@ final class ConstantPool
 
     void ensure(int howMuch)
     {
+        if (itsTopIndex >= MAX_POOL_INDEX) {
+            // the next entry would not be addressable by a 16 bit index
+            throw new ClassFileWriter.ClassFileFormatException(
+                "Too many constants");
+        }
         if (itsTop + howMuch > itsPool.length) {
             int newCapacity = itsPool.length * 2;
             if (itsTop + howMuch > newCapacity) {
@@ -4718,6 +4727,7 @@ final class ConstantPool
     private ClassFileWriter cfw;
 
     private static final int MAX_UTF_ENCODING_SIZE = 65535;
+    private static final int MAX_POOL_INDEX = 65535;
 
     private UintMap itsStringConstHash = new UintMap();
     private ObjToIntMap itsUtf8Hash = new ObjToIntMap();
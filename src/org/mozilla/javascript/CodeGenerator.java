@@ -52,6 +52,9 @@ import org.mozilla.javascript.ast.ScriptNode;
 import org.mozilla.javascript.ast.Jump;
 import org.mozilla.javascript.ast.FunctionNode;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+
 import de.pdf_scrutinizer.Scrutinizer;
 
 /**
@@ -87,6 +90,12 @@ class CodeGenerator extends Icode {
 
     private int exceptionTableTop;
 
+    // Set when nested functions are compiled by the executor of
+    // compilerEnv: the tasks not yet waited for, and the generators whose
+    // regexp literals are compiled afterwards by the calling thread.
+    private ConcurrentLinkedQueue<Future<?>> pendingTasks;
+    private ConcurrentLinkedQueue<CodeGenerator> pendingRegExps;
+
     // ECF_ or Expression Context Flags constants: for now only TAIL
     private static final int ECF_TAIL = 1 << 0;
 
@@ -104,7 +113,18 @@ class CodeGenerator extends Icode {
             scrutinizer.getOutput().treeICode(tree.toStringTree(tree));
         }
 
-        new NodeTransformer().transform(tree);
+        boolean lazy = compilerEnv.isLazyFunctionCompilation();
+        if (!lazy && compilerEnv.getCompilationExecutor() != null) {
+            pendingTasks = new ConcurrentLinkedQueue<Future<?>>();
+            pendingRegExps = new ConcurrentLinkedQueue<CodeGenerator>();
+        }
+        // nested functions are transformed separately when compiled
+        // lazily or in parallel
+        boolean transformNested = !lazy && pendingTasks == null;
+        new NodeTransformer().transform(tree, transformNested);
+        if (!transformNested && returnFunction) {
+            new NodeTransformer().transform(tree.getFunctionNode(0), false);
+        }
 
         if (Token.printTrees) {
             Context cx = Context.getCurrentContext();
@@ -118,10 +138,15 @@ class CodeGenerator extends Icode {
         } else {
             scriptOrFn = tree;
         }
+        ScriptSource scriptSource = tree.getScriptSource();
+        if (scriptSource != null) {
+            encodedSource = null;
+        }
         itsData = new InterpreterData(compilerEnv.getLanguageVersion(),
                                       scriptOrFn.getSourceName(),
                                       encodedSource,
                                       ((AstRoot)tree).isInStrictMode());
+        itsData.scriptSource = scriptSource;
         itsData.topLevel = true;
 
         if (returnFunction) {
@@ -129,9 +154,59 @@ class CodeGenerator extends Icode {
         } else {
             generateICodeFromTree(scriptOrFn);
         }
+        if (pendingTasks != null) {
+            awaitParallelFunctions();
+            if (Token.printICode) {
+                // the dump needs the Context of the calling thread
+                dumpICode(itsData);
+            }
+        }
         return itsData;
     }
 
+    /**
+     * Submit transformation and icode generation of this function to the
+     * executor.  Functions nested in it are submitted in turn by the task.
+     */
+    private void generateFunctionInParallel(CodeGenerator parent)
+    {
+        pendingTasks = parent.pendingTasks;
+        pendingRegExps = parent.pendingRegExps;
+        Runnable task = new Runnable() {
+            public void run() {
+                new NodeTransformer().transform(scriptOrFn, false);
+                generateFunctionICode();
+            }
+        };
+        pendingTasks.add(compilerEnv.getCompilationExecutor().submit(task));
+    }
+
+    private void awaitParallelFunctions()
+    {
+        // A task adds the futures of its nested functions before it
+        // completes, so the queue is empty only when all are done.
+        Future<?> task;
+        while ((task = pendingTasks.poll()) != null) {
+            Kit.getResult(task);
+        }
+        CodeGenerator gen;
+        while ((gen = pendingRegExps.poll()) != null) {
+            gen.compileRegExpLiterals();
+        }
+    }
+
+    /**
+     * Dump the icode of the nested functions, then of the function itself,
+     * in the order the sequential generation dumps it.
+     */
+    private static void dumpICode(InterpreterData idata)
+    {
+        for (int i = 0; i != idata.getFunctionCount(); i++) {
+            dumpICode(idata.itsNestedFunctions[i]);
+        }
+        Interpreter.dumpICode(idata);
+    }
+
     private void generateFunctionICode()
     {
         itsInFunctionFlag = true;
@@ -143,6 +218,7 @@ class CodeGenerator extends Icode {
         if (theFunction.getFunctionName() != null) {
             itsData.itsName = theFunction.getName();
         }
+        setMetricsKey();
         if (!theFunction.getIgnoreDynamicScope()) {
             if (compilerEnv.isUseDynamicScope()) {
                 itsData.useDynamicScope = true;
@@ -216,14 +292,44 @@ class CodeGenerator extends Icode {
         itsData.argIsConst = scriptOrFn.getParamAndVarConst();
         itsData.argCount = scriptOrFn.getParamCount();
 
-        itsData.encodedSourceStart = scriptOrFn.getEncodedSourceStart();
-        itsData.encodedSourceEnd = scriptOrFn.getEncodedSourceEnd();
+        setSourceBounds();
 
         if (literalIds.size() != 0) {
             itsData.literalIds = literalIds.toArray();
         }
 
-        if (Token.printICode) Interpreter.dumpICode(itsData);
+        // the icode of functions generated in parallel is dumped once
+        // all are done
+        if (Token.printICode && pendingTasks == null) {
+            Interpreter.dumpICode(itsData);
+        }
+    }
+
+    private void setSourceBounds()
+    {
+        if (itsData.scriptSource == null) {
+            itsData.encodedSourceStart = scriptOrFn.getEncodedSourceStart();
+            itsData.encodedSourceEnd = scriptOrFn.getEncodedSourceEnd();
+        } else if (scriptOrFn instanceof FunctionNode) {
+            int start = scriptOrFn.getAbsolutePosition();
+            itsData.encodedSourceStart = start;
+            itsData.encodedSourceEnd = start + scriptOrFn.getLength();
+        } else {
+            itsData.encodedSourceStart = 0;
+            itsData.encodedSourceEnd = itsData.scriptSource.length();
+        }
+    }
+
+    private void setMetricsKey()
+    {
+        // generators run in pieces, their calls are not recorded
+        if (compilerEnv.isGenerateFunctionMetrics()
+            && !((FunctionNode)scriptOrFn).isGenerator())
+        {
+            itsData.itsMetricsKey = FunctionMetrics.getFunctionKey(
+                itsData.itsName, itsData.itsSourceFile,
+                scriptOrFn.getBaseLineno());
+        }
     }
 
     private void generateNestedFunctions()
@@ -238,17 +344,66 @@ class CodeGenerator extends Icode {
             gen.compilerEnv = compilerEnv;
             gen.scriptOrFn = fn;
             gen.itsData = new InterpreterData(itsData);
-            gen.generateFunctionICode();
+            if (compilerEnv.isLazyFunctionCompilation()) {
+                gen.initLazyFunction();
+            } else if (pendingTasks != null) {
+                gen.generateFunctionInParallel(this);
+            } else {
+                gen.generateFunctionICode();
+            }
             array[i] = gen.itsData;
         }
         itsData.itsNestedFunctions = array;
     }
 
+    /**
+     * Record only what is needed to create the function object.  Its tree
+     * is transformed and its icode generated by
+     * {@link #generateLazyFunctionICode()} when it is first called.
+     */
+    private void initLazyFunction()
+    {
+        FunctionNode theFunction = (FunctionNode)scriptOrFn;
+
+        itsData.itsFunctionType = theFunction.getFunctionType();
+        if (theFunction.getFunctionName() != null) {
+            itsData.itsName = theFunction.getName();
+        }
+        setMetricsKey();
+        itsData.argCount = theFunction.getParamCount();
+        setSourceBounds();
+        // code buffers are allocated again on the first call
+        itsData.itsICode = null;
+        itsData.itsStringTable = null;
+        itsData.lazyCodeGenerator = this;
+    }
+
+    /**
+     * Generate icode for a function set up by {@link #initLazyFunction()}.
+     * Called at most once, with the function's InterpreterData locked.
+     */
+    void generateLazyFunctionICode()
+    {
+        itsData.init();
+        new NodeTransformer().transform(scriptOrFn, false);
+        generateFunctionICode();
+    }
+
     private void generateRegExpLiterals()
     {
-        int N = scriptOrFn.getRegexpCount();
-        if (N == 0) return;
+        if (scriptOrFn.getRegexpCount() == 0) return;
 
+        if (pendingRegExps != null) {
+            // compiled later on the thread that has the Context
+            pendingRegExps.add(this);
+        } else {
+            compileRegExpLiterals();
+        }
+    }
+
+    private void compileRegExpLiterals()
+    {
+        int N = scriptOrFn.getRegexpCount();
         Context cx = Context.getContext();
         RegExpProxy rep = ScriptRuntime.checkRegExpProxy(cx);
         Object[] array = new Object[N];
@@ -41,6 +41,7 @@
 package org.mozilla.javascript;
 
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.mozilla.javascript.ast.ErrorCollector;
 
@@ -83,6 +84,12 @@ public class CompilerEnvirons
         optimizationLevel = cx.getOptimizationLevel();
 
         generatingSource = cx.isGeneratingSource();
+        sourceRetention = cx.getSourceRetention();
+        // the debugger is notified of all functions at compile time
+        lazyFunctionCompilation = cx.isLazyFunctionCompilation()
+                                  && cx.getDebugger() == null;
+        compilationExecutor = cx.getCompilationExecutor();
+        generateFunctionMetrics = cx.getFunctionMetrics() != null;
         activationNames = cx.activationNames;
         
         // Observer code generation in compiled code :
@@ -213,6 +220,65 @@ public class CompilerEnvirons
         this.generatingSource = generatingSource;
     }
 
+    public final int getSourceRetention()
+    {
+        return sourceRetention;
+    }
+
+    /**
+     * Specify how the source of compiled scripts is kept.
+     * @see Context#setSourceRetention(int)
+     */
+    public void setSourceRetention(int retention)
+    {
+        this.sourceRetention = retention;
+    }
+
+    public final boolean isLazyFunctionCompilation()
+    {
+        return lazyFunctionCompilation;
+    }
+
+    /**
+     * Specify whether the interpreter generates code for nested functions
+     * only when they are first called.
+     * @see Context#setLazyFunctionCompilation(boolean)
+     */
+    public void setLazyFunctionCompilation(boolean lazy)
+    {
+        this.lazyFunctionCompilation = lazy;
+    }
+
+    public final ExecutorService getCompilationExecutor()
+    {
+        return compilationExecutor;
+    }
+
+    /**
+     * Set the executor used to compile functions in parallel, or null to
+     * compile on the calling thread only.
+     * @see Context#setCompilationExecutor(ExecutorService)
+     */
+    public void setCompilationExecutor(ExecutorService executor)
+    {
+        this.compilationExecutor = executor;
+    }
+
+    public final boolean isGenerateFunctionMetrics()
+    {
+        return generateFunctionMetrics;
+    }
+
+    /**
+     * Turn on or off code recording function calls in the Context's
+     * function metrics.
+     * @see Context#setFunctionMetrics(FunctionMetrics)
+     */
+    public void setGenerateFunctionMetrics(boolean generate)
+    {
+        this.generateFunctionMetrics = generate;
+    }
+
     /**
      * @return true iff code will be generated with callbacks to enable
      * instruction thresholds
@@ -324,6 +390,10 @@ public class CompilerEnvirons
     private boolean xmlAvailable;
     private int optimizationLevel;
     private boolean generatingSource;
+    private int sourceRetention;
+    private boolean lazyFunctionCompilation;
+    private ExecutorService compilationExecutor;
+    private boolean generateFunctionMetrics;
     private boolean strictMode;
     private boolean warningAsError;
     private boolean generateObserverCount;
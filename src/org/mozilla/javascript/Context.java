@@ -55,7 +55,9 @@ import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
 
+import org.mozilla.classfile.ClassFileWriter;
 import org.mozilla.javascript.ast.AstRoot;
 import org.mozilla.javascript.ast.ScriptNode;
 import org.mozilla.javascript.debug.DebuggableScript;
@@ -315,6 +317,51 @@ public class Context
      */
     public static final int FEATURE_ENHANCED_JAVA_ACCESS = 13;
 
+    /**
+     * Controls whether the legacy static properties of the RegExp
+     * constructor (<tt>RegExp.lastMatch</tt>, <tt>RegExp.$1</tt>,
+     * <tt>RegExp.input</tt>, ...) are updated by regular expression
+     * matches.
+     * <p>
+     * Disabling the feature means the matched string is not retained
+     * after a match and the static properties stay empty.
+     * <p>
+     * By default {@link #hasFeature(int)} returns true.
+     * @since 1.7 Release 3
+     */
+    public static final int FEATURE_REGEXP_STATICS = 14;
+
+    /**
+     * Keep the decompiler's encoded source of each script for
+     * <tt>Function.prototype.toString</tt>.  This is the default.
+     * @see #setSourceRetention(int)
+     * @since 1.7 Release 3
+     */
+    public static final int SOURCE_RETENTION_ENCODED = 0;
+
+    /**
+     * Keep the original text of each script and decompile functions
+     * from it on demand.
+     * @see #setSourceRetention(int)
+     * @since 1.7 Release 3
+     */
+    public static final int SOURCE_RETENTION_TEXT = 1;
+
+    /**
+     * Like {@link #SOURCE_RETENTION_TEXT}, but keep the text compressed.
+     * @see #setSourceRetention(int)
+     * @since 1.7 Release 3
+     */
+    public static final int SOURCE_RETENTION_COMPRESSED = 2;
+
+    /**
+     * Like {@link #SOURCE_RETENTION_TEXT}, but keep the text in a
+     * temporary file.
+     * @see #setSourceRetention(int)
+     * @since 1.7 Release 3
+     */
+    public static final int SOURCE_RETENTION_FILE = 3;
+
     public static final String languageVersionProperty = "language version";
     public static final String errorReporterProperty   = "error reporter";
 
@@ -415,23 +462,39 @@ public class Context
     static final Context enter(Context cx, ContextFactory factory)
     {
         Object helper = VMBridge.instance.getThreadContextHelper();
+        return enter(cx, factory, helper);
+    }
+
+    private static Context enter(Context cx, ContextFactory factory,
+                                 Object helper)
+    {
         Context old = VMBridge.instance.getContext(helper);
         if (old != null) {
             cx = old;
         } else {
             if (cx == null) {
-                cx = factory.makeContext();
-                if (cx.enterCount != 0) {
-                    throw new IllegalStateException("factory.makeContext() returned Context instance already associated with some thread");
-                }
-                factory.onContextCreated(cx);
-                if (factory.isSealed() && !cx.isSealed()) {
-                    cx.seal(null);
+                cx = factory.pollPooledContext();
+                if (cx != null) {
+                    // Listeners see a pooled Context as created anew
+                    factory.fireContextCreated(cx);
+                } else {
+                    cx = factory.makeContext();
+                    if (cx.enterCount != 0) {
+                        throw new IllegalStateException("factory.makeContext() returned Context instance already associated with some thread");
+                    }
+                    factory.onContextCreated(cx);
+                    if (factory.isSealed() && !cx.isSealed()) {
+                        cx.seal(null);
+                    }
+                    cx.poolable = true;
                 }
             } else {
                 if (cx.enterCount != 0) {
                     throw new IllegalStateException("can not use Context instance already associated with some thread");
                 }
+                // The caller manages cx, so it must not be pooled even if
+                // the factory made it
+                cx.poolable = false;
             }
             VMBridge.instance.setContext(helper, cx);
         }
@@ -452,7 +515,11 @@ public class Context
      */
     public static void exit()
     {
-        Object helper = VMBridge.instance.getThreadContextHelper();
+        exit(VMBridge.instance.getThreadContextHelper());
+    }
+
+    private static void exit(Object helper)
+    {
         Context cx = VMBridge.instance.getContext(helper);
         if (cx == null) {
             throw new IllegalStateException(
@@ -462,6 +529,9 @@ public class Context
         if (--cx.enterCount == 0) {
             VMBridge.instance.setContext(helper, null);
             cx.factory.onContextReleased(cx);
+            if (cx.poolable) {
+                cx.factory.returnPooledContext(cx);
+            }
         }
     }
 
@@ -516,12 +586,15 @@ public class Context
      * The method implements {@link ContextFactory#call(ContextAction)} logic.
      */
     static Object call(ContextFactory factory, ContextAction action) {
-        Context cx = enter(null, factory);
+        // The thread does not change during the call, so look up its
+        // Context helper only once
+        Object helper = VMBridge.instance.getThreadContextHelper();
+        Context cx = enter(null, factory, helper);
         try {
             return action.run(cx);
         }
         finally {
-            exit();
+            exit(helper);
         }
     }
 
@@ -1591,7 +1664,7 @@ public class Context
      */
     public final Object[] getElements(Scriptable object)
     {
-        return ScriptRuntime.getArrayElements(object);
+        return ScriptRuntime.getArrayElements(this, object);
     }
 
     /**
@@ -1699,6 +1772,23 @@ public class Context
      * @return value suitable to pass to any API that takes JavaScript values.
      */
     public static Object javaToJS(Object value, Scriptable scope)
+    {
+        return javaToJS(value, scope, null);
+    }
+
+    /**
+     * Convert a Java value to a JavaScript value like
+     * {@link #javaToJS(Object, Scriptable)}, wrapping objects with the
+     * WrapFactory of the given Context instead of the current one.
+     *
+     * @param value any Java object
+     * @param scope top scope object
+     * @param cx the current Context, or null to look it up when the value
+     *        needs to be wrapped
+     * @return value suitable to pass to any API that takes JavaScript values.
+     * @since 1.7R3
+     */
+    public static Object javaToJS(Object value, Scriptable scope, Context cx)
     {
         if (value instanceof String || value instanceof Number
             || value instanceof Boolean || value instanceof Scriptable)
@@ -1707,7 +1797,9 @@ public class Context
         } else if (value instanceof Character) {
             return String.valueOf(((Character)value).charValue());
         } else {
-            Context cx = Context.getContext();
+            if (cx == null) {
+                cx = Context.getContext();
+            }
             return cx.getWrapFactory().wrap(cx, scope, value, null);
         }
     }
@@ -1836,6 +1928,132 @@ public class Context
         this.generatingSource = generatingSource;
     }
 
+    /**
+     * Return how the source of compiled scripts is kept.
+     * @see #setSourceRetention(int)
+     */
+    public final int getSourceRetention()
+    {
+        return sourceRetention;
+    }
+
+    /**
+     * Specify how the source of compiled scripts is kept for
+     * <tt>Function.prototype.toString</tt> and <tt>uneval</tt>.
+     * <p>
+     * By default ({@link #SOURCE_RETENTION_ENCODED}) the compiler keeps
+     * the decompiler's encoded form of every script.  The other modes keep
+     * one copy of the original text per script instead, in memory
+     * ({@link #SOURCE_RETENTION_TEXT}), compressed in memory
+     * ({@link #SOURCE_RETENTION_COMPRESSED}) or in a temporary file
+     * ({@link #SOURCE_RETENTION_FILE}).  Each function only records its
+     * range in that text, and is parsed and decompiled again when its
+     * source is requested; the result is the same as in the default mode.
+     * <p>
+     * Only affects interpreted mode (optimization level -1) and has no
+     * effect unless {@link #isGeneratingSource()} is true.
+     * @param retention one of the SOURCE_RETENTION_* constants
+     * @since 1.7 Release 3
+     */
+    public final void setSourceRetention(int retention)
+    {
+        if (sealed) onSealedMutation();
+        if (retention < SOURCE_RETENTION_ENCODED
+            || retention > SOURCE_RETENTION_FILE)
+        {
+            throw new IllegalArgumentException(
+                "Bad source retention: " + retention);
+        }
+        this.sourceRetention = retention;
+    }
+
+    /**
+     * Tell whether functions are compiled lazily.
+     * @see #setLazyFunctionCompilation(boolean)
+     */
+    public final boolean isLazyFunctionCompilation()
+    {
+        return lazyFunctionCompilation;
+    }
+
+    /**
+     * Specify whether nested functions are compiled only when they are
+     * first called.
+     * <p>
+     * The source is still parsed and checked for syntax errors up front,
+     * but transformation and code generation of each function body is
+     * deferred until the function is invoked, and the generated code is
+     * then shared by all threads.  This reduces the startup cost of large
+     * scripts of which only a small part is used, at the price of keeping
+     * the parse tree of functions that were not called yet.
+     * <p>
+     * Only affects interpreted mode (optimization level -1), and has no
+     * effect while a debugger is set.
+     * @param lazy true to compile functions on their first call
+     * @since 1.7 Release 3
+     */
+    public final void setLazyFunctionCompilation(boolean lazy)
+    {
+        if (sealed) onSealedMutation();
+        this.lazyFunctionCompilation = lazy;
+    }
+
+    /**
+     * Return the executor used to compile functions in parallel.
+     * @see #setCompilationExecutor(ExecutorService)
+     */
+    public final ExecutorService getCompilationExecutor()
+    {
+        return compilationExecutor;
+    }
+
+    /**
+     * Set an executor to compile the functions of a script in parallel.
+     * <p>
+     * In interpreted mode each function is transformed and its icode
+     * generated as a separate task.  With optimization level 1 and above
+     * the per-function optimizer runs as separate tasks while the class
+     * file is still written on the calling thread.  The generated code
+     * does not depend on the executor or the number of its threads.
+     * <p>
+     * The compiling thread waits for all tasks to finish.  The default is
+     * null, meaning everything is compiled on the calling thread.
+     * @param executor executor for compilation tasks, or null
+     * @since 1.7 Release 3
+     */
+    public final void setCompilationExecutor(ExecutorService executor)
+    {
+        if (sealed) onSealedMutation();
+        this.compilationExecutor = executor;
+    }
+
+    /**
+     * Return the metrics that function calls are recorded in.
+     * @see #setFunctionMetrics(FunctionMetrics)
+     */
+    public final FunctionMetrics getFunctionMetrics()
+    {
+        return functionMetrics;
+    }
+
+    /**
+     * Set the metrics that function calls are recorded in, or null to
+     * stop recording.
+     * <p>
+     * Functions are only instrumented when they are compiled while metrics
+     * are set; each call of such a function then adds to the metrics of the
+     * Context it runs with, if any.  Functions compiled without metrics run
+     * without any overhead.  Compiled code (optimization level 0 and above)
+     * does not use direct calls between functions when instrumented.
+     * @param metrics the metrics to record calls in, or null
+     * @since 1.7 Release 3
+     */
+    public final void setFunctionMetrics(FunctionMetrics metrics)
+    {
+        if (sealed) onSealedMutation();
+        this.functionMetrics = metrics;
+    }
+
     /**
      * Get the current optimization level.
      * <p>
@@ -2186,6 +2404,7 @@ public class Context
      * @see #FEATURE_STRICT_MODE
      * @see #FEATURE_WARNING_AS_ERROR
      * @see #FEATURE_ENHANCED_JAVA_ACCESS
+     * @see #FEATURE_REGEXP_STATICS
      */
     public boolean hasFeature(int featureIndex)
     {
@@ -2385,13 +2604,88 @@ public class Context
             compilationErrorReporter = compilerEnv.getErrorReporter();
         }
 
-        if (debugger != null) {
+        if (compiler == null) {
+            compiler = createCompiler();
+        }
+
+        boolean retainText = compilerEnv.isGeneratingSource()
+            && compilerEnv.getSourceRetention() != SOURCE_RETENTION_ENCODED;
+        if (debugger != null || !(compiler instanceof Interpreter)
+            || retainText)
+        {
+            // keep the source for the debugger, to recompile it with
+            // the interpreter if the generated class exceeds JVM limits,
+            // and for Function.prototype.toString
             if (sourceReader != null) {
                 sourceString = Kit.readReader(sourceReader);
                 sourceReader = null;
             }
         }
 
+        ScriptNode tree = parse(sourceReader, sourceString, sourceName, lineno,
+                                compilerEnv, compilationErrorReporter,
+                                returnFunction);
+
+        if (retainText && compiler instanceof Interpreter) {
+            tree.setScriptSource(ScriptSource.create(
+                sourceString, compilerEnv.getSourceRetention()));
+        }
+
+        Object bytecode;
+        try {
+            bytecode = compiler.compile(compilerEnv,
+                                        tree, tree.getEncodedSource(),
+                                        returnFunction);
+        } catch (EvaluatorException e) {
+            if (!(e.getCause() instanceof
+                  ClassFileWriter.ClassFileFormatException)
+                || sourceString == null)
+            {
+                throw e;
+            }
+            // Code generation hit a JVM limit such as the 64K method size:
+            // report it as a warning and interpret the script instead.
+            compilationErrorReporter.warning(e.details(), e.sourceName(),
+                                             e.lineNumber(), null, 0);
+            tree = parse(null, sourceString, sourceName, lineno,
+                         compilerEnv, compilationErrorReporter,
+                         returnFunction);
+            compiler = createInterpreter();
+            if (retainText) {
+                tree.setScriptSource(ScriptSource.create(
+                    sourceString, compilerEnv.getSourceRetention()));
+            }
+            bytecode = compiler.compile(compilerEnv,
+                                        tree, tree.getEncodedSource(),
+                                        returnFunction);
+        }
+        if (debugger != null) {
+            if (sourceString == null) Kit.codeBug();
+            if (bytecode instanceof DebuggableScript) {
+                DebuggableScript dscript = (DebuggableScript)bytecode;
+                notifyDebugger_r(this, dscript, sourceString);
+            } else {
+                throw new RuntimeException("NOT SUPPORTED");
+            }
+        }
+
+        Object result;
+        if (returnFunction) {
+            result = compiler.createFunctionObject(this, scope, bytecode, securityDomain);
+        } else {
+            result = compiler.createScriptObject(bytecode, securityDomain);
+        }
+
+        return result;
+    }
+
+    private ScriptNode parse(Reader sourceReader, String sourceString,
+                             String sourceName, int lineno,
+                             CompilerEnvirons compilerEnv,
+                             ErrorReporter compilationErrorReporter,
+                             boolean returnFunction)
+        throws IOException
+    {
         Parser p = new Parser(compilerEnv, compilationErrorReporter);
         if (returnFunction) {
             p.calledByCompileFunction = true;
@@ -2416,38 +2710,7 @@ public class Context
         }
 
         IRFactory irf = new IRFactory(compilerEnv, compilationErrorReporter);
-        ScriptNode tree = irf.transformTree(ast);
-
-        // discard everything but the IR tree
-        p = null;
-        ast = null;
-        irf = null;
-
-        if (compiler == null) {
-            compiler = createCompiler();
-        }
-
-        Object bytecode = compiler.compile(compilerEnv,
-                                           tree, tree.getEncodedSource(),
-                                           returnFunction);
-        if (debugger != null) {
-            if (sourceString == null) Kit.codeBug();
-            if (bytecode instanceof DebuggableScript) {
-                DebuggableScript dscript = (DebuggableScript)bytecode;
-                notifyDebugger_r(this, dscript, sourceString);
-            } else {
-                throw new RuntimeException("NOT SUPPORTED");
-            }
-        }
-
-        Object result;
-        if (returnFunction) {
-            result = compiler.createFunctionObject(this, scope, bytecode, securityDomain);
-        } else {
-            result = compiler.createScriptObject(bytecode, securityDomain);
-        }
-
-        return result;
+        return irf.transformTree(ast);
     }
 
     private static void notifyDebugger_r(Context cx, DebuggableScript dscript,
@@ -2669,6 +2932,10 @@ public class Context
     private boolean generatingDebug;
     private boolean generatingDebugChanged;
     private boolean generatingSource=true;
+    private int sourceRetention;
+    private boolean lazyFunctionCompilation;
+    private ExecutorService compilationExecutor;
+    FunctionMetrics functionMetrics;
     boolean compileFunctionsWithDynamicScopeFlag;
     boolean useDynamicScope;
     private int optimizationLevel;
@@ -2677,6 +2944,9 @@ public class Context
     Debugger debugger;
     private Object debuggerData;
     private int enterCount;
+    // Made by the factory when entered, so it can go to the factory's pool
+    // of Contexts when exited
+    boolean poolable;
     private Object propertyListeners;
     private Map<Object,Object> threadLocalMap;
     private ClassLoader applicationClassLoader;
@@ -2694,6 +2964,9 @@ public class Context
     // interpreter invocations
     ObjArray previousInterpreterInvocations;
 
+    // For the interpreter to keep returned call frames for reuse
+    ObjArray interpreterFramePool;
+
     // For instruction counting (interpreter only)
     int instructionCount;
     int instructionThreshold;
@@ -42,6 +42,7 @@ package org.mozilla.javascript;
 
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Factory class that Rhino runtime uses to create new {@link Context}
@@ -150,6 +151,24 @@ public class ContextFactory
     private volatile Object listeners;
     private boolean disabledListening;
     private ClassLoader applicationClassLoader;
+    private volatile int contextPoolSize;
+    // Lock-free stack of pooled Contexts
+    private final AtomicReference<PooledContext> contextPool
+        = new AtomicReference<PooledContext>();
+
+    private static final class PooledContext
+    {
+        final Context cx;
+        final PooledContext next;
+        final int count;
+
+        PooledContext(Context cx, PooledContext next)
+        {
+            this.cx = cx;
+            this.next = next;
+            this.count = next == null ? 1 : next.count + 1;
+        }
+    }
 
     /**
      * Listener of {@link Context} creation and release events.
@@ -311,6 +330,9 @@ public class ContextFactory
 
           case Context.FEATURE_ENHANCED_JAVA_ACCESS:
             return false;
+
+          case Context.FEATURE_REGEXP_STATICS:
+            return true;
         }
         // It is a bug to call the method with unknown featureIndex
         throw new IllegalArgumentException(String.valueOf(featureIndex));
@@ -412,6 +434,101 @@ public class ContextFactory
         this.applicationClassLoader = loader;
     }
 
+    /**
+     * Forget the names of the Java classes that the packages of all
+     * top-level scopes failed to find through the given class loader, so
+     * that the Java packages of new top-level scopes see the classes the
+     * loader can load since, for example after a URL was added to a
+     * <tt>URLClassLoader</tt> or a class was defined at runtime. The Java
+     * packages of existing top-level scopes keep their own record of the
+     * names they did not find.
+     *
+     * @param loader the class loader, or null for the class loader of Rhino
+     * @since 1.7R3
+     */
+    public static void invalidateMissingJavaClasses(ClassLoader loader)
+    {
+        JavaPackageCache.invalidateMisses(loader);
+    }
+
+    /**
+     * Return the maximum number of Contexts kept for reuse.
+     *
+     * @see #initContextPool(int)
+     * @since 1.7R3
+     */
+    public final int getContextPoolSize()
+    {
+        return contextPoolSize;
+    }
+
+    /**
+     * Keep up to <tt>maxSize</tt> Contexts for reuse. When a thread without
+     * a Context enters this factory, for example through
+     * {@link #call(ContextAction)}, it takes a Context from the pool
+     * instead of making a new one with {@link #makeContext()}, and the
+     * Context goes back to the pool when the thread exits it. This saves
+     * making and initializing a Context per call for embeddings running
+     * many short tasks on large thread pools or on a new thread each.
+     * <p>
+     * Only Contexts made by the factory when entered are pooled, not those
+     * passed to {@link #enterContext(Context)}. A pooled Context keeps
+     * everything set on it by earlier tasks, as does the Context of a
+     * thread entering the factory repeatedly; sealed factories make their
+     * Contexts immutable. The reference returned by {@link #enterContext()}
+     * must not be used after the matching {@link Context#exit()}.
+     * Listeners are told that a Context was created every time it is
+     * taken from the pool, so that each release follows a creation on the
+     * same thread, while {@link #onContextCreated(Context)} is only called
+     * when the Context is made.
+     *
+     * @param maxSize the maximum number of Contexts to keep, or 0 to not
+     *                keep any
+     * @since 1.7R3
+     */
+    public final void initContextPool(int maxSize)
+    {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("maxSize is negative");
+        checkNotSealed();
+        this.contextPoolSize = maxSize;
+        if (maxSize == 0) {
+            contextPool.set(null);
+        }
+    }
+
+    final Context pollPooledContext()
+    {
+        if (contextPoolSize == 0) {
+            return null;
+        }
+        for (;;) {
+            PooledContext top = contextPool.get();
+            if (top == null) {
+                return null;
+            }
+            if (contextPool.compareAndSet(top, top.next)) {
+                if (top.cx.poolable) {
+                    return top.cx;
+                }
+            }
+        }
+    }
+
+    final void returnPooledContext(Context cx)
+    {
+        int maxSize = contextPoolSize;
+        for (;;) {
+            PooledContext top = contextPool.get();
+            if (top != null && top.count >= maxSize || maxSize == 0) {
+                return;
+            }
+            if (contextPool.compareAndSet(top, new PooledContext(cx, top))) {
+                return;
+            }
+        }
+    }
+
     /**
      * Execute top call to script or function.
      * When the runtime is about to execute a script or function that will
@@ -436,6 +553,11 @@ public class ContextFactory
     }
 
     protected void onContextCreated(Context cx)
+    {
+        fireContextCreated(cx);
+    }
+
+    final void fireContextCreated(Context cx)
     {
         Object listeners = this.listeners;
         for (int i = 0; ; ++i) {
@@ -0,0 +1,281 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.math.BigInteger;
+
+/**
+ * Conversion of decimal strings to doubles without intermediate objects.
+ * Up to 19 significant digits are accumulated in a long; the result is
+ * then computed exactly with a single floating point operation when the
+ * significand and the power of ten are both exactly representable
+ * (Clinger's fast path), or with the Eisel-Lemire algorithm, which needs
+ * one or two 64x64 bit multiplications against a table of 128-bit powers
+ * of ten. Only inputs those methods cannot decide correctly fall back to
+ * {@link Double#parseDouble(String)}.
+ *
+ * @see DoubleToDecimal
+ */
+public final class DecimalToDouble
+{
+    private DecimalToDouble() {}
+
+    private static final int MIN_EXP10 = -348;
+    private static final int MAX_EXP10 = 347;
+
+    // Truncated 128-bit significands of 10^e for e in
+    // [MIN_EXP10, MAX_EXP10], normalized to have the top bit set.
+    // POW10_128[2i] holds the high and POW10_128[2i + 1] the low word.
+    private static final long[] POW10_128 =
+        new long[(MAX_EXP10 - MIN_EXP10 + 1) * 2];
+
+    static {
+        BigInteger mask64 = BigInteger.ONE.shiftLeft(64)
+                            .subtract(BigInteger.ONE);
+        for (int e = MIN_EXP10; e <= MAX_EXP10; e++) {
+            BigInteger m;
+            if (e >= 0) {
+                BigInteger p = BigInteger.TEN.pow(e);
+                int shift = p.bitLength() - 128;
+                m = shift > 0 ? p.shiftRight(shift) : p.shiftLeft(-shift);
+            } else {
+                BigInteger p = BigInteger.TEN.pow(-e);
+                m = BigInteger.ONE.shiftLeft(127 + p.bitLength()).divide(p);
+            }
+            int i = (e - MIN_EXP10) << 1;
+            POW10_128[i] = m.shiftRight(64).longValue();
+            POW10_128[i + 1] = m.and(mask64).longValue();
+        }
+    }
+
+    // Powers of ten which are exactly representable as doubles
+    private static final double[] EXACT_POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // At most this many significant digits are accumulated; note that
+    // the significand may use all 64 bits and is treated as unsigned.
+    private static final int MAX_DIGITS = 19;
+
+    /**
+     * Parses <code>s.substring(start, end)</code> as an ECMA
+     * StrDecimalLiteral without the Infinity forms: an optional sign,
+     * digits with an optional decimal point and an optional exponent.
+     * Returns NaN if the whole range does not match that syntax.
+     */
+    public static double parse(String s, int start, int end)
+    {
+        int i = start;
+        if (i == end) {
+            return ScriptRuntime.NaN;
+        }
+        boolean negative = false;
+        char c = s.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = (c == '-');
+            i++;
+        }
+
+        long significand = 0;
+        int significantDigits = 0;
+        int digits = 0;
+        int exp10 = 0;
+        boolean truncated = false;
+
+        for (; i < end; i++) {
+            c = s.charAt(i);
+            if (c < '0' || c > '9') break;
+            digits++;
+            if (significantDigits < MAX_DIGITS) {
+                if (significand != 0 || c != '0') {
+                    significand = significand * 10 + (c - '0');
+                    significantDigits++;
+                }
+            } else {
+                exp10++;
+                if (c != '0') truncated = true;
+            }
+        }
+        if (i < end && s.charAt(i) == '.') {
+            for (i++; i < end; i++) {
+                c = s.charAt(i);
+                if (c < '0' || c > '9') break;
+                digits++;
+                if (significantDigits < MAX_DIGITS) {
+                    if (significand != 0 || c != '0') {
+                        significand = significand * 10 + (c - '0');
+                        significantDigits++;
+                    }
+                    exp10--;
+                } else if (c != '0') {
+                    truncated = true;
+                }
+            }
+        }
+        if (digits == 0) {
+            return ScriptRuntime.NaN;
+        }
+        if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+                negativeExp = (s.charAt(i) == '-');
+                i++;
+            }
+            if (i == end) {
+                return ScriptRuntime.NaN;
+            }
+            int exp = 0;
+            for (; i < end; i++) {
+                c = s.charAt(i);
+                if (c < '0' || c > '9') break;
+                // saturate; anything this large is 0 or Infinity anyway
+                if (exp < 100000) exp = exp * 10 + (c - '0');
+            }
+            exp10 += negativeExp ? -exp : exp;
+        }
+        if (i != end) {
+            return ScriptRuntime.NaN;
+        }
+
+        double result;
+        if (significand == 0) {
+            result = 0.0;
+        } else if (!truncated && unsignedLess(significand, 1L << 53)
+                   && -22 <= exp10 && exp10 <= 22)
+        {
+            // both operands are exact, so one rounding gives the
+            // correctly rounded result
+            result = exp10 < 0 ? significand / EXACT_POW10[-exp10]
+                               : significand * EXACT_POW10[exp10];
+        } else if (exp10 < -343) {
+            // below 10^-324, less than half of Double.MIN_VALUE
+            result = 0.0;
+        } else if (exp10 > 308) {
+            result = Double.POSITIVE_INFINITY;
+        } else {
+            result = truncated ? Double.NaN : eiselLemire(significand, exp10);
+            if (result != result) {
+                return Double.parseDouble(s.substring(start, end));
+            }
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Computes the double nearest to w * 10^q for a nonzero w, or returns
+     * NaN if the result cannot be determined with 128 bits of precision
+     * (or is subnormal, zero or infinite).
+     */
+    private static double eiselLemire(long w, int q)
+    {
+        if (q < MIN_EXP10 || q > MAX_EXP10) {
+            return Double.NaN;
+        }
+        int lz = Long.numberOfLeadingZeros(w);
+        w <<= lz;
+        long exp2 = (((217706L * q) >> 16) + 64 + 1023) - lz;
+
+        int idx = (q - MIN_EXP10) << 1;
+        long powHi = POW10_128[idx];
+        long powLo = POW10_128[idx + 1];
+
+        long xHi = unsignedMultiplyHigh(w, powHi);
+        long xLo = w * powHi;
+
+        if ((xHi & 0x1FF) == 0x1FF && unsignedLess(xLo + w, w)) {
+            // the truncated product may be off; use the low word too
+            long yHi = unsignedMultiplyHigh(w, powLo);
+            long yLo = w * powLo;
+            long mergedHi = xHi;
+            long mergedLo = xLo + yHi;
+            if (unsignedLess(mergedLo, xLo)) {
+                mergedHi++;
+            }
+            if ((mergedHi & 0x1FF) == 0x1FF && mergedLo + 1 == 0
+                && unsignedLess(yLo + w, w))
+            {
+                return Double.NaN;
+            }
+            xHi = mergedHi;
+            xLo = mergedLo;
+        }
+
+        long msb = xHi >>> 63;
+        long mantissa = xHi >>> (msb + 9);
+        exp2 -= 1 ^ msb;
+
+        if (xLo == 0 && (xHi & 0x1FF) == 0 && (mantissa & 3) == 1) {
+            // exactly halfway between two doubles: not decidable here
+            return Double.NaN;
+        }
+
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if ((mantissa >>> 53) > 0) {
+            mantissa >>>= 1;
+            exp2++;
+        }
+        if (exp2 <= 0 || exp2 >= 0x7FF) {
+            return Double.NaN;
+        }
+        return Double.longBitsToDouble(
+            (exp2 << 52) | (mantissa & 0x000FFFFFFFFFFFFFL));
+    }
+
+    private static boolean unsignedLess(long a, long b)
+    {
+        return (a + Long.MIN_VALUE) < (b + Long.MIN_VALUE);
+    }
+
+    // High 64 bits of the unsigned 128-bit product of x and y
+    private static long unsignedMultiplyHigh(long x, long y)
+    {
+        long x1 = x >>> 32;
+        long x0 = x & 0xFFFFFFFFL;
+        long y1 = y >>> 32;
+        long y0 = y & 0xFFFFFFFFL;
+        long p00 = x0 * y0;
+        long p01 = x0 * y1;
+        long p10 = x1 * y0;
+        long p11 = x1 * y1;
+        long middle = (p00 >>> 32) + (p01 & 0xFFFFFFFFL) + (p10 & 0xFFFFFFFFL);
+        return p11 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
+    }
+}
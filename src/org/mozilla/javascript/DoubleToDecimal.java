@@ -0,0 +1,338 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.math.BigInteger;
+
+/**
+ * Shortest round-trip conversion of doubles to decimal strings as
+ * required by ECMA 262 9.8.1, based on Raffaello Giulietti's Schubfach
+ * algorithm. Unlike {@link DToA} it never needs arbitrary precision
+ * arithmetic: every double is converted with a few 64-bit multiplications
+ * against a table of 126-bit approximations of powers of ten, and the
+ * digits are written straight into the caller's buffer.
+ *
+ * {@link DToA} is still used for radix conversions and for
+ * toFixed/toExponential/toPrecision.
+ */
+final class DoubleToDecimal
+{
+    private DoubleToDecimal() {}
+
+    // Precision, exponent range and bit masks of IEEE 754 binary64
+    private static final int P = 53;
+    private static final int Q_MIN = -1074;
+    private static final long C_MIN = 1L << (P - 1);
+    private static final long T_MASK = C_MIN - 1;
+    private static final int BQ_MASK = 0x7ff;
+    private static final long MASK_63 = 0x7fffffffffffffffL;
+
+    // Subnormals below this significand do not have enough precision
+    // for the general algorithm (see the paper, section 9.1)
+    private static final int C_TINY = 3;
+
+    // Range of decimal exponents k for which g1/g0 are needed
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+
+    /*
+     * For each k in [K_MIN, K_MAX], g = floor(10^-k 2^-r) + 1 where
+     * r = flog2pow10(-k) - 125, so that 2^125 <= g < 2^126. The table
+     * stores g as the pair (g1, g0) = (g >> 63, g & MASK_63).
+     */
+    private static final long[] G = new long[(K_MAX - K_MIN + 1) * 2];
+
+    static {
+        BigInteger mask63 = BigInteger.valueOf(MASK_63);
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            int e = -k;
+            int shift = 125 - flog2pow10(e);
+            BigInteger beta;
+            if (e >= 0) {
+                BigInteger pow = BigInteger.TEN.pow(e);
+                beta = shift >= 0 ? pow.shiftLeft(shift)
+                                  : pow.shiftRight(-shift);
+            } else {
+                beta = BigInteger.ONE.shiftLeft(shift)
+                       .divide(BigInteger.TEN.pow(-e));
+            }
+            BigInteger g = beta.add(BigInteger.ONE);
+            int i = (k - K_MIN) << 1;
+            G[i] = g.shiftRight(63).longValue();
+            G[i + 1] = g.and(mask63).longValue();
+        }
+    }
+
+    private static final long[] POW10 = new long[18];
+
+    static {
+        long p = 1;
+        for (int i = 0; i < POW10.length; i++) {
+            POW10[i] = p;
+            p *= 10;
+        }
+    }
+
+    /**
+     * Returns the shortest decimal representation of <code>v</code>
+     * formatted as specified for Number.prototype.toString() with
+     * radix 10.
+     */
+    static String toString(double v)
+    {
+        StringBuilder sb = new StringBuilder(26);
+        appendTo(sb, v);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the shortest decimal representation of <code>v</code>,
+     * formatted as in ECMA 262 9.8.1, to <code>sb</code>.
+     */
+    static void appendTo(StringBuilder sb, double v)
+    {
+        if (v != v) {
+            sb.append("NaN");
+            return;
+        }
+        if (v == 0.0) {
+            // covers -0 as well
+            sb.append('0');
+            return;
+        }
+        if (v < 0) {
+            sb.append('-');
+            v = -v;
+        }
+        if (v == Double.POSITIVE_INFINITY) {
+            sb.append("Infinity");
+            return;
+        }
+
+        long bits = Double.doubleToRawLongBits(v);
+        long t = bits & T_MASK;
+        int bq = (int)(bits >>> (P - 1)) & BQ_MASK;
+        if (bq != 0) {
+            // normal value: v = c 2^q
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            if (0 < mq && mq < P) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    // integer below 2^53
+                    format(sb, f, 0);
+                    return;
+                }
+            }
+            toDecimal(sb, -mq, c);
+        } else if (t < C_TINY) {
+            // Schubfach would scale these by ten and produce two digits,
+            // but ECMA asks for the shortest form: 5e-324 and 1e-323
+            if (t == 1) {
+                format(sb, 5, -324);
+            } else {
+                format(sb, 1, -323);
+            }
+        } else {
+            toDecimal(sb, Q_MIN, t);
+        }
+    }
+
+    private static void toDecimal(StringBuilder sb, int q, long c)
+    {
+        int out = (int)c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != C_MIN | q == Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            // the rounding interval is asymmetric at powers of two
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        int i = (k - K_MIN) << 1;
+        long g1 = G[i];
+        long g0 = G[i + 1];
+
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 10) {
+            // Try one digit less than the full precision first. The
+            // rounding interval is narrower than 10 units of s, so at
+            // most one of sp10 and tp10 can be inside it. Unlike Java's
+            // Double.toString, this is also done for two digit s (tiny
+            // subnormals) since ECMA always wants the shortest form.
+            long sp10 = 10 * multiplyHigh(s, 115292150460684698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                format(sb, upin ? sp10 : tp10, k);
+                return;
+            }
+        }
+        long tt = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (tt << 2) + out <= vbr;
+        if (uin != win) {
+            format(sb, uin ? s : tt, k);
+            return;
+        }
+        // both candidates are in the rounding interval: pick the closest,
+        // or the even one on a tie
+        long cmp = vb - ((s + tt) << 1);
+        format(sb, cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : tt, k);
+    }
+
+    /**
+     * Rounds to odd the product of g = g1 2^63 + g0 and cp, scaled by
+     * 2^-127.
+     */
+    private static long rop(long g1, long g0, long cp)
+    {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+    }
+
+    /**
+     * Formats the decimal f 10^e according to ECMA 262 9.8.1.
+     */
+    private static void format(StringBuilder sb, long f, int e)
+    {
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+        int k = digitCount(f);
+        int n = e + k;
+        if (k <= n && n <= 21) {
+            appendDigits(sb, f, k);
+            for (int i = k; i < n; i++) {
+                sb.append('0');
+            }
+        } else if (0 < n && n <= 21) {
+            long pow = POW10[k - n];
+            appendDigits(sb, f / pow, n);
+            sb.append('.');
+            appendDigits(sb, f % pow, k - n);
+        } else if (-6 < n && n <= 0) {
+            sb.append("0.");
+            for (int i = n; i < 0; i++) {
+                sb.append('0');
+            }
+            appendDigits(sb, f, k);
+        } else {
+            long pow = POW10[k - 1];
+            appendDigits(sb, f / pow, 1);
+            if (k > 1) {
+                sb.append('.');
+                appendDigits(sb, f % pow, k - 1);
+            }
+            sb.append('e');
+            sb.append(n - 1 < 0 ? '-' : '+');
+            sb.append(Math.abs(n - 1));
+        }
+    }
+
+    /**
+     * Appends exactly <code>count</code> digits of <code>f</code>,
+     * including leading zeros.
+     */
+    private static void appendDigits(StringBuilder sb, long f, int count)
+    {
+        int start = sb.length();
+        sb.setLength(start + count);
+        for (int i = start + count - 1; i >= start; i--) {
+            sb.setCharAt(i, (char)('0' + (int)(f % 10)));
+            f /= 10;
+        }
+    }
+
+    private static int digitCount(long f)
+    {
+        int k = 1;
+        while (k < POW10.length && f >= POW10[k]) {
+            k++;
+        }
+        return k;
+    }
+
+    // floor(e log10(2)), valid for |e| <= 5456721
+    private static int flog10pow2(int e)
+    {
+        return (int)(e * 661971961083L >> 41);
+    }
+
+    // floor(e log10(2) + log10(3/4)), valid for |e| <= 5456721
+    private static int flog10threeQuartersPow2(int e)
+    {
+        return (int)((e * 661971961083L + -274743187321L) >> 41);
+    }
+
+    // floor(e log2(10)), valid for |e| <= 1233
+    private static int flog2pow10(int e)
+    {
+        return (int)(e * 913124641741L >> 38);
+    }
+
+    // High 64 bits of the signed 128-bit product of x and y
+    private static long multiplyHigh(long x, long y)
+    {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+}
@@ -0,0 +1,250 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+package org.mozilla.javascript;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Invocation counts and timings of script functions.
+ * <p>
+ * Functions are instrumented when they are compiled with a Context that has
+ * function metrics set, see {@link Context#setFunctionMetrics(FunctionMetrics)},
+ * both in interpreted and in compiled mode. Each call of an instrumented
+ * function running with such a Context is then recorded in the Context's
+ * metrics. Functions compiled without metrics carry no instrumentation at
+ * all.
+ * <p>
+ * Functions are identified by their name, source and first line, as in
+ * <code>name()@file.js:12</code>. Times are in nanoseconds and include the
+ * time spent in called functions. Percentiles come from a histogram whose
+ * buckets split each power of two in four, so they overstate the actual
+ * value by at most 25%.
+ * <p>
+ * This class is also a JMX standard MBean; register it with an
+ * {@link javax.management.MBeanServer} to expose the metrics.
+ * Instances are thread safe.
+ *
+ * @since 1.7 Release 3
+ */
+public class FunctionMetrics implements FunctionMetricsMBean
+{
+    private final ConcurrentMap<String, Stats> stats =
+        new ConcurrentHashMap<String, Stats>();
+
+    /**
+     * Return the name functions are recorded under.
+     * @param name the function name, empty for anonymous functions
+     * @param sourceName the name of the function's source
+     * @param lineno the line the function starts on
+     */
+    public static String getFunctionKey(String name, String sourceName,
+                                        int lineno)
+    {
+        return (name == null || name.length() == 0 ? "anonymous" : name)
+               + "()@" + sourceName + ':' + lineno;
+    }
+
+    /**
+     * Record one invocation of a function.
+     * @param function the function key
+     * @param time the duration of the invocation in nanoseconds
+     */
+    public void record(String function, long time)
+    {
+        Stats s = stats.get(function);
+        if (s == null) {
+            s = new Stats();
+            Stats existing = stats.putIfAbsent(function, s);
+            if (existing != null) {
+                s = existing;
+            }
+        }
+        s.record(time);
+    }
+
+    /**
+     * Return the metrics of one function, or null if it was not called.
+     */
+    public Stats getStats(String function)
+    {
+        return stats.get(function);
+    }
+
+    /**
+     * Return the metrics of all functions called so far, sorted by key.
+     */
+    public Map<String, Stats> getAllStats()
+    {
+        return Collections.unmodifiableMap(new TreeMap<String, Stats>(stats));
+    }
+
+    public String[] getFunctions()
+    {
+        return getAllStats().keySet().toArray(new String[0]);
+    }
+
+    public long getInvocationCount(String function)
+    {
+        Stats s = stats.get(function);
+        return s == null ? 0 : s.getInvocationCount();
+    }
+
+    public long getTotalTime(String function)
+    {
+        Stats s = stats.get(function);
+        return s == null ? 0 : s.getTotalTime();
+    }
+
+    public long getPercentileTime(String function, double percentile)
+    {
+        Stats s = stats.get(function);
+        return s == null ? 0 : s.getPercentileTime(percentile);
+    }
+
+    public void reset()
+    {
+        stats.clear();
+    }
+
+    /**
+     * Metrics of a single function.
+     */
+    public static final class Stats
+    {
+        // values below 4 have their own bucket, then 4 per power of two
+        private static final int BUCKET_COUNT = 4 * 62 + 4;
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalTime = new AtomicLong();
+        private final AtomicLongArray buckets =
+            new AtomicLongArray(BUCKET_COUNT);
+
+        Stats()
+        {
+        }
+
+        void record(long time)
+        {
+            if (time < 0) {
+                time = 0;
+            }
+            count.incrementAndGet();
+            totalTime.addAndGet(time);
+            buckets.incrementAndGet(getBucket(time));
+        }
+
+        public long getInvocationCount()
+        {
+            return count.get();
+        }
+
+        /**
+         * Return the total time spent in the function in nanoseconds.
+         */
+        public long getTotalTime()
+        {
+            return totalTime.get();
+        }
+
+        /**
+         * Return the mean time of an invocation in nanoseconds.
+         */
+        public long getMeanTime()
+        {
+            long n = count.get();
+            return n == 0 ? 0 : totalTime.get() / n;
+        }
+
+        /**
+         * Return an upper bound for the time in nanoseconds that the given
+         * percentage of invocations did not exceed.
+         * @param percentile a number between 0 and 100
+         */
+        public long getPercentileTime(double percentile)
+        {
+            if (!(percentile >= 0 && percentile <= 100)) {
+                throw new IllegalArgumentException(
+                    "Bad percentile: " + percentile);
+            }
+            long[] counts = new long[BUCKET_COUNT];
+            long total = 0;
+            for (int i = 0; i != BUCKET_COUNT; ++i) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long)Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i != BUCKET_COUNT; ++i) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] != 0) {
+                    return getBucketLimit(i);
+                }
+            }
+            throw Kit.codeBug();
+        }
+
+        static int getBucket(long time)
+        {
+            if (time < 4) {
+                return (int)time;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(time);
+            int sub = (int)(time >>> (exponent - 2)) & 3;
+            return 4 * (exponent - 1) + sub;
+        }
+
+        static long getBucketLimit(int bucket)
+        {
+            if (bucket < 4) {
+                return bucket;
+            }
+            int exponent = bucket / 4 + 1;
+            long start = (long)(4 + bucket % 4) << (exponent - 2);
+            long width = 1L << (exponent - 2);
+            return start + (width - 1);
+        }
+    }
+}
@@ -38,15 +38,31 @@
 
 package org.mozilla.javascript;
 
+import org.mozilla.classfile.ByteCode;
+import org.mozilla.classfile.ClassFileWriter;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
 
 /**
  * Adapter to use JS function as implementation of Java interfaces with
  * single method or multiple methods with the same signature.
+ * <p>
+ * When the interface is accessible to the application class loader the
+ * adapter implements it with a generated class whose methods pass their
+ * arguments directly to the function. Otherwise the adapter falls back to
+ * {@link VMBridge#newInterfaceProxy(Object, ContextFactory,
+ * InterfaceAdapter, Object, Scriptable)}.
  */
 public class InterfaceAdapter
 {
     private final Object proxyHelper;
+    private final Constructor<?> adapterConstructor;
+    private final Class<?>[] returnTypes;
 
     /**
      * Make glue object implementing interface cl that will
@@ -96,18 +112,325 @@ public class InterfaceAdapter
                     String.valueOf(function),
                     cl.getClass().getName());
             }
-            adapter = new InterfaceAdapter(cf, cl);
+            adapter = new InterfaceAdapter(cx, cf, cl, cache);
             cache.cacheInterfaceAdapter(cl, adapter);
         }
+        if (adapter.adapterConstructor != null) {
+            return adapter.newAdapter(cf, function, topScope);
+        }
         return VMBridge.instance.newInterfaceProxy(
             adapter.proxyHelper, cf, adapter, function, topScope);
     }
 
-    private InterfaceAdapter(ContextFactory cf, Class<?> cl)
+    private InterfaceAdapter(Context cx, ContextFactory cf, Class<?> cl,
+                             ClassCache cache)
+    {
+        Method[] methods = getAdapterMethods(cx, cl);
+        if (methods != null) {
+            String adapterName = "iadapter" + cache.newClassSerialNumber();
+            byte[] code = createAdapterCode(adapterName, cl, methods);
+            Class<?> adapterClass
+                = JavaAdapter.loadAdapterClass(adapterName, code);
+            try {
+                this.adapterConstructor = adapterClass.getConstructor(
+                    new Class[] { InterfaceAdapter.class,
+                                  ContextFactory.class,
+                                  Callable.class,
+                                  Scriptable.class });
+            } catch (NoSuchMethodException ex) {
+                // Should not happen
+                throw Kit.initCause(new IllegalStateException(), ex);
+            }
+            this.returnTypes = new Class<?>[methods.length];
+            for (int i = 0; i != methods.length; ++i) {
+                returnTypes[i] = methods[i].getReturnType();
+            }
+            this.proxyHelper = null;
+        } else {
+            this.adapterConstructor = null;
+            this.returnTypes = null;
+            this.proxyHelper
+                = VMBridge.instance.getInterfaceProxyHelper(
+                    cf, new Class[] { cl });
+        }
+    }
+
+    /**
+     * Return the methods the generated adapter class for cl implements
+     * or null if cl can not be implemented by a generated class.
+     */
+    private static Method[] getAdapterMethods(Context cx, Class<?> cl)
+    {
+        if (!Modifier.isPublic(cl.getModifiers())) {
+            return null;
+        }
+        // The generated class is defined by a loader with the application
+        // class loader as parent, which must resolve cl to the same class
+        ClassLoader loader = cx.getApplicationClassLoader();
+        if (loader == null || Kit.classOrNull(loader, cl.getName()) != cl) {
+            return null;
+        }
+        ArrayList<Method> list = new ArrayList<Method>();
+        HashSet<String> generated = new HashSet<String>();
+        Method[] methods = cl.getMethods();
+        for (int i = 0; i != methods.length; ++i) {
+            Method method = methods[i];
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            Class<?>[] argTypes = method.getParameterTypes();
+            if (argTypes.length > 64) {
+                return null;
+            }
+            StringBuffer sb = new StringBuffer(method.getName());
+            JavaAdapter.appendMethodSignature(argTypes,
+                                              method.getReturnType(), sb);
+            if (generated.add(sb.toString())) {
+                list.add(method);
+            }
+        }
+        return list.toArray(new Method[list.size()]);
+    }
+
+    private Object newAdapter(ContextFactory cf, Callable function,
+                              Scriptable topScope)
+    {
+        try {
+            return adapterConstructor.newInstance(
+                new Object[] { this, cf, function, topScope });
+        } catch (InvocationTargetException ex) {
+            throw Context.throwAsScriptRuntimeEx(ex);
+        } catch (IllegalAccessException ex) {
+            // Should not happen
+            throw Kit.initCause(new IllegalStateException(), ex);
+        } catch (InstantiationException ex) {
+            // Should not happen
+            throw Kit.initCause(new IllegalStateException(), ex);
+        }
+    }
+
+    private static byte[] createAdapterCode(String adapterName,
+                                            Class<?> cl, Method[] methods)
+    {
+        ClassFileWriter cfw = new ClassFileWriter(adapterName,
+                                                  "java.lang.Object",
+                                                  "<adapter>");
+        cfw.addInterface(cl.getName());
+        short fieldFlags = (short) (ClassFileWriter.ACC_PRIVATE |
+                                    ClassFileWriter.ACC_FINAL);
+        cfw.addField("adapter", "Lorg/mozilla/javascript/InterfaceAdapter;",
+                     fieldFlags);
+        cfw.addField("factory", "Lorg/mozilla/javascript/ContextFactory;",
+                     fieldFlags);
+        cfw.addField("function", "Lorg/mozilla/javascript/Callable;",
+                     fieldFlags);
+        cfw.addField("topScope", "Lorg/mozilla/javascript/Scriptable;",
+                     fieldFlags);
+
+        cfw.startMethod("<init>",
+                        "(Lorg/mozilla/javascript/InterfaceAdapter;"
+                        +"Lorg/mozilla/javascript/ContextFactory;"
+                        +"Lorg/mozilla/javascript/Callable;"
+                        +"Lorg/mozilla/javascript/Scriptable;)V",
+                        ClassFileWriter.ACC_PUBLIC);
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, "java/lang/Object",
+                      "<init>", "()V");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.ALOAD_1);
+        cfw.add(ByteCode.PUTFIELD, adapterName, "adapter",
+                "Lorg/mozilla/javascript/InterfaceAdapter;");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.ALOAD_2);
+        cfw.add(ByteCode.PUTFIELD, adapterName, "factory",
+                "Lorg/mozilla/javascript/ContextFactory;");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.ALOAD_3);
+        cfw.add(ByteCode.PUTFIELD, adapterName, "function",
+                "Lorg/mozilla/javascript/Callable;");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.addALoad(4);
+        cfw.add(ByteCode.PUTFIELD, adapterName, "topScope",
+                "Lorg/mozilla/javascript/Scriptable;");
+        cfw.add(ByteCode.RETURN);
+        cfw.stopMethod((short)5); // this + adapter + factory + function
+                                  // + topScope
+
+        for (int i = 0; i != methods.length; ++i) {
+            generateMethod(cfw, adapterName, i, methods[i]);
+        }
+        return cfw.toByteArray();
+    }
+
+    private static void generateMethod(ClassFileWriter cfw,
+                                       String adapterName, int methodIndex,
+                                       Method method)
+    {
+        Class<?>[] argTypes = method.getParameterTypes();
+        Class<?> returnType = method.getReturnType();
+        StringBuffer sb = new StringBuffer();
+        int paramsEnd = JavaAdapter.appendMethodSignature(argTypes,
+                                                          returnType, sb);
+        cfw.startMethod(method.getName(), sb.toString(),
+                        ClassFileWriter.ACC_PUBLIC);
+
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.GETFIELD, adapterName, "adapter",
+                "Lorg/mozilla/javascript/InterfaceAdapter;");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.GETFIELD, adapterName, "factory",
+                "Lorg/mozilla/javascript/ContextFactory;");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.GETFIELD, adapterName, "function",
+                "Lorg/mozilla/javascript/Callable;");
+        cfw.add(ByteCode.ALOAD_0);
+        cfw.add(ByteCode.GETFIELD, adapterName, "topScope",
+                "Lorg/mozilla/javascript/Scriptable;");
+        cfw.addPush(methodIndex);
+
+        // The function receives the method name after the arguments
+        int N = argTypes.length;
+        JavaAdapter.generatePushWrappedArgs(cfw, argTypes, N + 1);
+        cfw.add(ByteCode.DUP);
+        cfw.addPush(N);
+        cfw.addPush(method.getName());
+        cfw.add(ByteCode.AASTORE);
+
+        long argsToWrap = 0;
+        for (int i = 0; i != N; ++i) {
+            if (!argTypes[i].isPrimitive()) {
+                argsToWrap |= (1L << i);
+            }
+        }
+        cfw.addPush(argsToWrap);
+
+        cfw.addInvoke(ByteCode.INVOKEVIRTUAL,
+                      "org/mozilla/javascript/InterfaceAdapter",
+                      "callFunction",
+                      "(Lorg/mozilla/javascript/ContextFactory;"
+                      +"Lorg/mozilla/javascript/Callable;"
+                      +"Lorg/mozilla/javascript/Scriptable;"
+                      +"I"
+                      +"[Ljava/lang/Object;"
+                      +"J"
+                      +")Ljava/lang/Object;");
+        generateReturnResult(cfw, returnType);
+        cfw.stopMethod((short)paramsEnd);
+    }
+
+    /**
+     * Generates code to return the result of {@link #callFunction}, which
+     * is already converted to the return type or its wrapper class.
+     */
+    private static void generateReturnResult(ClassFileWriter cfw,
+                                             Class<?> retType)
     {
-        this.proxyHelper
-            = VMBridge.instance.getInterfaceProxyHelper(
-                cf, new Class[] { cl });
+        if (retType == Void.TYPE) {
+            cfw.add(ByteCode.POP);
+            cfw.add(ByteCode.RETURN);
+        } else if (retType == Boolean.TYPE) {
+            cfw.add(ByteCode.CHECKCAST, "java/lang/Boolean");
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Boolean",
+                          "booleanValue", "()Z");
+            cfw.add(ByteCode.IRETURN);
+        } else if (retType == Character.TYPE) {
+            cfw.add(ByteCode.CHECKCAST, "java/lang/Character");
+            cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Character",
+                          "charValue", "()C");
+            cfw.add(ByteCode.IRETURN);
+        } else if (retType.isPrimitive()) {
+            cfw.add(ByteCode.CHECKCAST, "java/lang/Number");
+            String typeName = retType.getName();
+            switch (typeName.charAt(0)) {
+            case 'b':
+                cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Number",
+                              "byteValue", "()B");
+                cfw.add(ByteCode.IRETURN);
+                break;
+            case 's':
+                cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Number",
+                              "shortValue", "()S");
+                cfw.add(ByteCode.IRETURN);
+                break;
+            case 'i':
+                cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Number",
+                              "intValue", "()I");
+                cfw.add(ByteCode.IRETURN);
+                break;
+            case 'l':
+                cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Number",
+                              "longValue", "()J");
+                cfw.add(ByteCode.LRETURN);
+                break;
+            case 'f':
+                cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Number",
+                              "floatValue", "()F");
+                cfw.add(ByteCode.FRETURN);
+                break;
+            case 'd':
+                cfw.addInvoke(ByteCode.INVOKEVIRTUAL, "java/lang/Number",
+                              "doubleValue", "()D");
+                cfw.add(ByteCode.DRETURN);
+                break;
+            default:
+                throw Kit.codeBug();
+            }
+        } else {
+            cfw.add(ByteCode.CHECKCAST, retType.getName());
+            cfw.add(ByteCode.ARETURN);
+        }
+    }
+
+    /**
+     * Call function as the implementation of the method with the given
+     * index in a generated adapter class. The last element of args is the
+     * name of the method, and the arguments with their bit set in
+     * argsToWrap still have to be wrapped.
+     * <p>
+     * The current Context is used if there is one.
+     */
+    public Object callFunction(ContextFactory cf,
+                               final Callable function,
+                               final Scriptable topScope,
+                               final int methodIndex,
+                               final Object[] args,
+                               final long argsToWrap)
+    {
+        Context cx = Context.getCurrentContext();
+        if (cx != null) {
+            return callFunctionImpl(cx, function, topScope, methodIndex,
+                                    args, argsToWrap);
+        }
+        return cf.call(new ContextAction() {
+                public Object run(Context cx)
+                {
+                    return callFunctionImpl(cx, function, topScope,
+                                            methodIndex, args, argsToWrap);
+                }
+            });
+    }
+
+    private Object callFunctionImpl(Context cx,
+                                    Callable function,
+                                    Scriptable topScope,
+                                    int methodIndex,
+                                    Object[] args,
+                                    long argsToWrap)
+    {
+        if (argsToWrap != 0) {
+            WrapFactory wf = cx.getWrapFactory();
+            for (int i = 0; i != args.length - 1; ++i) {
+                if (0 != (argsToWrap & (1L << i))) {
+                    args[i] = wf.wrap(cx, topScope, args[i], null);
+                }
+            }
+        }
+        Object result = function.call(cx, topScope, topScope, args);
+        Class<?> javaResultType = returnTypes[methodIndex];
+        if (javaResultType == Void.TYPE) {
+            return null;
+        }
+        return Context.jsToJava(result, javaResultType);
     }
 
     public Object invoke(ContextFactory cf,
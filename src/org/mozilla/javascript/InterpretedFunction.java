@@ -217,19 +217,19 @@ final class InterpretedFunction extends NativeFunction implements Script
     @Override
     protected int getParamAndVarCount()
     {
-        return idata.argNames.length;
+        return idata.getParamAndVarCount();
     }
 
     @Override
     protected String getParamOrVarName(int index)
     {
-        return idata.argNames[index];
+        return idata.getParamOrVarName(index);
     }
 
     @Override
     protected boolean getParamOrVarConst(int index)
     {
-        return idata.argIsConst[index];
+        return idata.getParamOrVarConst(index);
     }
 }
 
@@ -50,6 +50,7 @@ import java.io.PrintStream;
 import java.io.Serializable;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -76,6 +77,9 @@ public final class Interpreter extends Icode implements Evaluator
     //            exception local and scope local
     static final int EXCEPTION_SLOT_SIZE       = 6;
 
+    // Number of returned call frames kept per context for reuse
+    private static final int MAX_POOLED_FRAMES = 32;
+
     /**
      * Class to hold data corresponding to one interpreted call stack frame.
      */
@@ -88,6 +92,10 @@ public final class Interpreter extends Icode implements Evaluator
         int frameIndex;
         // If true indicates read-only frame that is a part of continuation
         boolean frozen;
+        // If true the frame may be referenced after it returns, by a
+        // generator or by the stack information of an exception, and
+        // must not be reused for another call
+        boolean escaped;
 
         InterpretedFunction fnOrScript;
         InterpreterData idata;
@@ -109,6 +117,10 @@ public final class Interpreter extends Icode implements Evaluator
         boolean useActivation;
         boolean isContinuationsTopFrame;
 
+        // metrics the call is recorded in and when it started, if any
+        transient FunctionMetrics metrics;
+        long metricsStart;
+
         Scriptable thisObj;
         Scriptable[] scriptRegExps;
 
@@ -146,6 +158,28 @@ public final class Interpreter extends Icode implements Evaluator
             copy.frozen = false;
             return copy;
         }
+
+        /**
+         * Drops the references of a frame that returned before it is
+         * kept for reuse. The stack arrays are kept, cleared so that
+         * initFrame finds them as if newly allocated.
+         */
+        void release()
+        {
+            parentFrame = null;
+            fnOrScript = null;
+            idata = null;
+            Arrays.fill(stack, null);
+            varSource = null;
+            debuggerFrame = null;
+            isContinuationsTopFrame = false;
+            metrics = null;
+            thisObj = null;
+            scriptRegExps = null;
+            result = null;
+            scope = null;
+            throwable = null;
+        }
     }
 
     private static final class ContinuationJump implements Serializable
@@ -203,6 +237,8 @@ public final class Interpreter extends Icode implements Evaluator
     }
 
     private static CallFrame captureFrameForGenerator(CallFrame frame) {
+      // the generator frame keeps using the variables of this one
+      frame.escaped = true;
       frame.frozen = true;
       CallFrame result = frame.cloneFrozen();
       frame.frozen = false;
@@ -645,23 +681,43 @@ public final class Interpreter extends Icode implements Evaluator
     public void captureStackInfo(RhinoException ex)
     {
         Context cx = Context.getCurrentContext();
-        if (cx == null || cx.lastInterpreterFrame == null) {
+        CallFrame[] array = cx == null ? null : getInterpreterInvocations(cx);
+        if (array == null) {
             // No interpreter invocations
             ex.interpreterStackInfo = null;
             ex.interpreterLineData = null;
             return;
         }
+        ex.interpreterStackInfo = array;
+        ex.interpreterLineData = getLinePCs(array);
+        // the exception reads the functions of the frames later
+        for (int i = 0; i != array.length; ++i) {
+            for (CallFrame frame = array[i]; frame != null;
+                 frame = frame.parentFrame)
+            {
+                frame.escaped = true;
+            }
+        }
+    }
+
+    /**
+     * Return the innermost frames of all interpreter invocations active
+     * in the context, or null if there are none.
+     */
+    private static CallFrame[] getInterpreterInvocations(Context cx)
+    {
+        CallFrame lastFrame = (CallFrame)cx.lastInterpreterFrame;
+        if (lastFrame == null) {
+            return null;
+        }
         // has interpreter frame on the stack
         CallFrame[] array;
-        if (cx.previousInterpreterInvocations == null
-            || cx.previousInterpreterInvocations.size() == 0)
-        {
+        ObjArray previous = cx.previousInterpreterInvocations;
+        if (previous == null || previous.size() == 0) {
             array = new CallFrame[1];
         } else {
-            int previousCount = cx.previousInterpreterInvocations.size();
-            if (cx.previousInterpreterInvocations.peek()
-                == cx.lastInterpreterFrame)
-            {
+            int previousCount = previous.size();
+            if (previous.peek() == lastFrame) {
                 // It can happen if exception was generated after
                 // frame was pushed to cx.previousInterpreterInvocations
                 // but before assignment to cx.lastInterpreterFrame.
@@ -669,10 +725,14 @@ public final class Interpreter extends Icode implements Evaluator
                 --previousCount;
             }
             array = new CallFrame[previousCount + 1];
-            cx.previousInterpreterInvocations.toArray(array);
+            previous.toArray(array);
         }
-        array[array.length - 1]  = (CallFrame)cx.lastInterpreterFrame;
+        array[array.length - 1] = lastFrame;
+        return array;
+    }
 
+    private static int[] getLinePCs(CallFrame[] array)
+    {
         int interpreterFrameCount = 0;
         for (int i = 0; i != array.length; ++i) {
             interpreterFrameCount += 1 + array[i].frameIndex;
@@ -692,9 +752,7 @@ public final class Interpreter extends Icode implements Evaluator
             }
         }
         if (linePCIndex != 0) Kit.codeBug();
-
-        ex.interpreterStackInfo = array;
-        ex.interpreterLineData = linePC;
+        return linePC;
     }
 
     public String getSourcePositionFromStack(Context cx, int[] linep)
@@ -789,11 +847,31 @@ public final class Interpreter extends Icode implements Evaluator
         if (ex.interpreterStackInfo == null) {
             return null;
         }
+        return getScriptStackElements((CallFrame[])ex.interpreterStackInfo,
+                                      ex.interpreterLineData);
+    }
+
+    /**
+     * Return the interpreter frames currently active in the context, in
+     * the same form as {@link #getScriptStackElements(RhinoException)}.
+     * When the context is running on another thread this is a snapshot
+     * taken without synchronization, which may fail with a
+     * RuntimeException if the thread changed its frames meanwhile.
+     */
+    static ScriptStackElement[][] getScriptStackElements(Context cx)
+    {
+        CallFrame[] array = getInterpreterInvocations(cx);
+        if (array == null) {
+            return null;
+        }
+        return getScriptStackElements(array, getLinePCs(array));
+    }
 
+    private static ScriptStackElement[][] getScriptStackElements(
+        CallFrame[] array, int[] linePC)
+    {
         List<ScriptStackElement[]> list = new ArrayList<ScriptStackElement[]>();
 
-        CallFrame[] array = (CallFrame[])ex.interpreterStackInfo;
-        int[] linePC = ex.interpreterLineData;
         int arrayIndex = array.length;
         int linePCIndex = linePC.length;
         while (arrayIndex != 0) {
@@ -824,6 +902,11 @@ public final class Interpreter extends Icode implements Evaluator
 
     static String getEncodedSource(InterpreterData idata)
     {
+        if (idata.scriptSource != null) {
+            return idata.scriptSource.getEncodedSource(
+                idata.encodedSourceStart, idata.encodedSourceEnd,
+                idata.itsFunctionType, idata.languageVersion);
+        }
         if (idata.encodedSource == null) {
             return null;
         }
@@ -857,7 +940,7 @@ public final class Interpreter extends Icode implements Evaluator
             }
         }
 
-        CallFrame frame = new CallFrame();
+        CallFrame frame = newCallFrame(cx);
         initFrame(cx, scope, thisObj, args, null, 0, args.length,
                   ifun, null, frame);
         frame.isContinuationsTopFrame = cx.isContinuationsTopCall;
@@ -1081,7 +1164,8 @@ public final class Interpreter extends Icode implements Evaluator
                         //[58] ONE
                         //[59] IFEQ 58
                         if (op == Token.IFEQ) {
-                            boolean result = stack_boolean(frame, stackTop);
+                            boolean result
+                                = stack_boolean(cx, frame, stackTop);
                             if (result) {
                                 int offset = getShort(iCode, frame.pc);
                                 if (offset == -1) {
@@ -1254,19 +1338,19 @@ switch (op) {
         continue Loop;
     }
     case Token.IFNE :
-        if (stack_boolean(frame, stackTop--)) {
+        if (stack_boolean(cx, frame, stackTop--)) {
             frame.pc += 2;
             continue Loop;
         }
         break jumplessRun;
     case Token.IFEQ :
-        if (!stack_boolean(frame, stackTop--)) {
+        if (!stack_boolean(cx, frame, stackTop--)) {
             frame.pc += 2;
             continue Loop;
         }
         break jumplessRun;
     case Icode_IFEQ_POP :
-        if (!stack_boolean(frame, stackTop--)) {
+        if (!stack_boolean(cx, frame, stackTop--)) {
             frame.pc += 2;
             continue Loop;
         }
@@ -1434,7 +1518,7 @@ switch (op) {
     }
     case Token.NOT :
         stack[stackTop] = ScriptRuntime.wrapBoolean(
-                              !stack_boolean(frame, stackTop));
+                              !stack_boolean(cx, frame, stackTop));
         continue Loop;
     case Token.BINDNAME :
         stack[++stackTop] = ScriptRuntime.bind(cx, frame.scope, stringReg);
@@ -1692,7 +1776,7 @@ switch (op) {
             InterpretedFunction ifun = (InterpretedFunction)fun;
             if (frame.fnOrScript.securityDomain == ifun.securityDomain) {
                 CallFrame callParentFrame = frame;
-                CallFrame calleeFrame = new CallFrame();
+                CallFrame calleeFrame = newCallFrame(cx);
                 if (op == Icode_TAIL_CALL) {
                     // In principle tail call can re-use the current
                     // frame and its stack arrays but it is hard to
@@ -1704,11 +1788,8 @@ switch (op) {
                     // in the catch code bellow that unwinds JS stack
                     // on exceptions. Then there is issue about frame release
                     // end exceptions there.
-                    // To avoid frame allocation a released frame
-                    // can be cached for re-use which would also benefit
-                    // non-tail calls but it is not clear that this caching
-                    // would gain in performance due to potentially
-                    // bad interaction with GC.
+                    // Instead the current frame goes to the frame pool
+                    // once the callee frame holds the arguments.
                     callParentFrame = frame.parentFrame;
                     // Release the current frame. See Bug #344501 to see why
                     // it is being done here.
@@ -1720,6 +1801,8 @@ switch (op) {
                 if (op != Icode_TAIL_CALL) {
                     frame.savedStackTop = stackTop;
                     frame.savedCallOp = op;
+                } else {
+                    releaseFrame(cx, frame);
                 }
                 frame = calleeFrame;
                 continue StateLoop;
@@ -1789,8 +1872,10 @@ switch (op) {
         cx.lastInterpreterFrame = frame;
         frame.savedCallOp = op;
         frame.savedStackTop = stackTop;
-        stack[stackTop] = fun.call(cx, calleeScope, funThisObj, 
-                getArgsArray(stack, sDbl, stackTop + 2, indexReg));
+        // the call log below reuses the arguments rather than boxing
+        // the double slots again
+        Object[] callArgs = getArgsArray(stack, sDbl, stackTop + 2, indexReg);
+        stack[stackTop] = fun.call(cx, calleeScope, funThisObj, callArgs);
 
 //      if (stack[stackTop] instanceof NativeJavaObject) { // app.eval(...) called and hooked
 //      NativeJavaObject o = (NativeJavaObject)stack[stackTop];
@@ -1824,7 +1909,7 @@ switch (op) {
 
             sb2.append(((BaseFunction) fun).getFunctionName() + "(");
 
-            Object[] args = getArgsArray(stack, sDbl, stackTop + 2, indexReg);
+            Object[] args = callArgs;
             for (Object x : args) {
                 if (x instanceof String) {
                     String y = (String) x;
@@ -1868,7 +1953,7 @@ switch (op) {
         } else {
             StringBuilder sb2 = new StringBuilder();
             sb2.append("CALL: ");
-            Object[] args = getArgsArray(stack, sDbl, stackTop + 2, indexReg);
+            Object[] args = callArgs;
             for (Object x : args) {
                 sb2.append(x + ", ");
             }
@@ -1891,7 +1976,7 @@ switch (op) {
             InterpretedFunction f = (InterpretedFunction)lhs;
             if (frame.fnOrScript.securityDomain == f.securityDomain) {
                 Scriptable newInstance = f.createObject(cx, frame.scope);
-                CallFrame calleeFrame = new CallFrame();
+                CallFrame calleeFrame = newCallFrame(cx);
                 initFrame(cx, frame.scope, newInstance, stack, sDbl,
                           stackTop + 1, indexReg, f, frame,
                           calleeFrame);
@@ -1929,7 +2014,8 @@ switch (op) {
         continue Loop;
     }
     case Icode_TYPEOFNAME :
-        stack[++stackTop] = ScriptRuntime.typeofName(frame.scope, stringReg);
+        stack[++stackTop] = ScriptRuntime.typeofName(frame.scope, stringReg,
+                                                     cx);
         continue Loop;
     case Token.STRING :
         stack[++stackTop] = stringReg;
@@ -2123,7 +2209,7 @@ switch (op) {
         Object val = stack[indexReg];
         ++stackTop;
         stack[stackTop] = (op == Token.ENUM_NEXT)
-                          ? (Object)ScriptRuntime.enumNext(val)
+                          ? (Object)ScriptRuntime.enumNext(val, cx)
                           : (Object)ScriptRuntime.enumId(val, cx);
         continue Loop;
     }
@@ -2260,7 +2346,7 @@ switch (op) {
         continue Loop;
     }
     case Icode_LEAVEDQ : {
-        boolean valBln = stack_boolean(frame, stackTop);
+        boolean valBln = stack_boolean(cx, frame, stackTop);
         Object x = ScriptRuntime.updateDotQuery(valBln, frame.scope);
         if (x != null) {
             stack[stackTop] = x;
@@ -2392,6 +2478,7 @@ switch (op) {
                 interpreterResult = frame.result;
                 interpreterResultDbl = frame.resultDbl;
                 if (frame.parentFrame != null) {
+                    CallFrame returnedFrame = frame;
                     frame = frame.parentFrame;
                     if (frame.frozen) {
                         frame = frame.cloneFrozen();
@@ -2399,6 +2486,7 @@ switch (op) {
                     setCallResult(
                         frame, interpreterResult, interpreterResultDbl);
                     interpreterResult = null; // Help GC
+                    releaseFrame(cx, returnedFrame);
                     continue StateLoop;
                 }
                 break StateLoop;
@@ -2591,7 +2679,7 @@ switch (op) {
         
         // exactly the same as if it's a regular InterpretedFunction
         CallFrame callParentFrame = frame;
-        CallFrame calleeFrame = new CallFrame();
+        CallFrame calleeFrame = newCallFrame(cx);
         if (op == Icode_TAIL_CALL) {
             callParentFrame = frame.parentFrame;
             exitFrame(cx, frame, null);
@@ -2603,6 +2691,8 @@ switch (op) {
         if (op != Icode_TAIL_CALL) {
             frame.savedStackTop = stackTop;
             frame.savedCallOp = op;
+        } else {
+            releaseFrame(cx, frame);
         }
         return calleeFrame;
     }
@@ -2797,15 +2887,17 @@ switch (op) {
             // This covers the case of args[0] == (null|undefined) as well.
             applyThis = ScriptRuntime.getTopCallScope(cx);
         }
+        CallFrame tailCallFrame = null;
         if(op == Icode_TAIL_CALL) {
             exitFrame(cx, frame, null);
+            tailCallFrame = frame;
             frame = frame.parentFrame;
         }
         else {
             frame.savedStackTop = stackTop;
             frame.savedCallOp = op;
         }
-        CallFrame calleeFrame = new CallFrame();
+        CallFrame calleeFrame = newCallFrame(cx);
         if(BaseFunction.isApply(ifun)) {
             Object[] callArgs = indexReg < 2 ? ScriptRuntime.emptyArgs :
                 ScriptRuntime.getApplyArguments(cx, stack[stackTop + 3]);
@@ -2822,11 +2914,48 @@ switch (op) {
             initFrame(cx, calleeScope, applyThis, stack, sDbl, stackTop + 2,
                     argCount, iApplyCallable, frame, calleeFrame);
         }
+        if (tailCallFrame != null) {
+            releaseFrame(cx, tailCallFrame);
+        }
 
         frame = calleeFrame;
         return frame;
     }
 
+    /**
+     * Returns a frame for a new call, reusing one that returned earlier
+     * in the same context if possible.
+     */
+    private static CallFrame newCallFrame(Context cx)
+    {
+        ObjArray pool = cx.interpreterFramePool;
+        if (pool != null && !pool.isEmpty()) {
+            return (CallFrame)pool.pop();
+        }
+        return new CallFrame();
+    }
+
+    /**
+     * Keeps a frame that returned for reuse by {@link #newCallFrame}
+     * unless a continuation, a generator, a debugger or an exception may
+     * still refer to it.
+     */
+    private static void releaseFrame(Context cx, CallFrame frame)
+    {
+        if (frame.frozen || frame.escaped || frame.debuggerFrame != null) {
+            return;
+        }
+        ObjArray pool = cx.interpreterFramePool;
+        if (pool == null) {
+            pool = new ObjArray();
+            cx.interpreterFramePool = pool;
+        } else if (pool.size() == MAX_POOLED_FRAMES) {
+            return;
+        }
+        frame.release();
+        pool.push(frame);
+    }
+
     private static void initFrame(Context cx, Scriptable callerScope,
                                   Scriptable thisObj,
                                   Object[] args, double[] argsDbl,
@@ -2835,6 +2964,7 @@ switch (op) {
                                   CallFrame parentFrame, CallFrame frame)
     {
         InterpreterData idata = fnOrScript.idata;
+        idata.ensureCompiled();
 
         boolean useActivation = idata.itsNeedsActivation;
         DebugFrame debuggerFrame = null;
@@ -2892,6 +3022,12 @@ switch (op) {
             // the regexps re-wrapped during each script execution
             if (idata.itsFunctionType != 0) {
                 scriptRegExps = fnOrScript.functionRegExps;
+                if (scriptRegExps == null) {
+                    // function was compiled lazily after its creation
+                    scriptRegExps = fnOrScript.createRegExpWraps(
+                        cx, fnOrScript.getParentScope());
+                    fnOrScript.functionRegExps = scriptRegExps;
+                }
             } else {
                 scriptRegExps = fnOrScript.createRegExpWraps(cx, scope);
             }
@@ -2925,6 +3061,8 @@ switch (op) {
         for (int i = 0; i < varCount; i++) {
             if (idata.getParamOrVarConst(i))
                 stackAttributes[i] = ScriptableObject.CONST;
+            else if (stackReuse)
+                stackAttributes[i] = ScriptableObject.EMPTY;
         }
         int definedArgs = idata.argCount;
         if (definedArgs > argCount) { definedArgs = argCount; }
@@ -2939,6 +3077,7 @@ switch (op) {
             throw Context.reportRuntimeError("Exceeded maximum stack depth");
         }
         frame.frozen = false;
+        frame.escaped = false;
 
         frame.fnOrScript = fnOrScript;
         frame.idata = idata;
@@ -2974,15 +3113,12 @@ switch (op) {
         for (int i = definedArgs; i != idata.itsMaxVars; ++i) {
             stack[i] = Undefined.instance;
         }
-        if (stackReuse) {
-            // Clean the stack part and space beyond stack if any
-            // of the old array to allow to GC objects there
-            for (int i = emptyStackTop + 1; i != stack.length; ++i) {
-                stack[i] = null;
-            }
-        }
-
         enterFrame(cx, frame, args, false);
+
+        if (idata.itsMetricsKey != null && cx.functionMetrics != null) {
+            frame.metrics = cx.functionMetrics;
+            frame.metricsStart = System.nanoTime();
+        }
     }
 
     private static boolean isFrameEnterExitRequired(CallFrame frame)
@@ -3041,6 +3177,11 @@ switch (op) {
     private static void exitFrame(Context cx, CallFrame frame,
                                   Object throwable)
     {
+        if (frame.metrics != null) {
+            frame.metrics.record(frame.idata.itsMetricsKey,
+                                 System.nanoTime() - frame.metricsStart);
+        }
+
         if (frame.idata.itsNeedsActivation) {
             ScriptRuntime.exitActivationFunction(cx);
         }
@@ -3174,7 +3315,7 @@ switch (op) {
         }
     }
 
-    private static boolean stack_boolean(CallFrame frame, int i)
+    private static boolean stack_boolean(Context cx, CallFrame frame, int i)
     {
         Object x = frame.stack[i];
         if (x == Boolean.TRUE) {
@@ -3192,7 +3333,7 @@ switch (op) {
         } else if (x instanceof Boolean) {
             return ((Boolean)x).booleanValue();
         } else {
-            return ScriptRuntime.toBoolean(x);
+            return ScriptRuntime.toBoolean(x, cx);
         }
     }
 
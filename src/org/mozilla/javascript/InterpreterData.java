@@ -40,6 +40,8 @@
 
 package org.mozilla.javascript;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 import org.mozilla.javascript.debug.DebuggableScript;
@@ -68,11 +70,12 @@ final class InterpreterData implements Serializable, DebuggableScript
         this.languageVersion = parent.languageVersion;
         this.itsSourceFile = parent.itsSourceFile;
         this.encodedSource = parent.encodedSource;
+        this.scriptSource = parent.scriptSource;
 
         init();
     }
 
-    private void init()
+    void init()
     {
         itsICode = new byte[INITIAL_MAX_ICODE_LENGTH];
         itsStringTable = new String[INITIAL_STRINGTABLE_SIZE];
@@ -105,6 +108,9 @@ final class InterpreterData implements Serializable, DebuggableScript
     int itsMaxCalleeArgs;
 
     String encodedSource;
+    // original text of the script when it is kept instead of encodedSource,
+    // in which case the source bounds are offsets into the text
+    ScriptSource scriptSource;
     int encodedSourceStart;
     int encodedSourceEnd;
 
@@ -120,10 +126,40 @@ final class InterpreterData implements Serializable, DebuggableScript
 
     int firstLinePC = -1; // PC for the first LINE icode
 
+    // key of the function in FunctionMetrics, null if not instrumented
+    String itsMetricsKey;
+
     InterpreterData parentData;
 
     boolean evalScriptFlag; // true if script corresponds to eval() code
 
+    // generates the icode of a function compiled on its first call,
+    // null once the icode is available
+    transient volatile CodeGenerator lazyCodeGenerator;
+
+    /**
+     * Generate the icode of a lazily compiled function unless that was
+     * already done.  The result is shared by all threads.
+     */
+    void ensureCompiled()
+    {
+        if (lazyCodeGenerator != null) {
+            synchronized (this) {
+                CodeGenerator gen = lazyCodeGenerator;
+                if (gen != null) {
+                    gen.generateLazyFunctionICode();
+                    lazyCodeGenerator = null;
+                }
+            }
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        ensureCompiled();
+        out.defaultWriteObject();
+    }
+
     public boolean isTopLevel()
     {
         return topLevel;
@@ -146,16 +182,19 @@ final class InterpreterData implements Serializable, DebuggableScript
 
     public int getParamAndVarCount()
     {
+        ensureCompiled();
         return argNames.length;
     }
 
     public String getParamOrVarName(int index)
     {
+        ensureCompiled();
         return argNames[index];
     }
 
     public boolean getParamOrVarConst(int index)
     {
+        ensureCompiled();
         return argIsConst[index];
     }
 
@@ -171,16 +210,19 @@ final class InterpreterData implements Serializable, DebuggableScript
 
     public int[] getLineNumbers()
     {
+        ensureCompiled();
         return Interpreter.getLineNumbers(this);
     }
 
     public int getFunctionCount()
     {
+        ensureCompiled();
         return (itsNestedFunctions == null) ? 0 : itsNestedFunctions.length;
     }
 
     public DebuggableScript getFunction(int index)
     {
+        ensureCompiled();
         return itsNestedFunctions[index];
     }
 
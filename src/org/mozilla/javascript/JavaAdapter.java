@@ -320,12 +320,8 @@ public final class JavaAdapter implements IdFunctionCall
         sig = new JavaAdapterSignature(superClass, interfaces, names);
         Class<?> adapterClass = generated.get(sig);
         if (adapterClass == null) {
-            String adapterName = "adapter"
-                                 + cache.newClassSerialNumber();
-            byte[] code = createAdapterCode(names, adapterName,
-                                            superClass, interfaces, null);
-
-            adapterClass = loadAdapterClass(adapterName, code);
+            adapterClass = JavaAdapterCache.getAdapterClass(
+                Context.getContext(), cache, sig);
             if (cache.isCachingEnabled()) {
                 generated.put(sig, adapterClass);
             }
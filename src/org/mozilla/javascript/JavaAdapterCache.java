@@ -0,0 +1,356 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package org.mozilla.javascript;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.mozilla.javascript.JavaAdapter.JavaAdapterSignature;
+
+/**
+ * Process-wide cache of the classes generated by {@link JavaAdapter}. The
+ * top-level scopes loading classes through the same application class
+ * loader share the adapter classes. The cache only refers weakly to the
+ * class loader and to the adapter classes, which stay cached as long as
+ * they are in use, so that neither is kept from being unloaded.
+ * <p>
+ * When the system property <tt>rhino.adapter.cache.dir</tt> names a
+ * directory, the bytecode of generated adapters is also stored there and
+ * reused by later processes instead of being generated again. Only point
+ * it to a directory that no untrusted party can write to.
+ * <p>
+ * Neither cache is used when a {@link SecurityController} is installed, as
+ * adapter classes then belong to the security domain of the script that
+ * caused their generation, or when caching is disabled in the
+ * {@link ClassCache} of the scope.
+ */
+final class JavaAdapterCache
+{
+    static final String CACHE_DIR_PROPERTY = "rhino.adapter.cache.dir";
+
+    // The keys of the maps of a class loader are built from class names,
+    // since the classes themselves would keep the class loader reachable
+    private static final
+        Map<ClassLoader,Map<String,WeakReference<Class<?>>>> adapterClasses
+            = new WeakHashMap<ClassLoader,
+                              Map<String,WeakReference<Class<?>>>>();
+
+    private JavaAdapterCache()
+    {
+    }
+
+    /**
+     * Return the adapter class with the given signature, generating it if
+     * it is neither cached nor stored.
+     */
+    static Class<?> getAdapterClass(Context cx, ClassCache cache,
+                                    JavaAdapterSignature sig)
+    {
+        if (!cache.isCachingEnabled() || cx.getSecurityController() != null) {
+            return generateAdapterClass(
+                "adapter" + cache.newClassSerialNumber(), sig);
+        }
+
+        ClassLoader loader = cx.getApplicationClassLoader();
+        String sigKey = getSignatureKey(sig);
+        Map<String,WeakReference<Class<?>>> classes;
+        synchronized (adapterClasses) {
+            classes = adapterClasses.get(loader);
+            if (classes == null) {
+                classes = new HashMap<String,WeakReference<Class<?>>>();
+                adapterClasses.put(loader, classes);
+            }
+            Class<?> adapterClass = getCachedClass(classes, sigKey, sig);
+            if (adapterClass != null) {
+                return adapterClass;
+            }
+        }
+
+        // Generate the class without holding the lock, which may make
+        // threads racing for the same signature generate it twice
+        Class<?> adapterClass = null;
+        File dir = getCacheDirectory();
+        String key = dir == null ? null : getStoreKey(cx, sig);
+        if (key != null) {
+            String adapterName = "adapter" + key;
+            File file = new File(dir, adapterName + ".class");
+            byte[] code = readCode(file);
+            if (code != null) {
+                try {
+                    adapterClass = JavaAdapter.loadAdapterClass(adapterName,
+                                                                code);
+                } catch (LinkageError ex) {
+                    // Corrupt file, generate the class again
+                }
+            }
+            if (adapterClass == null) {
+                code = JavaAdapter.createAdapterCode(sig.names, adapterName,
+                                                     sig.superClass,
+                                                     sig.interfaces, null);
+                adapterClass = JavaAdapter.loadAdapterClass(adapterName,
+                                                            code);
+                writeCode(dir, file, code);
+            }
+        } else {
+            adapterClass = generateAdapterClass(
+                "adapter" + cache.newClassSerialNumber(), sig);
+        }
+
+        synchronized (adapterClasses) {
+            Class<?> cached = getCachedClass(classes, sigKey, sig);
+            if (cached != null) {
+                return cached;
+            }
+            classes.put(sigKey, new WeakReference<Class<?>>(adapterClass));
+        }
+        return adapterClass;
+    }
+
+    /**
+     * Return the cached adapter class for the signature, or null if it was
+     * not cached, was unloaded or extends other classes of the same names.
+     */
+    private static Class<?> getCachedClass(
+        Map<String,WeakReference<Class<?>>> classes, String sigKey,
+        JavaAdapterSignature sig)
+    {
+        WeakReference<Class<?>> ref = classes.get(sigKey);
+        if (ref == null) {
+            return null;
+        }
+        Class<?> adapterClass = ref.get();
+        if (adapterClass == null) {
+            classes.remove(sigKey);
+            return null;
+        }
+        if (adapterClass.getSuperclass() != sig.superClass) {
+            return null;
+        }
+        Class<?>[] interfaces = adapterClass.getInterfaces();
+        int count = 0;
+        for (int i = 0; i != sig.interfaces.length; ++i) {
+            if (sig.interfaces[i] != null) {
+                if (count == interfaces.length
+                    || interfaces[count] != sig.interfaces[i])
+                {
+                    return null;
+                }
+                ++count;
+            }
+        }
+        return count == interfaces.length ? adapterClass : null;
+    }
+
+    /**
+     * Return the names of the classes the adapter extends and implements
+     * followed by the names and arities of its methods.
+     */
+    private static String getSignatureKey(JavaAdapterSignature sig)
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(sig.superClass.getName()).append('\n');
+        for (int i = 0; i != sig.interfaces.length; ++i) {
+            if (sig.interfaces[i] != null) {
+                sb.append(sig.interfaces[i].getName()).append('\n');
+            }
+        }
+        ArrayList<String> names = getSortedNames(sig);
+        for (int i = 0; i != names.size(); ++i) {
+            sb.append(names.get(i)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static ArrayList<String> getSortedNames(JavaAdapterSignature sig)
+    {
+        ArrayList<String> names = new ArrayList<String>();
+        Object[] ids = sig.names.getKeys();
+        for (int i = 0; i != ids.length; ++i) {
+            names.add(ids[i] + "/" + sig.names.get(ids[i], 0));
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static Class<?> generateAdapterClass(String adapterName,
+                                                 JavaAdapterSignature sig)
+    {
+        byte[] code = JavaAdapter.createAdapterCode(sig.names, adapterName,
+                                                    sig.superClass,
+                                                    sig.interfaces, null);
+        return JavaAdapter.loadAdapterClass(adapterName, code);
+    }
+
+    private static File getCacheDirectory()
+    {
+        String path = SecurityUtilities.getSystemProperty(CACHE_DIR_PROPERTY);
+        if (path == null || path.length() == 0) {
+            return null;
+        }
+        File dir = new File(path);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return null;
+        }
+        return dir;
+    }
+
+    /**
+     * Return the name under which the bytecode of the adapter is stored.
+     * It is a digest of everything the generated code depends on: the
+     * Rhino version, the adapter signature and the methods of the extended
+     * class and implemented interfaces, so classes changed since the
+     * adapter was stored do not match it.
+     */
+    private static String getStoreKey(Context cx, JavaAdapterSignature sig)
+    {
+        ArrayList<String> names = getSortedNames(sig);
+
+        ArrayList<String> methods = new ArrayList<String>();
+        Method[] overridable = JavaAdapter.getOverridableMethods(sig.superClass);
+        for (int i = 0; i != overridable.length; ++i) {
+            methods.add(getMethodKey(overridable[i]));
+        }
+        for (int i = 0; i != sig.interfaces.length; ++i) {
+            Method[] intfMethods = sig.interfaces[i].getMethods();
+            for (int j = 0; j != intfMethods.length; ++j) {
+                methods.add(getMethodKey(intfMethods[j]));
+            }
+        }
+        Collections.sort(methods);
+
+        StringBuffer sb = new StringBuffer();
+        sb.append(cx.getImplementationVersion()).append('\n');
+        sb.append(sig.superClass.getName()).append('\n');
+        for (int i = 0; i != sig.interfaces.length; ++i) {
+            sb.append(sig.interfaces[i].getName()).append('\n');
+        }
+        for (int i = 0; i != names.size(); ++i) {
+            sb.append(names.get(i)).append('\n');
+        }
+        for (int i = 0; i != methods.size(); ++i) {
+            sb.append(methods.get(i)).append('\n');
+        }
+
+        byte[] digest;
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            digest = md.digest(sb.toString().getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException ex) {
+            return null;
+        } catch (IOException ex) {
+            return null;
+        }
+        StringBuffer key = new StringBuffer(digest.length * 2);
+        for (int i = 0; i != digest.length; ++i) {
+            int b = digest[i] & 0xFF;
+            key.append(Character.forDigit(b >> 4, 16));
+            key.append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    private static String getMethodKey(Method method)
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(method.getDeclaringClass().getName()).append('.');
+        sb.append(method.getName());
+        JavaAdapter.appendMethodSignature(method.getParameterTypes(),
+                                          method.getReturnType(), sb);
+        sb.append(' ').append(method.getModifiers() & (Modifier.ABSTRACT
+                                                       | Modifier.FINAL));
+        return sb.toString();
+    }
+
+    private static byte[] readCode(File file)
+    {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            InputStream is = new FileInputStream(file);
+            try {
+                return Kit.readStream(is, (int)file.length());
+            } finally {
+                is.close();
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private static void writeCode(File dir, File file, byte[] code)
+    {
+        // Write to a temporary file first so other processes never read
+        // partially written code
+        try {
+            File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            try {
+                OutputStream os = new FileOutputStream(tmp);
+                try {
+                    os.write(code);
+                } finally {
+                    os.close();
+                }
+                if (tmp.renameTo(file)) {
+                    tmp = null;
+                }
+            } finally {
+                if (tmp != null) {
+                    tmp.delete();
+                }
+            }
+        } catch (IOException ex) {
+            // The store is only an optimization
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package org.mozilla.javascript;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * Process-wide cache of the classes {@link NativeJavaPackage} looks up by
+ * name. All packages loading classes through the same class loader share
+ * the result of each lookup, including failed ones, so that a name is
+ * looked up by the class loader only once however many top-level scopes
+ * refer to it. The failed lookups of a class loader are forgotten by
+ * {@link ContextFactory#invalidateMissingJavaClasses(ClassLoader)} when it
+ * may have become able to load more classes.
+ * <p>
+ * When the system property <tt>rhino.package.index</tt> is
+ * <tt>true</tt>, the class names found in the directories and jar files of
+ * the class path, and in the jar files their manifests refer to, are
+ * indexed the first time the system class loader is used. A name in a
+ * package of the index that is not itself in the index is then known not
+ * to be a class without asking the class loader. Only enable it when the
+ * class path does not add classes to packages of the Java runtime.
+ */
+final class JavaPackageCache
+{
+    static final String CLASS_INDEX_PROPERTY = "rhino.package.index";
+
+    // Bound on the number of failed lookups kept for a class loader, so
+    // that scripts probing arbitrary names do not grow the cache forever
+    private static final int MAX_MISSES = 10000;
+
+    private static final Object MISSING = new Object();
+
+    private static final Map<ClassLoader,JavaPackageCache> caches
+        = new WeakHashMap<ClassLoader,JavaPackageCache>();
+
+    // Values are either MISSING or weak references to the classes, which
+    // must not keep their class loader, the key of caches, reachable
+    private final ConcurrentHashMap<String,Object> classes
+        = new ConcurrentHashMap<String,Object>();
+    private final ClassIndex index;
+    private int misses;
+
+    private JavaPackageCache(ClassIndex index)
+    {
+        this.index = index;
+    }
+
+    /**
+     * Return the class of the given name loaded by the given class loader,
+     * or by the class loader of Rhino if it is null, or null if there is
+     * no such class.
+     */
+    static Class<?> getClass(ClassLoader loader, String className)
+    {
+        JavaPackageCache cache;
+        synchronized (caches) {
+            cache = caches.get(loader);
+            if (cache == null) {
+                cache = new JavaPackageCache(getClassIndex(loader));
+                caches.put(loader, cache);
+            }
+        }
+        return cache.lookup(loader, className);
+    }
+
+    /**
+     * Forget the names the given class loader, or the class loader of Rhino
+     * if it is null, failed to load.
+     */
+    static void invalidateMisses(ClassLoader loader)
+    {
+        JavaPackageCache cache;
+        synchronized (caches) {
+            cache = caches.get(loader);
+        }
+        if (cache != null) {
+            cache.clearMisses();
+        }
+    }
+
+    private synchronized void clearMisses()
+    {
+        Iterator<Object> values = classes.values().iterator();
+        while (values.hasNext()) {
+            if (values.next() == MISSING) {
+                values.remove();
+            }
+        }
+        misses = 0;
+    }
+
+    private Class<?> lookup(ClassLoader loader, String className)
+    {
+        Object value = classes.get(className);
+        if (value == MISSING) {
+            return null;
+        }
+        if (value != null) {
+            @SuppressWarnings("unchecked")
+            Class<?> cl = ((WeakReference<Class<?>>)value).get();
+            if (cl != null) {
+                return cl;
+            }
+        }
+
+        Class<?> cl = null;
+        if (index == null || index.mayContain(className)) {
+            if (loader != null) {
+                cl = Kit.classOrNull(loader, className);
+            } else {
+                cl = Kit.classOrNull(className);
+            }
+        }
+        if (cl != null) {
+            classes.put(className, new WeakReference<Class<?>>(cl));
+        } else {
+            synchronized (this) {
+                if (misses == MAX_MISSES) {
+                    return null;
+                }
+                ++misses;
+            }
+            classes.put(className, MISSING);
+        }
+        return cl;
+    }
+
+    private static ClassIndex getClassIndex(ClassLoader loader)
+    {
+        if (loader == null || !"true".equals(
+                SecurityUtilities.getSystemProperty(CLASS_INDEX_PROPERTY)))
+        {
+            return null;
+        }
+        try {
+            if (loader != ClassLoader.getSystemClassLoader()) {
+                return null;
+            }
+        } catch (SecurityException ex) {
+            return null;
+        }
+        String classPath = SecurityUtilities.getSystemProperty(
+            "java.class.path");
+        if (classPath == null) {
+            return null;
+        }
+        ClassIndex index = new ClassIndex();
+        StringTokenizer st = new StringTokenizer(classPath,
+                                                 File.pathSeparator);
+        while (st.hasMoreTokens()) {
+            index.add(new File(st.nextToken()));
+        }
+        return index;
+    }
+
+    /**
+     * The names of the classes and packages found in a class path.
+     */
+    private static final class ClassIndex
+    {
+        private final Set<String> classNames = new HashSet<String>();
+        private final Set<String> packageNames = new HashSet<String>();
+        private final Set<File> visited = new HashSet<File>();
+
+        boolean mayContain(String className)
+        {
+            int dot = className.lastIndexOf('.');
+            String packageName = dot == -1 ? "" : className.substring(0, dot);
+            return !packageNames.contains(packageName)
+                   || classNames.contains(className);
+        }
+
+        void add(File file)
+        {
+            try {
+                file = file.getCanonicalFile();
+            } catch (IOException ex) {
+                return;
+            }
+            if (!visited.add(file)) {
+                return;
+            }
+            if (file.isDirectory()) {
+                addDirectory(file, "");
+            } else if (file.isFile()) {
+                addJar(file);
+            }
+        }
+
+        private void addDirectory(File dir, String prefix)
+        {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (int i = 0; i != files.length; ++i) {
+                String name = files[i].getName();
+                if (files[i].isDirectory()) {
+                    addDirectory(files[i], prefix + name + '/');
+                } else {
+                    addEntry(prefix + name);
+                }
+            }
+        }
+
+        private void addJar(File file)
+        {
+            JarFile jar;
+            try {
+                jar = new JarFile(file);
+            } catch (IOException ex) {
+                return;
+            }
+            try {
+                Enumeration<? extends ZipEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory()) {
+                        addEntry(entry.getName());
+                    }
+                }
+                Manifest manifest = jar.getManifest();
+                String classPath = manifest == null ? null
+                    : manifest.getMainAttributes().getValue(
+                          Attributes.Name.CLASS_PATH);
+                if (classPath != null) {
+                    // Relative URLs separated by spaces
+                    StringTokenizer st = new StringTokenizer(classPath);
+                    while (st.hasMoreTokens()) {
+                        String path = st.nextToken().replace('/',
+                                                             File.separatorChar);
+                        add(new File(file.getParentFile(), path));
+                    }
+                }
+            } catch (IOException ex) {
+                // Index what could be read
+            } finally {
+                try {
+                    jar.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+
+        private void addEntry(String path)
+        {
+            if (!path.endsWith(".class") || path.startsWith("META-INF/")) {
+                return;
+            }
+            String className = path.substring(0, path.length() - 6)
+                                   .replace('/', '.');
+            if (className.indexOf('-') != -1) {
+                // module-info and package-info
+                return;
+            }
+            int dot = className.lastIndexOf('.');
+            classNames.add(className);
+            packageNames.add(dot == -1 ? "" : className.substring(0, dot));
+        }
+    }
+}
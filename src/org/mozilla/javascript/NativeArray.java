@@ -730,6 +730,12 @@ public class NativeArray extends IdScriptableObject implements List
 
     private static Object getElem(Context cx, Scriptable target, long index)
     {
+        if (target instanceof NativeArray) {
+            Object elem = ((NativeArray) target).getDenseElem(index);
+            if (elem != NOT_FOUND) {
+                return elem;
+            }
+        }
         if (index > Integer.MAX_VALUE) {
             String id = Long.toString(index);
             return ScriptRuntime.getObjectProp(target, id, cx);
@@ -740,6 +746,12 @@ public class NativeArray extends IdScriptableObject implements List
 
     // same as getElem, but without converting NOT_FOUND to undefined
     private static Object getRawElem(Scriptable target, long index) {
+        if (target instanceof NativeArray) {
+            Object elem = ((NativeArray) target).getDenseElem(index);
+            if (elem != NOT_FOUND) {
+                return elem;
+            }
+        }
         if (index > Integer.MAX_VALUE) {
             return ScriptableObject.getProperty(target, Long.toString(index));
         } else {
@@ -758,6 +770,39 @@ public class NativeArray extends IdScriptableObject implements List
         }
     }
 
+    // same as setElem for arrays the methods create for their results,
+    // which no script has seen yet, storing the value directly when the
+    // array is dense and the index does not leave a hole
+    private static void setNewElem(Context cx, Scriptable target, long index,
+                                   Object value)
+    {
+        if (target instanceof NativeArray) {
+            NativeArray na = (NativeArray) target;
+            if (na.denseOnly && index <= na.length &&
+                index < Integer.MAX_VALUE &&
+                na.ensureCapacity((int) index + 1))
+            {
+                na.dense[(int) index] = value;
+                if (na.length <= index) {
+                    na.length = index + 1;
+                }
+                return;
+            }
+        }
+        setElem(cx, target, index, value);
+    }
+
+    // the element at index if the array is dense and has it, otherwise
+    // NOT_FOUND
+    private Object getDenseElem(long index)
+    {
+        if (denseOnly && index < length) {
+            // downcast okay because denseOnly
+            return dense[(int) index];
+        }
+        return NOT_FOUND;
+    }
+
     private static String toStringHelper(Context cx, Scriptable scope,
                                          Scriptable thisObj,
                                          boolean toSource, boolean toLocale)
@@ -1243,7 +1288,7 @@ public class NativeArray extends IdScriptableObject implements List
                     Scriptable resultArray = cx.newArray(scope, 0);
                     for (long last = begin; last != end; last++) {
                         Object temp = getElem(cx, thisObj, last);
-                        setElem(cx, resultArray, last - begin, temp);
+                        setNewElem(cx, resultArray, last - begin, temp);
                     }
                     result = resultArray;
             	}
@@ -1389,7 +1434,6 @@ public class NativeArray extends IdScriptableObject implements List
                                 Object[] args)
     {
         Scriptable scope = getTopLevelScope(this);
-        Scriptable result = cx.newArray(scope, 0);
         long length = getLengthProperty(cx, thisObj);
 
         long begin, end;
@@ -1405,9 +1449,20 @@ public class NativeArray extends IdScriptableObject implements List
             }
         }
 
+        if (thisObj instanceof NativeArray && begin < end) {
+            NativeArray na = (NativeArray) thisObj;
+            if (na.denseOnly) {
+                // downcast okay because denseOnly, holes stay holes
+                Object[] copy = new Object[(int) (end - begin)];
+                System.arraycopy(na.dense, (int) begin, copy, 0, copy.length);
+                return cx.newArray(scope, copy);
+            }
+        }
+
+        Scriptable result = cx.newArray(scope, 0);
         for (long slot = begin; slot < end; slot++) {
             Object temp = getElem(cx, thisObj, slot);
-            setElem(cx, result, slot - begin, temp);
+            setNewElem(cx, result, slot - begin, temp);
         }
 
         return result;
@@ -1563,20 +1618,20 @@ public class NativeArray extends IdScriptableObject implements List
             Object result = f.call(cx, parent, thisArg, innerArgs);
             switch (id) {
               case Id_every:
-                if (!ScriptRuntime.toBoolean(result))
+                if (!ScriptRuntime.toBoolean(result, cx))
                     return Boolean.FALSE;
                 break;
               case Id_filter:
-                if (ScriptRuntime.toBoolean(result))
-                  setElem(cx, array, j++, innerArgs[0]);
+                if (ScriptRuntime.toBoolean(result, cx))
+                  setNewElem(cx, array, j++, innerArgs[0]);
                 break;
               case Id_forEach:
                 break;
               case Id_map:
-                setElem(cx, array, i, result);
+                setNewElem(cx, array, i, result);
                 break;
               case Id_some:
-                if (ScriptRuntime.toBoolean(result))
+                if (ScriptRuntime.toBoolean(result, cx))
                     return Boolean.TRUE;
                 break;
             }
@@ -399,13 +399,7 @@ public class NativeGlobal implements Serializable, IdFunctionCall
         if (exponent != -1 && !exponentValid) {
             i = exponent;
         }
-        s = s.substring(start, i);
-        try {
-            return Double.valueOf(s);
-        }
-        catch (NumberFormatException ex) {
-            return ScriptRuntime.NaNobj;
-        }
+        return ScriptRuntime.wrapNumber(DecimalToDouble.parse(s, start, i));
     }
 
     /**
@@ -62,7 +62,36 @@ public class NativeJavaArray extends NativeJavaObject
         return "JavaArray";
     }
 
+    /**
+     * Wrap a Java array. Arrays of primitive types are wrapped by
+     * subclasses that access the elements directly instead of through
+     * <code>java.lang.reflect.Array</code>. Like
+     * {@link WrapFactory#wrap(Context, Scriptable, Object, Class)} does for
+     * values of primitive types, they return the elements of such arrays
+     * to scripts as <code>java.lang.Number</code>, <code>Boolean</code> or,
+     * for <code>char</code>, <code>Integer</code> instances.
+     */
     public static NativeJavaArray wrap(Scriptable scope, Object array) {
+        Class<?> cl = array.getClass().getComponentType();
+        if (cl != null && cl.isPrimitive()) {
+            if (cl == Double.TYPE) {
+                return new DoubleArray(scope, array);
+            } else if (cl == Integer.TYPE) {
+                return new IntArray(scope, array);
+            } else if (cl == Byte.TYPE) {
+                return new ByteArray(scope, array);
+            } else if (cl == Long.TYPE) {
+                return new LongArray(scope, array);
+            } else if (cl == Float.TYPE) {
+                return new FloatArray(scope, array);
+            } else if (cl == Short.TYPE) {
+                return new ShortArray(scope, array);
+            } else if (cl == Character.TYPE) {
+                return new CharArray(scope, array);
+            } else if (cl == Boolean.TYPE) {
+                return new BooleanArray(scope, array);
+            }
+        }
         return new NativeJavaArray(scope, array);
     }
 
@@ -130,12 +159,16 @@ public class NativeJavaArray extends NativeJavaObject
             Array.set(array, index, Context.jsToJava(value, cls));
         }
         else {
-            throw Context.reportRuntimeError2(
-                "msg.java.array.index.out.of.bounds", String.valueOf(index),
-                String.valueOf(length - 1));
+            throw indexOutOfBounds(index);
         }
     }
 
+    final RuntimeException indexOutOfBounds(int index) {
+        return Context.reportRuntimeError2(
+            "msg.java.array.index.out.of.bounds", String.valueOf(index),
+            String.valueOf(length - 1));
+    }
+
     @Override
     public Object getDefaultValue(Class<?> hint) {
         if (hint == null || hint == ScriptRuntime.StringClass)
@@ -173,6 +206,355 @@ public class NativeJavaArray extends NativeJavaObject
         return prototype;
     }
 
+    /**
+     * Convert the elements of array to a new Java array with the primitive
+     * component type, storing them without boxing.
+     */
+    static Object toPrimitiveArray(NativeArray array, int length,
+                                   Class<?> componentType)
+    {
+        if (componentType == Double.TYPE) {
+            double[] result = new double[length];
+            for (int i = 0; i != length; ++i) {
+                result[i] = toDouble(array.get(i, array));
+            }
+            return result;
+        } else if (componentType == Integer.TYPE) {
+            int[] result = new int[length];
+            for (int i = 0; i != length; ++i) {
+                result[i] = toInt(array.get(i, array));
+            }
+            return result;
+        } else if (componentType == Byte.TYPE) {
+            byte[] result = new byte[length];
+            for (int i = 0; i != length; ++i) {
+                result[i] = toByte(array.get(i, array));
+            }
+            return result;
+        } else if (componentType == Long.TYPE) {
+            long[] result = new long[length];
+            for (int i = 0; i != length; ++i) {
+                result[i] = toLong(array.get(i, array));
+            }
+            return result;
+        } else if (componentType == Float.TYPE) {
+            float[] result = new float[length];
+            for (int i = 0; i != length; ++i) {
+                result[i] = toFloat(array.get(i, array));
+            }
+            return result;
+        } else if (componentType == Short.TYPE) {
+            short[] result = new short[length];
+            for (int i = 0; i != length; ++i) {
+                result[i] = toShort(array.get(i, array));
+            }
+            return result;
+        } else if (componentType == Character.TYPE) {
+            char[] result = new char[length];
+            for (int i = 0; i != length; ++i) {
+                result[i] = toChar(array.get(i, array));
+            }
+            return result;
+        } else if (componentType == Boolean.TYPE) {
+            boolean[] result = new boolean[length];
+            for (int i = 0; i != length; ++i) {
+                result[i] = toBoolean(array.get(i, array));
+            }
+            return result;
+        }
+        throw Kit.codeBug();
+    }
+
+    // The conversions below give the same results as Context.jsToJava with
+    // a primitive type, which they call for values other than numbers.
+
+    static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number)value).doubleValue();
+        }
+        return ((Number)Context.jsToJava(value, Double.TYPE)).doubleValue();
+    }
+
+    static float toFloat(Object value) {
+        if (value instanceof Number) {
+            return NativeJavaObject.toFloat(((Number)value).doubleValue());
+        }
+        return ((Number)Context.jsToJava(value, Float.TYPE)).floatValue();
+    }
+
+    static long toLong(Object value) {
+        if (value instanceof Long) {
+            return ((Long)value).longValue();
+        } else if (value instanceof Number) {
+            return NativeJavaObject.toInteger(value, ScriptRuntime.LongClass,
+                                              NativeJavaObject.LONG_MIN,
+                                              NativeJavaObject.LONG_MAX);
+        }
+        return ((Number)Context.jsToJava(value, Long.TYPE)).longValue();
+    }
+
+    static int toInt(Object value) {
+        if (value instanceof Integer) {
+            return ((Integer)value).intValue();
+        } else if (value instanceof Number) {
+            return (int)NativeJavaObject.toInteger(value,
+                                                   ScriptRuntime.IntegerClass,
+                                                   Integer.MIN_VALUE,
+                                                   Integer.MAX_VALUE);
+        }
+        return ((Number)Context.jsToJava(value, Integer.TYPE)).intValue();
+    }
+
+    static short toShort(Object value) {
+        if (value instanceof Short) {
+            return ((Short)value).shortValue();
+        } else if (value instanceof Number) {
+            return (short)NativeJavaObject.toInteger(value,
+                                                     ScriptRuntime.ShortClass,
+                                                     Short.MIN_VALUE,
+                                                     Short.MAX_VALUE);
+        }
+        return ((Number)Context.jsToJava(value, Short.TYPE)).shortValue();
+    }
+
+    static byte toByte(Object value) {
+        if (value instanceof Byte) {
+            return ((Byte)value).byteValue();
+        } else if (value instanceof Number) {
+            return (byte)NativeJavaObject.toInteger(value,
+                                                    ScriptRuntime.ByteClass,
+                                                    Byte.MIN_VALUE,
+                                                    Byte.MAX_VALUE);
+        }
+        return ((Number)Context.jsToJava(value, Byte.TYPE)).byteValue();
+    }
+
+    static char toChar(Object value) {
+        if (value instanceof Number) {
+            return (char)NativeJavaObject.toInteger(value,
+                                                    ScriptRuntime.CharacterClass,
+                                                    Character.MIN_VALUE,
+                                                    Character.MAX_VALUE);
+        }
+        return ((Character)Context.jsToJava(value, Character.TYPE)).charValue();
+    }
+
+    static boolean toBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return ((Boolean)value).booleanValue();
+        }
+        return ((Boolean)Context.jsToJava(value, Boolean.TYPE)).booleanValue();
+    }
+
+    static final class DoubleArray extends NativeJavaArray
+    {
+        static final long serialVersionUID = 2949530484429718862L;
+
+        DoubleArray(Scriptable scope, Object array) {
+            super(scope, array);
+        }
+
+        @Override
+        public Object get(int index, Scriptable start) {
+            if (0 <= index && index < length) {
+                return Double.valueOf(((double[])array)[index]);
+            }
+            return Undefined.instance;
+        }
+
+        @Override
+        public void put(int index, Scriptable start, Object value) {
+            if (0 <= index && index < length) {
+                ((double[])array)[index] = toDouble(value);
+            } else {
+                throw indexOutOfBounds(index);
+            }
+        }
+    }
+
+    static final class FloatArray extends NativeJavaArray
+    {
+        static final long serialVersionUID = -6232408163412466935L;
+
+        FloatArray(Scriptable scope, Object array) {
+            super(scope, array);
+        }
+
+        @Override
+        public Object get(int index, Scriptable start) {
+            if (0 <= index && index < length) {
+                return Float.valueOf(((float[])array)[index]);
+            }
+            return Undefined.instance;
+        }
+
+        @Override
+        public void put(int index, Scriptable start, Object value) {
+            if (0 <= index && index < length) {
+                ((float[])array)[index] = toFloat(value);
+            } else {
+                throw indexOutOfBounds(index);
+            }
+        }
+    }
+
+    static final class LongArray extends NativeJavaArray
+    {
+        static final long serialVersionUID = 5147062402880712407L;
+
+        LongArray(Scriptable scope, Object array) {
+            super(scope, array);
+        }
+
+        @Override
+        public Object get(int index, Scriptable start) {
+            if (0 <= index && index < length) {
+                return Long.valueOf(((long[])array)[index]);
+            }
+            return Undefined.instance;
+        }
+
+        @Override
+        public void put(int index, Scriptable start, Object value) {
+            if (0 <= index && index < length) {
+                ((long[])array)[index] = toLong(value);
+            } else {
+                throw indexOutOfBounds(index);
+            }
+        }
+    }
+
+    static final class IntArray extends NativeJavaArray
+    {
+        static final long serialVersionUID = -1803683209733734315L;
+
+        IntArray(Scriptable scope, Object array) {
+            super(scope, array);
+        }
+
+        @Override
+        public Object get(int index, Scriptable start) {
+            if (0 <= index && index < length) {
+                return Integer.valueOf(((int[])array)[index]);
+            }
+            return Undefined.instance;
+        }
+
+        @Override
+        public void put(int index, Scriptable start, Object value) {
+            if (0 <= index && index < length) {
+                ((int[])array)[index] = toInt(value);
+            } else {
+                throw indexOutOfBounds(index);
+            }
+        }
+    }
+
+    static final class ShortArray extends NativeJavaArray
+    {
+        static final long serialVersionUID = 3410924618360581277L;
+
+        ShortArray(Scriptable scope, Object array) {
+            super(scope, array);
+        }
+
+        @Override
+        public Object get(int index, Scriptable start) {
+            if (0 <= index && index < length) {
+                return Short.valueOf(((short[])array)[index]);
+            }
+            return Undefined.instance;
+        }
+
+        @Override
+        public void put(int index, Scriptable start, Object value) {
+            if (0 <= index && index < length) {
+                ((short[])array)[index] = toShort(value);
+            } else {
+                throw indexOutOfBounds(index);
+            }
+        }
+    }
+
+    static final class ByteArray extends NativeJavaArray
+    {
+        static final long serialVersionUID = -8217400633893262549L;
+
+        ByteArray(Scriptable scope, Object array) {
+            super(scope, array);
+        }
+
+        @Override
+        public Object get(int index, Scriptable start) {
+            if (0 <= index && index < length) {
+                return Byte.valueOf(((byte[])array)[index]);
+            }
+            return Undefined.instance;
+        }
+
+        @Override
+        public void put(int index, Scriptable start, Object value) {
+            if (0 <= index && index < length) {
+                ((byte[])array)[index] = toByte(value);
+            } else {
+                throw indexOutOfBounds(index);
+            }
+        }
+    }
+
+    static final class CharArray extends NativeJavaArray
+    {
+        static final long serialVersionUID = 7604379574210983611L;
+
+        CharArray(Scriptable scope, Object array) {
+            super(scope, array);
+        }
+
+        @Override
+        public Object get(int index, Scriptable start) {
+            if (0 <= index && index < length) {
+                // characters are numbers in JavaScript
+                return Integer.valueOf(((char[])array)[index]);
+            }
+            return Undefined.instance;
+        }
+
+        @Override
+        public void put(int index, Scriptable start, Object value) {
+            if (0 <= index && index < length) {
+                ((char[])array)[index] = toChar(value);
+            } else {
+                throw indexOutOfBounds(index);
+            }
+        }
+    }
+
+    static final class BooleanArray extends NativeJavaArray
+    {
+        static final long serialVersionUID = -3719548542186395028L;
+
+        BooleanArray(Scriptable scope, Object array) {
+            super(scope, array);
+        }
+
+        @Override
+        public Object get(int index, Scriptable start) {
+            if (0 <= index && index < length) {
+                return Boolean.valueOf(((boolean[])array)[index]);
+            }
+            return Undefined.instance;
+        }
+
+        @Override
+        public void put(int index, Scriptable start, Object value) {
+            if (0 <= index && index < length) {
+                ((boolean[])array)[index] = toBoolean(value);
+            } else {
+                throw indexOutOfBounds(index);
+            }
+        }
+    }
+
     Object array;
     int length;
     Class<?> cls;
@@ -654,6 +654,15 @@ WrapFactory#wrap(Context, Scriptable, Object, Class)}
                 NativeArray array = (NativeArray) value;
                 long length = array.getLength();
                 Class<?> arrayType = type.getComponentType();
+                if (arrayType.isPrimitive()) {
+                    try {
+                        return NativeJavaArray.toPrimitiveArray(
+                            array, (int)length, arrayType);
+                    }
+                    catch (EvaluatorException ee) {
+                        reportConversionError(value, type);
+                    }
+                }
                 Object Result = Array.newInstance(arrayType, (int)length);
                 for (int i = 0 ; i < length ; ++i) {
                     try  {
@@ -707,6 +716,16 @@ WrapFactory#wrap(Context, Scriptable, Object, Class)}
         return value;
     }
 
+    /* Long values cannot be expressed exactly in doubles.
+     * We thus use the largest and smallest double value that
+     * has a value expressible as a long value. We build these
+     * numerical values from their hexidecimal representations
+     * to avoid any problems caused by attempting to parse a
+     * decimal representation.
+     */
+    static final double LONG_MAX = Double.longBitsToDouble(0x43dfffffffffffffL);
+    static final double LONG_MIN = Double.longBitsToDouble(0xc3e0000000000000L);
+
     private static Object coerceToNumber(Class<?> type, Object value)
     {
         Class<?> valueClass = value.getClass();
@@ -735,25 +754,7 @@ WrapFactory#wrap(Context, Scriptable, Object, Class)}
                 return value;
             }
             else {
-                double number = toDouble(value);
-                if (Double.isInfinite(number) || Double.isNaN(number)
-                    || number == 0.0) {
-                    return new Float((float)number);
-                }
-                else {
-                    double absNumber = Math.abs(number);
-                    if (absNumber < Float.MIN_VALUE) {
-                        return new Float((number > 0.0) ? +0.0 : -0.0);
-                    }
-                    else if (absNumber > Float.MAX_VALUE) {
-                        return new Float((number > 0.0) ?
-                                         Float.POSITIVE_INFINITY :
-                                         Float.NEGATIVE_INFINITY);
-                    }
-                    else {
-                        return new Float((float)number);
-                    }
-                }
+                return new Float(toFloat(toDouble(value)));
             }
         }
 
@@ -774,19 +775,10 @@ WrapFactory#wrap(Context, Scriptable, Object, Class)}
             if (valueClass == ScriptRuntime.LongClass) {
                 return value;
             } else {
-                /* Long values cannot be expressed exactly in doubles.
-                 * We thus use the largest and smallest double value that
-                 * has a value expressible as a long value. We build these
-                 * numerical values from their hexidecimal representations
-                 * to avoid any problems caused by attempting to parse a
-                 * decimal representation.
-                 */
-                final double max = Double.longBitsToDouble(0x43dfffffffffffffL);
-                final double min = Double.longBitsToDouble(0xc3e0000000000000L);
                 return Long.valueOf(toInteger(value,
                                           ScriptRuntime.LongClass,
-                                          min,
-                                          max));
+                                          LONG_MIN,
+                                          LONG_MAX));
             }
         }
 
@@ -865,8 +857,34 @@ WrapFactory#wrap(Context, Scriptable, Object, Class)}
         }
     }
 
-    private static long toInteger(Object value, Class<?> type,
-                                  double min, double max)
+    /**
+     * Convert number to float, keeping its sign when it underflows or
+     * overflows.
+     */
+    static float toFloat(double number)
+    {
+        if (Double.isInfinite(number) || Double.isNaN(number)
+            || number == 0.0) {
+            return (float)number;
+        }
+        else {
+            double absNumber = Math.abs(number);
+            if (absNumber < Float.MIN_VALUE) {
+                return (number > 0.0) ? +0.0f : -0.0f;
+            }
+            else if (absNumber > Float.MAX_VALUE) {
+                return (number > 0.0) ?
+                       Float.POSITIVE_INFINITY :
+                       Float.NEGATIVE_INFINITY;
+            }
+            else {
+                return (float)number;
+            }
+        }
+    }
+
+    static long toInteger(Object value, Class<?> type,
+                          double min, double max)
     {
         double d = toDouble(value);
 
@@ -40,8 +40,8 @@
 
 package org.mozilla.javascript;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class reflects Java packages into the JavaScript environment.  We
@@ -137,13 +137,14 @@ public class NativeJavaPackage extends ScriptableObject
         }
     }
 
-    synchronized Object getPkgProperty(String name, Scriptable start,
-                                       boolean createPkg)
+    Object getPkgProperty(String name, Scriptable start, boolean createPkg)
     {
+        // Classes and packages found before are read without locking
         Object cached = super.get(name, start);
         if (cached != NOT_FOUND)
             return cached;
-        if (negativeCache != null && negativeCache.contains(name)) {
+        Map<String,Boolean> negative = negativeCache;
+        if (negative != null && negative.containsKey(name)) {
             // Performance optimization: see bug 421071
             return null;
         }
@@ -152,22 +153,22 @@ public class NativeJavaPackage extends ScriptableObject
                                ? name : packageName + '.' + name;
         Context cx = Context.getContext();
         ClassShutter shutter = cx.getClassShutter();
-        Scriptable newValue = null;
+        Class<?> cl = null;
         if (shutter == null || shutter.visibleToScripts(className)) {
-            Class<?> cl = null;
-            if (classLoader != null) {
-                cl = Kit.classOrNull(classLoader, className);
-            } else {
-                cl = Kit.classOrNull(className);
-            }
+            cl = JavaPackageCache.getClass(classLoader, className);
+        }
+
+        synchronized (this) {
+            // Another thread may have resolved the name meanwhile
+            cached = super.get(name, start);
+            if (cached != NOT_FOUND)
+                return cached;
+            Scriptable newValue = null;
             if (cl != null) {
                 WrapFactory wrapFactory = cx.getWrapFactory();
                 newValue = wrapFactory.wrapJavaClass(cx, getTopLevelScope(this), cl);
                 newValue.setPrototype(getPrototype());
-            }
-        }
-        if (newValue == null) {
-            if (createPkg) {
+            } else if (createPkg) {
                 NativeJavaPackage pkg;
                 pkg = new NativeJavaPackage(true, className, classLoader);
                 ScriptRuntime.setObjectProtoAndParent(pkg, getParentScope());
@@ -175,16 +176,16 @@ public class NativeJavaPackage extends ScriptableObject
             } else {
                 // add to negative cache
                 if (negativeCache == null)
-                    negativeCache = new HashSet<String>();
-                negativeCache.add(name);
+                    negativeCache = new ConcurrentHashMap<String,Boolean>();
+                negativeCache.put(name, Boolean.TRUE);
             }
+            if (newValue != null) {
+                // Make it available for fast lookup and sharing of
+                // lazily-reflected constructors and static members.
+                super.put(name, start, newValue);
+            }
+            return newValue;
         }
-        if (newValue != null) {
-            // Make it available for fast lookup and sharing of
-            // lazily-reflected constructors and static members.
-            super.put(name, start, newValue);
-        }
-        return newValue;
     }
 
     @Override
@@ -215,5 +216,5 @@ public class NativeJavaPackage extends ScriptableObject
 
     private String packageName;
     private ClassLoader classLoader;
-    private Set<String> negativeCache = null;
+    private transient volatile Map<String,Boolean> negativeCache;
 }
@@ -66,11 +66,23 @@ public class NodeTransformer
     }
 
     public final void transform(ScriptNode tree)
+    {
+        transform(tree, true);
+    }
+
+    /**
+     * Transform the tree, and if <tt>nested</tt> is true all functions
+     * nested in it.  Otherwise each nested function has to be transformed
+     * separately before code is generated for it.
+     */
+    public final void transform(ScriptNode tree, boolean nested)
     {
         transformCompilationUnit(tree);
-        for (int i = 0; i != tree.getFunctionCount(); ++i) {
-            FunctionNode fn = tree.getFunctionNode(i);
-            transform(fn);
+        if (nested) {
+            for (int i = 0; i != tree.getFunctionCount(); ++i) {
+                FunctionNode fn = tree.getFunctionNode(i);
+                transform(fn, true);
+            }
         }
     }
 
@@ -835,8 +835,15 @@ public class Parser
         try {
             parseFunctionParams(fnNode);
             fnNode.setBody(parseFunctionBody());
-            fnNode.setEncodedSourceBounds(functionSourceStart, ts.tokenEnd);
-            fnNode.setLength(ts.tokenEnd - functionSourceStart);
+            int end = ts.tokenEnd;
+            if (fnNode.isExpressionClosure()) {
+                // the token after the body expression was peeked already
+                AstNode value = ((ReturnStatement)fnNode.getBody())
+                                .getReturnValue();
+                end = value.getAbsolutePosition() + value.getLength();
+            }
+            fnNode.setEncodedSourceBounds(functionSourceStart, end);
+            fnNode.setLength(end - functionSourceStart);
 
             if (compilerEnv.isStrictMode()
                 && !fnNode.getBody().hasConsistentReturnUsage()) {
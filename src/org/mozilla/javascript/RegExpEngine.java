@@ -124,4 +124,25 @@ public interface RegExpEngine {
      * @see RegExpEngine#find(int, boolean)
      */
     String group(int group);
+
+    /**
+     * Get start of specified group.
+     * @param group 0 for entire regexp match.  1, 2, 3, ... for captured
+     * groups.
+     * @return start of group or -1 if no group matched.  Only valid after
+     * calling {@link #find(int, boolean)} and getting a successful match.
+     * @see RegExpEngine#find(int, boolean)
+     */
+    int start(int group);
+
+    /**
+     * Get end of specified group.
+     * @param group 0 for entire regexp match.  1, 2, 3, ... for captured
+     * groups.
+     * @return 1 character after end of group or -1 if no group matched.
+     * Only valid after calling {@link #find(int, boolean)} and getting a
+     * successful match.
+     * @see RegExpEngine#find(int, boolean)
+     */
+    int end(int group);
 }
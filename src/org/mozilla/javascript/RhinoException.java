@@ -273,19 +273,25 @@ public abstract class RhinoException extends RuntimeException
      * @since 1.7R3
      */
     public ScriptStackElement[] getScriptStack() {
-        List<ScriptStackElement> list = new ArrayList<ScriptStackElement>();
         ScriptStackElement[][] interpreterStack = null;
         if (interpreterStackInfo != null) {
             Evaluator interpreter = Context.createInterpreter();
             if (interpreter instanceof Interpreter)
                 interpreterStack = ((Interpreter) interpreter).getScriptStackElements(this);
         }
+        return getScriptStack(getStackTrace(), interpreterStack);
+    }
+
+    /**
+     * Merge the script frames of a Java stack trace, that is frames of
+     * compiled scripts, with the frames of interpreter invocations, given
+     * one group per <code>Interpreter.interpretLoop</code> frame, innermost
+     * first.
+     */
+    static ScriptStackElement[] getScriptStack(StackTraceElement[] stack,
+            ScriptStackElement[][] interpreterStack) {
+        List<ScriptStackElement> list = new ArrayList<ScriptStackElement>();
         int interpreterStackIndex = 0;
-        StackTraceElement[] stack = getStackTrace();
-        // Pattern to recover function name from java method name -
-        // see Codegen.getBodyMethodName()
-        // kudos to Marc Guillemot for coming up with this
-        Pattern pattern = Pattern.compile("_c_(.*)_\\d+");
         for (StackTraceElement e : stack) {
             String fileName = e.getFileName();
             if (e.getMethodName().startsWith("_c_")
@@ -293,7 +299,7 @@ public abstract class RhinoException extends RuntimeException
                     && fileName != null
                     && !fileName.endsWith(".java")) {
                 String methodName = e.getMethodName();
-                Matcher match = pattern.matcher(methodName);
+                Matcher match = BODY_METHOD_NAME.matcher(methodName);
                 // the method representing the main script is always "_c_script_0" -
                 // at least we hope so
                 methodName = !"_c_script_0".equals(methodName) && match.find() ?
@@ -367,6 +373,12 @@ public abstract class RhinoException extends RuntimeException
     private String lineSource;
     private int columnNumber;
 
+    // Pattern to recover function name from java method name -
+    // see Codegen.getBodyMethodName()
+    // kudos to Marc Guillemot for coming up with this
+    private static final Pattern BODY_METHOD_NAME =
+        Pattern.compile("_c_(.*)_\\d+");
+
     Object interpreterStackInfo;
     int[] interpreterLineData;
 }
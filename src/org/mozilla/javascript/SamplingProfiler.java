@@ -0,0 +1,263 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package org.mozilla.javascript;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A sampling profiler for scripts. Once started on a {@link ContextFactory},
+ * it periodically takes the script stack of every thread that runs with a
+ * Context created by that factory and counts how often each stack was seen.
+ * Frames of interpreted and of compiled functions are both recovered, the
+ * same way as {@link RhinoException#getScriptStack()} recovers them. The
+ * counts can be written in the folded stack format read by flame graph
+ * tools, one stack per line, outermost frame first:
+ * <pre>
+ * &#64;main.js;render()&#64;view.js;format()&#64;util.js 42
+ * </pre>
+ * Sampling only costs the profiled threads the time needed to take their
+ * Java stack trace; the sampling interval controls the overhead.
+ * Only threads in the RUNNABLE state are sampled, so time spent waiting is
+ * not counted. Contexts created before the profiler was started, unless
+ * taken again from the Context pool of the factory, or associated with a
+ * thread through {@link Context#enter(Context)}, are not seen by the
+ * profiler.
+ *
+ * @since 1.7 Release 3
+ */
+public class SamplingProfiler implements ContextFactory.Listener
+{
+    private final long interval;
+    private final boolean lineNumbers;
+    private final Map<Thread, Context> contexts =
+        new ConcurrentHashMap<Thread, Context>();
+    private final Map<String, int[]> samples = new HashMap<String, int[]>();
+    private int sampleCount;
+    private ContextFactory factory;
+    private Thread sampler;
+
+    /**
+     * Create a profiler sampling at the given interval.
+     * @param interval the time between samples, in milliseconds
+     * @param lineNumbers whether frames include the current line number, or
+     *        just the function name and file name
+     */
+    public SamplingProfiler(long interval, boolean lineNumbers)
+    {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Bad interval: " + interval);
+        }
+        this.interval = interval;
+        this.lineNumbers = lineNumbers;
+    }
+
+    /**
+     * Start sampling the Contexts created by the factory from now on.
+     * @throws IllegalStateException if the profiler is already started
+     */
+    public synchronized void start(ContextFactory factory)
+    {
+        if (sampler != null) {
+            throw new IllegalStateException("Profiler already started");
+        }
+        factory.addListener(this);
+        this.factory = factory;
+        sampler = new Thread("Rhino sampling profiler") {
+            @Override
+            public void run() {
+                try {
+                    while (!isInterrupted()) {
+                        Thread.sleep(interval);
+                        sample();
+                    }
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        };
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    /**
+     * Stop sampling. The samples taken so far are kept.
+     */
+    public synchronized void stop()
+    {
+        if (sampler == null) {
+            return;
+        }
+        factory.removeListener(this);
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        contexts.clear();
+        factory = null;
+        sampler = null;
+    }
+
+    public void contextCreated(Context cx)
+    {
+        contexts.put(Thread.currentThread(), cx);
+    }
+
+    public void contextReleased(Context cx)
+    {
+        contexts.remove(Thread.currentThread());
+    }
+
+    /**
+     * Take one sample of every thread using a Context of the factory.
+     */
+    void sample()
+    {
+        for (Map.Entry<Thread, Context> entry : contexts.entrySet()) {
+            Thread thread = entry.getKey();
+            if (thread.getState() != Thread.State.RUNNABLE) {
+                continue;
+            }
+            StackTraceElement[] trace = thread.getStackTrace();
+            ScriptStackElement[] stack;
+            try {
+                stack = RhinoException.getScriptStack(trace,
+                    Interpreter.getScriptStackElements(entry.getValue()));
+            } catch (RuntimeException ex) {
+                // The thread changed its interpreter frames while they
+                // were read, drop the sample
+                continue;
+            }
+            if (stack.length != 0) {
+                add(fold(stack));
+            }
+        }
+    }
+
+    private String fold(ScriptStackElement[] stack)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = stack.length; i != 0;) {
+            ScriptStackElement e = stack[--i];
+            int start = sb.length();
+            if (e.functionName != null) {
+                sb.append(e.functionName).append("()");
+            }
+            sb.append('@').append(e.fileName);
+            if (lineNumbers && e.lineNumber > -1) {
+                sb.append(':').append(e.lineNumber);
+            }
+            // ';' separates frames and the last space the count
+            for (int j = start; j != sb.length(); ++j) {
+                char c = sb.charAt(j);
+                if (c == ';' || Character.isWhitespace(c)) {
+                    sb.setCharAt(j, '_');
+                }
+            }
+            if (i != 0) {
+                sb.append(';');
+            }
+        }
+        return sb.toString();
+    }
+
+    private void add(String stack)
+    {
+        synchronized (samples) {
+            int[] count = samples.get(stack);
+            if (count == null) {
+                samples.put(stack, new int[] { 1 });
+            } else {
+                ++count[0];
+            }
+            ++sampleCount;
+        }
+    }
+
+    /**
+     * Return the number of samples taken since the profiler was created or
+     * last reset. Samples in which no script was running are not counted.
+     */
+    public int getSampleCount()
+    {
+        synchronized (samples) {
+            return sampleCount;
+        }
+    }
+
+    /**
+     * Discard all samples taken so far.
+     */
+    public void reset()
+    {
+        synchronized (samples) {
+            samples.clear();
+            sampleCount = 0;
+        }
+    }
+
+    /**
+     * Write the samples in folded stack format, one line per distinct stack
+     * with its frames separated by ';' and followed by a space and the
+     * number of samples. Lines are sorted by stack.
+     */
+    public void writeFoldedStacks(Writer out) throws IOException
+    {
+        List<String> lines = new ArrayList<String>();
+        synchronized (samples) {
+            for (Map.Entry<String, int[]> entry : samples.entrySet()) {
+                lines.add(entry.getKey() + ' ' + entry.getValue()[0]);
+            }
+        }
+        Collections.sort(lines);
+        for (String line : lines) {
+            out.write(line);
+            out.write('\n');
+        }
+        out.flush();
+    }
+}
@@ -352,6 +352,18 @@ public class ScriptRuntime {
      * See ECMA 9.2.
      */
     public static boolean toBoolean(Object val)
+    {
+        return toBoolean(val, null);
+    }
+
+    /**
+     * Convert the value to a boolean. Objects are converted with the given
+     * Context, or with the current Context if <code>cx</code> is null.
+     *
+     * See ECMA 9.2.
+     * @since 1.7R3
+     */
+    public static boolean toBoolean(Object val, Context cx)
     {
         for (;;) {
             if (val instanceof Boolean)
@@ -370,7 +382,10 @@ public class ScriptRuntime {
                 {
                     return false;
                 }
-                if (Context.getContext().isVersionECMA1()) {
+                if (cx == null) {
+                    cx = Context.getContext();
+                }
+                if (cx.isVersionECMA1()) {
                     // pure ECMA
                     return true;
                 }
@@ -468,14 +483,10 @@ public class ScriptRuntime {
             if (radix == 10) {
                 /* If we're accumulating a decimal number and the number
                  * is >= 2^53, then the result from the repeated multiply-add
-                 * above may be inaccurate.  Call Java to get the correct
-                 * answer.
+                 * above may be inaccurate.  Reparse the digits to get the
+                 * correctly rounded answer.
                  */
-                try {
-                    return Double.valueOf(s.substring(start, end)).doubleValue();
-                } catch (NumberFormatException nfe) {
-                    return NaN;
-                }
+                return DecimalToDouble.parse(s, start, end);
             } else if (radix == 2 || radix == 4 || radix == 8 ||
                        radix == 16 || radix == 32)
             {
@@ -637,27 +648,8 @@ public class ScriptRuntime {
                     : Double.POSITIVE_INFINITY;
             return NaN;
         }
-        // A non-hexadecimal, non-infinity number:
-        // just try a normal floating point conversion
-        String sub = s.substring(start, end+1);
-        if (MSJVM_BUG_WORKAROUNDS) {
-            // The MS JVM will accept non-conformant strings
-            // rather than throwing a NumberFormatException
-            // as it should.
-            for (int i=sub.length()-1; i >= 0; i--) {
-                char c = sub.charAt(i);
-                if (('0' <= c && c <= '9') || c == '.' ||
-                    c == 'e' || c == 'E'  ||
-                    c == '+' || c == '-')
-                    continue;
-                return NaN;
-            }
-        }
-        try {
-            return Double.valueOf(sub).doubleValue();
-        } catch (NumberFormatException ex) {
-            return NaN;
-        }
+        // A non-hexadecimal, non-infinity number
+        return DecimalToDouble.parse(s, start, end + 1);
     }
 
     /**
@@ -683,9 +675,6 @@ public class ScriptRuntime {
         return result;
     }
 
-    /* Work around Microsoft Java VM bugs. */
-    private final static boolean MSJVM_BUG_WORKAROUNDS = true;
-
     public static String escapeString(String s)
     {
         return escapeString(s, '"');
@@ -847,9 +836,8 @@ public class ScriptRuntime {
         if (base != 10) {
             return DToA.JS_dtobasestr(base, d);
         } else {
-            StringBuffer result = new StringBuffer();
-            DToA.JS_dtostr(result, DToA.DTOSTR_STANDARD, 0, d);
-            return result.toString();
+            // ECMA 9.8.1: shortest round-trip representation
+            return DoubleToDecimal.toString(d);
         }
 
     }
@@ -2131,6 +2119,17 @@ public class ScriptRuntime {
     }
 
     public static Boolean enumNext(Object enumObj)
+    {
+        return enumNext(enumObj, null);
+    }
+
+    /**
+     * Advance the enumeration. The <code>next</code> method of an iterator
+     * is called with the given Context, or with the current Context if
+     * <code>cx</code> is null.
+     * @since 1.7R3
+     */
+    public static Boolean enumNext(Object enumObj, Context cx)
     {
         IdEnumeration x = (IdEnumeration)enumObj;
         if (x.iterator != null) {
@@ -2138,7 +2137,9 @@ public class ScriptRuntime {
             if (!(v instanceof Callable))
                 return Boolean.FALSE;
             Callable f = (Callable) v;
-            Context cx = Context.getContext();
+            if (cx == null) {
+                cx = Context.getContext();
+            }
             try {
                 x.currentId = f.call(cx, x.iterator.getParentScope(),
                                      x.iterator, emptyArgs);
@@ -2655,7 +2656,15 @@ public class ScriptRuntime {
      */
     public static String typeofName(Scriptable scope, String id)
     {
-        Context cx = Context.getContext();
+        return typeofName(scope, id, Context.getContext());
+    }
+
+    /**
+     * The typeof operator that correctly handles the undefined case
+     * @since 1.7R3
+     */
+    public static String typeofName(Scriptable scope, String id, Context cx)
+    {
         Scriptable val = bind(cx, scope, id);
         if (val == null)
             return "undefined";
@@ -3436,7 +3445,7 @@ public class ScriptRuntime {
             // scope that can be used to retrieve the Java exception associated
             // with the JavaScript exception (to get stack trace info, etc.)
             catchScopeObject.defineProperty(
-                "__exception__", Context.javaToJS(t, scope),
+                "__exception__", Context.javaToJS(t, scope, cx),
                 ScriptableObject.PERMANENT|ScriptableObject.DONTENUM);
         }
 
@@ -3664,7 +3673,14 @@ public class ScriptRuntime {
 
     public static Object[] getArrayElements(Scriptable object)
     {
-        Context cx = Context.getContext();
+        return getArrayElements(Context.getContext(), object);
+    }
+
+    /**
+     * @since 1.7R3
+     */
+    public static Object[] getArrayElements(Context cx, Scriptable object)
+    {
         long longLen = NativeArray.getLengthProperty(cx, object);
         if (longLen > Integer.MAX_VALUE) {
             // arrays beyond  MAX_INT is not in Java in any case
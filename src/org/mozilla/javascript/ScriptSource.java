@@ -0,0 +1,400 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package org.mozilla.javascript;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.ScriptNode;
+
+/**
+ * The original text of a script, shared by the script and all its
+ * functions when {@link Context#setSourceRetention(int)} selects a mode
+ * other than {@link Context#SOURCE_RETENTION_ENCODED}.  Functions only
+ * record their range in the text; the encoded source needed by the
+ * {@link Decompiler} is produced by parsing that range again when the
+ * source of a function is requested.
+ */
+public abstract class ScriptSource implements Serializable
+{
+    static final long serialVersionUID = -1740497530838592441L;
+
+    ScriptSource() { }
+
+    static ScriptSource create(String text, int retention)
+    {
+        switch (retention) {
+          case Context.SOURCE_RETENTION_TEXT:
+            return new Text(text);
+          case Context.SOURCE_RETENTION_COMPRESSED:
+            return new Compressed(text);
+          case Context.SOURCE_RETENTION_FILE:
+            try {
+                return new TempFile(text);
+            } catch (IOException ex) {
+                // keep the text in memory if it can not be written out
+                return new Compressed(text);
+            }
+          default:
+            throw new IllegalArgumentException(String.valueOf(retention));
+        }
+    }
+
+    /**
+     * Returns the length of the text.
+     */
+    public abstract int length();
+
+    /**
+     * Returns the characters of the text from <code>start</code>
+     * (inclusive) to <code>end</code> (exclusive).
+     */
+    public abstract String getText(int start, int end);
+
+    /**
+     * Parse the range of the text again and return its encoded source.
+     *
+     * @param start start of the range
+     * @param end end of the range
+     * @param functionType type of the function in the range, or 0 if the
+     *        range is the whole script
+     * @param languageVersion language version the script was compiled with
+     */
+    String getEncodedSource(int start, int end, int functionType,
+                            int languageVersion)
+    {
+        String text = getText(start, end);
+        String source;
+        if (functionType == 0) {
+            source = text;
+        } else if (startsWithFunction(text)) {
+            source = "(" + text + ")";
+        } else {
+            // getters and setters start with the property name
+            source = "({get " + text + "})";
+        }
+
+        // the text was accepted by the compiler already, so only the
+        // options that change how it is parsed matter here
+        CompilerEnvirons env = new CompilerEnvirons();
+        Context cx = Context.getCurrentContext();
+        if (cx != null) {
+            env.setReservedKeywordAsIdentifier(cx.hasFeature(
+                Context.FEATURE_RESERVED_KEYWORD_AS_IDENTIFIER));
+            env.setAllowMemberExprAsFunctionName(cx.hasFeature(
+                Context.FEATURE_MEMBER_EXPR_AS_FUNCTION_NAME));
+            env.setXmlAvailable(cx.hasFeature(Context.FEATURE_E4X));
+        }
+        env.setLanguageVersion(languageVersion);
+        AstRoot ast = new Parser(env, env.getErrorReporter())
+                .parse(source, null, 1);
+        ScriptNode tree = new IRFactory(env).transformTree(ast);
+        String encoded = tree.getEncodedSource();
+        if (functionType == 0) {
+            return encoded.substring(tree.getEncodedSourceStart(),
+                                     tree.getEncodedSourceEnd());
+        }
+        ScriptNode fn = tree.getFunctionNode(0);
+        StringBuilder sb = new StringBuilder(
+                encoded.substring(fn.getEncodedSourceStart(),
+                                  fn.getEncodedSourceEnd()));
+        // the range was parsed as a function expression
+        sb.setCharAt(1, (char)functionType);
+        return sb.toString();
+    }
+
+    private static boolean startsWithFunction(String text)
+    {
+        return text.startsWith("function")
+            && (text.length() == 8
+                || !Character.isJavaIdentifierPart(text.charAt(8)));
+    }
+
+    private static final class Text extends ScriptSource
+    {
+        static final long serialVersionUID = 4300523659564154012L;
+
+        private final String text;
+
+        Text(String text)
+        {
+            this.text = text;
+        }
+
+        @Override
+        public int length()
+        {
+            return text.length();
+        }
+
+        @Override
+        public String getText(int start, int end)
+        {
+            return text.substring(start, end);
+        }
+    }
+
+    private static final class Compressed extends ScriptSource
+    {
+        static final long serialVersionUID = -8014640251294478431L;
+
+        private final int length;
+        private final byte[] data;
+        private transient SoftReference<String> cache;
+
+        Compressed(String text)
+        {
+            length = text.length();
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try {
+                deflater.setInput(toBytes(text));
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                data = out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public int length()
+        {
+            return length;
+        }
+
+        @Override
+        public synchronized String getText(int start, int end)
+        {
+            String text = cache == null ? null : cache.get();
+            if (text == null) {
+                text = inflate();
+                cache = new SoftReference<String>(text);
+            }
+            return text.substring(start, end);
+        }
+
+        private String inflate()
+        {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(buffer);
+                    if (n == 0 && inflater.needsInput()) {
+                        throw new DataFormatException("truncated source");
+                    }
+                    out.write(buffer, 0, n);
+                }
+                byte[] bytes = out.toByteArray();
+                return fromBytes(bytes, 0, bytes.length);
+            } catch (DataFormatException ex) {
+                throw Context.throwAsScriptRuntimeEx(ex);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Text stored as UTF-16 in a temporary file, so that a range can be
+     * read by seeking to twice its start offset. The file is deleted once
+     * the object is collected, or when the JVM exits.
+     */
+    private static final class TempFile extends ScriptSource
+    {
+        static final long serialVersionUID = 2542113954311734095L;
+
+        private final int length;
+        private final File file;
+
+        TempFile(String text) throws IOException
+        {
+            length = text.length();
+            file = File.createTempFile("rhino", ".js");
+            FileReaper.register(this, file);
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(toBytes(text));
+            } finally {
+                out.close();
+            }
+        }
+
+        @Override
+        public int length()
+        {
+            return length;
+        }
+
+        @Override
+        public synchronized String getText(int start, int end)
+        {
+            if (start < 0 || start > end || end > length) {
+                throw new StringIndexOutOfBoundsException(start);
+            }
+            try {
+                RandomAccessFile in = new RandomAccessFile(file, "r");
+                try {
+                    byte[] bytes = new byte[2 * (end - start)];
+                    in.seek(2L * start);
+                    in.readFully(bytes);
+                    return fromBytes(bytes, 0, bytes.length);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException ex) {
+                throw Context.throwAsScriptRuntimeEx(ex);
+            }
+        }
+
+        // the file does not travel with the object
+        private Object writeReplace() throws ObjectStreamException
+        {
+            return new Text(getText(0, length));
+        }
+    }
+
+    /**
+     * Deletes the file of a {@link TempFile} once it is collected. The
+     * collected objects are looked for whenever a file is registered, and
+     * the files still registered are deleted when the JVM exits.
+     */
+    private static final class FileReaper extends PhantomReference<TempFile>
+    {
+        private static final ReferenceQueue<TempFile> queue
+            = new ReferenceQueue<TempFile>();
+        // Only the files not deleted yet, unlike File.deleteOnExit
+        private static final Set<FileReaper> reapers
+            = new HashSet<FileReaper>();
+        private static boolean exitHookAdded;
+
+        private final File file;
+
+        private FileReaper(TempFile source, File file)
+        {
+            super(source, queue);
+            this.file = file;
+        }
+
+        static void register(TempFile source, File file)
+        {
+            Reference<? extends TempFile> ref;
+            while ((ref = queue.poll()) != null) {
+                FileReaper reaper = (FileReaper)ref;
+                synchronized (reapers) {
+                    reapers.remove(reaper);
+                }
+                reaper.file.delete();
+            }
+            synchronized (reapers) {
+                if (!exitHookAdded) {
+                    exitHookAdded = true;
+                    addExitHook();
+                }
+                reapers.add(new FileReaper(source, file));
+            }
+        }
+
+        private static void addExitHook()
+        {
+            try {
+                Runtime.getRuntime().addShutdownHook(new Thread() {
+                    @Override
+                    public void run() {
+                        ArrayList<FileReaper> remaining;
+                        synchronized (reapers) {
+                            remaining = new ArrayList<FileReaper>(reapers);
+                        }
+                        for (int i = 0; i != remaining.size(); ++i) {
+                            remaining.get(i).file.delete();
+                        }
+                    }
+                });
+            } catch (SecurityException ex) {
+                // the files are only deleted once collected
+            }
+        }
+    }
+
+    // UTF-16BE without a charset, so that unpaired surrogates in string
+    // literals survive and offsets stay valid
+    private static byte[] toBytes(String text)
+    {
+        int length = text.length();
+        byte[] bytes = new byte[2 * length];
+        for (int i = 0; i != length; ++i) {
+            char c = text.charAt(i);
+            bytes[2 * i] = (byte)(c >>> 8);
+            bytes[2 * i + 1] = (byte)c;
+        }
+        return bytes;
+    }
+
+    private static String fromBytes(byte[] bytes, int offset, int length)
+    {
+        char[] chars = new char[length / 2];
+        for (int i = 0; i != chars.length; ++i) {
+            int b = offset + 2 * i;
+            chars[i] = (char)(((bytes[b] & 0xFF) << 8) | (bytes[b + 1] & 0xFF));
+        }
+        return new String(chars);
+    }
+}
@@ -514,11 +514,9 @@ class TokenStream
 
                 double dval;
                 if (base == 10 && !isInteger) {
-                    try {
-                        // Use Java conversion to number from string...
-                        dval = Double.valueOf(numString).doubleValue();
-                    }
-                    catch (NumberFormatException ex) {
+                    dval = DecimalToDouble.parse(numString, 0,
+                                                 numString.length());
+                    if (dval != dval) {
                         parser.addError("msg.caught.nfe");
                         return Token.ERROR;
                     }
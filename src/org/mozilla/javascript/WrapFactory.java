@@ -99,10 +99,28 @@ public class WrapFactory
             }
         }
         Class<?> cls = obj.getClass();
+        WrapperCache cache = null;
+        if (isCachingWrappers()) {
+            // The class of the object is no more of a hint than none
+            if (staticType == cls) {
+                staticType = null;
+            }
+            cache = WrapperCache.get(scope, false);
+            if (cache != null) {
+                Scriptable cached = cache.get(obj, staticType);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        }
+        Scriptable wrapper;
         if (cls.isArray()) {
-            return NativeJavaArray.wrap(scope, obj);
+            wrapper = NativeJavaArray.wrap(scope, obj);
+        } else {
+            wrapper = wrapAsJavaObject(cx, scope, obj, staticType);
         }
-        return wrapAsJavaObject(cx, scope, obj, staticType);
+        return cache == null ? wrapper
+                             : cache.putIfAbsent(obj, staticType, wrapper);
     }
 
     /**
@@ -117,11 +135,20 @@ public class WrapFactory
         if (obj instanceof Scriptable) {
             return (Scriptable)obj;
         }
+        Scriptable wrapper;
         Class<?> cls = obj.getClass();
         if (cls.isArray()) {
-            return NativeJavaArray.wrap(scope, obj);
+            wrapper = NativeJavaArray.wrap(scope, obj);
+        } else {
+            wrapper = wrapAsJavaObject(cx, scope, obj, null);
         }
-        return wrapAsJavaObject(cx, scope, obj, null);
+        if (isCachingWrappers()) {
+            WrapperCache cache = WrapperCache.get(scope, false);
+            if (cache != null) {
+                return cache.putIfAbsent(obj, null, wrapper);
+            }
+        }
+        return wrapper;
     }
 
     /**
@@ -164,6 +191,17 @@ public class WrapFactory
     public Scriptable wrapJavaClass(Context cx, Scriptable scope,
                                     Class javaClass)
     {
+        if (isCachingWrappers()) {
+            WrapperCache cache = WrapperCache.get(scope, true);
+            if (cache != null) {
+                Scriptable cached = cache.get(javaClass, null);
+                if (cached != null) {
+                    return cached;
+                }
+                return cache.putIfAbsent(javaClass, null,
+                                         new NativeJavaClass(scope, javaClass));
+            }
+        }
         return new NativeJavaClass(scope, javaClass);
     }
 
@@ -195,6 +233,43 @@ public class WrapFactory
         javaPrimitiveWrap = value;
     }
 
+    /**
+     * Return <code>true</code> if the same Java object, array or class
+     * should always be wrapped by the same Scriptable instance within a
+     * top-level scope, so that no new wrapper is allocated each time a
+     * script receives the object again and scripts may rely on the
+     * identity of wrappers, for example when keeping them in a map.
+     * An object wrapped with different static types, such as the return
+     * types of the Java methods returning it, gets a wrapper per type.
+     * A cached wrapper keeps the parent scope it was first created with, so
+     * scripts running in nested scopes of the same top-level scope may get
+     * a wrapper whose parent is another of these scopes.
+     * The wrappers are weakly referenced from a table associated with the
+     * top-level scope, so a wrapper unreachable from scripts may still be
+     * replaced by a new one.
+     * By default the method returns false.
+     * Use {@link #setCachingWrappers(boolean)} to change this.
+     * @since 1.7R3
+     */
+    public final boolean isCachingWrappers()
+    {
+        return cachingWrappers;
+    }
+
+    /**
+     * @see #isCachingWrappers()
+     * @since 1.7R3
+     */
+    public final void setCachingWrappers(boolean value)
+    {
+        Context cx = Context.getCurrentContext();
+        if (cx != null && cx.isSealed()) {
+            Context.onSealedMutation();
+        }
+        cachingWrappers = value;
+    }
+
     private boolean javaPrimitiveWrap = true;
+    private boolean cachingWrappers;
 
 }
@@ -0,0 +1,200 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package org.mozilla.javascript;
+
+import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Weak identity map from Java objects, and the static types they were
+ * wrapped with, to the wrappers created for them in one top-level scope.
+ * The wrappers are only weakly referenced, so an entry disappears once
+ * scripts no longer use the wrapper of the object. The wrappers are not
+ * serialized with the scope, which starts with an empty cache when read.
+ *
+ * @see WrapFactory#setCachingWrappers(boolean)
+ */
+final class WrapperCache implements Serializable
+{
+    private static final long serialVersionUID = -3180627632823785364L;
+
+    private static final Object OBJECTS_KEY = "WrapperCache";
+    private static final Object CLASSES_KEY = "ClassWrapperCache";
+
+    private static final class Entry extends WeakReference<Scriptable>
+    {
+        final int hash;
+        final Class<?> staticType;
+        Entry next;
+
+        Entry(Scriptable wrapper, int hash, Class<?> staticType, Entry next,
+              ReferenceQueue<Scriptable> queue)
+        {
+            super(wrapper, queue);
+            this.hash = hash;
+            this.staticType = staticType;
+            this.next = next;
+        }
+    }
+
+    private transient ReferenceQueue<Scriptable> queue;
+    private transient Entry[] table;
+    private transient int count;
+
+    /**
+     * Get the cache of the top-level scope of the given scope, creating it
+     * when necessary. Wrappers of classes are kept apart from the wrappers
+     * of other objects.
+     *
+     * @return the cache or null if the top-level scope can not hold one
+     */
+    static WrapperCache get(Scriptable scope, boolean forClasses)
+    {
+        Scriptable top = ScriptableObject.getTopLevelScope(scope);
+        if (!(top instanceof ScriptableObject)) {
+            return null;
+        }
+        ScriptableObject so = (ScriptableObject)top;
+        Object key = forClasses ? CLASSES_KEY : OBJECTS_KEY;
+        WrapperCache cache = (WrapperCache)so.getAssociatedValue(key);
+        if (cache == null) {
+            cache = (WrapperCache)so.associateValue(key, new WrapperCache());
+        }
+        return cache;
+    }
+
+    /**
+     * Return the cached wrapper of javaObject for staticType or null if there
+     * is none.
+     */
+    synchronized Scriptable get(Object javaObject, Class<?> staticType)
+    {
+        if (table == null) {
+            // new or deserialized
+            queue = new ReferenceQueue<Scriptable>();
+            table = new Entry[16];
+        }
+        expungeStaleEntries();
+        int hash = System.identityHashCode(javaObject);
+        for (Entry e = table[hash & (table.length - 1)]; e != null;
+             e = e.next)
+        {
+            if (e.hash == hash && e.staticType == staticType) {
+                Scriptable wrapper = e.get();
+                if (wrapper != null
+                    && ((Wrapper)wrapper).unwrap() == javaObject)
+                {
+                    return wrapper;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cache wrapper for javaObject and staticType unless another thread did
+     * it first. Wrappers that do not unwrap to javaObject are not cached.
+     *
+     * @return the cached wrapper of javaObject or wrapper if it could not
+     *         be cached
+     */
+    synchronized Scriptable putIfAbsent(Object javaObject,
+                                        Class<?> staticType,
+                                        Scriptable wrapper)
+    {
+        if (!(wrapper instanceof Wrapper)
+            || ((Wrapper)wrapper).unwrap() != javaObject)
+        {
+            return wrapper;
+        }
+        Scriptable cached = get(javaObject, staticType);
+        if (cached != null) {
+            return cached;
+        }
+        if (count >= table.length - (table.length >> 2)) {
+            resize();
+        }
+        int hash = System.identityHashCode(javaObject);
+        int index = hash & (table.length - 1);
+        table[index] = new Entry(wrapper, hash, staticType, table[index],
+                                 queue);
+        ++count;
+        return wrapper;
+    }
+
+    private void resize()
+    {
+        Entry[] oldTable = table;
+        Entry[] newTable = new Entry[oldTable.length * 2];
+        for (int i = 0; i != oldTable.length; ++i) {
+            Entry e = oldTable[i];
+            while (e != null) {
+                Entry next = e.next;
+                int index = e.hash & (newTable.length - 1);
+                e.next = newTable[index];
+                newTable[index] = e;
+                e = next;
+            }
+        }
+        table = newTable;
+    }
+
+    private void expungeStaleEntries()
+    {
+        Object ref;
+        while ((ref = queue.poll()) != null) {
+            Entry stale = (Entry)ref;
+            int index = stale.hash & (table.length - 1);
+            Entry prev = null;
+            for (Entry e = table[index]; e != null; e = e.next) {
+                if (e == stale) {
+                    if (prev == null) {
+                        table[index] = e.next;
+                    } else {
+                        prev.next = e.next;
+                    }
+                    --count;
+                    break;
+                }
+                prev = e;
+            }
+        }
+    }
+}
@@ -42,6 +42,7 @@
 package org.mozilla.javascript.ast;
 
 import org.mozilla.javascript.Node;
+import org.mozilla.javascript.ScriptSource;
 import org.mozilla.javascript.Token;
 
 import java.util.ArrayList;
@@ -58,6 +59,7 @@ public class ScriptNode extends Scope {
     private int encodedSourceEnd = -1;
     private String sourceName;
     private String encodedSource;
+    private ScriptSource scriptSource;
     private int endLineno = -1;
 
     private List<FunctionNode> functions;
@@ -169,6 +171,23 @@ public class ScriptNode extends Scope {
         return encodedSource;
     }
 
+    /**
+     * Returns the original source text kept for this script in place of
+     * the encoded source, or {@code null} if the encoded source is used.
+     * @see org.mozilla.javascript.Context#setSourceRetention(int)
+     */
+    public ScriptSource getScriptSource() {
+        return scriptSource;
+    }
+
+    /**
+     * Used by the code generator.
+     * @see #getScriptSource
+     */
+    public void setScriptSource(ScriptSource scriptSource) {
+        this.scriptSource = scriptSource;
+    }
+
     public int getBaseLineno() {
         return lineno;
     }
@@ -3,9 +3,23 @@ package org.mozilla.javascript.commonjs.module.provider;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
+import org.mozilla.javascript.CompilerEnvirons;
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.FunctionMetrics;
+import org.mozilla.javascript.Kit;
+import org.mozilla.javascript.Parser;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.debug.Debugger;
 import org.mozilla.javascript.commonjs.module.ModuleScript;
 import org.mozilla.javascript.commonjs.module.ModuleScriptProvider;
 
@@ -16,6 +30,10 @@ import org.mozilla.javascript.commonjs.module.ModuleScriptProvider;
  * objects returned from the {@link ModuleSourceProvider}. Instances of this
  * class and its subclasses are thread safe (and written to perform decently 
  * under concurrent access).
+ * <p>
+ * Optionally, the modules a freshly compiled module requires can be loaded
+ * ahead of time on an {@link Executor}; see
+ * {@link #setPrefetchExecutor(Executor)}.
  * @author Attila Szegedi
  * @version $Id$
  */
@@ -47,6 +65,7 @@ implements ModuleScriptProvider, Serializable
     }
     
     private final ModuleSourceProvider moduleSourceProvider;
+    private transient volatile Prefetcher prefetcher;
 
     /**
      * Creates a new module script provider with the specified source.
@@ -70,7 +89,10 @@ implements ModuleScriptProvider, Serializable
         if(moduleSource == null) {
             return null;
         }
+        final Prefetcher prefetcher = this.prefetcher;
         final Reader reader = moduleSource.getReader();
+        final String source;
+        final ModuleScript moduleScript;
         try {
             final int idHash = moduleId.hashCode();
             synchronized(loadLocks[(idHash >>> loadLockShift) & loadLockMask]) {
@@ -81,17 +103,200 @@ implements ModuleScriptProvider, Serializable
                     }
                 }
                 final String uri = moduleSource.getUri();
-                final ModuleScript moduleScript = new ModuleScript(
-                        cx.compileReader(reader, uri, 1, 
-                                moduleSource.getSecurityDomain()), uri);
+                final Object securityDomain = moduleSource.getSecurityDomain();
+                if(prefetcher == null) {
+                    source = null;
+                    moduleScript = new ModuleScript(cx.compileReader(reader, 
+                            uri, 1, securityDomain), uri);
+                }
+                else {
+                    // keep the text so the dependencies can be scanned
+                    source = Kit.readReader(reader);
+                    moduleScript = new ModuleScript(cx.compileString(source,
+                            uri, 1, securityDomain), uri);
+                }
                 putLoadedModule(moduleId, moduleScript, 
                         moduleSource.getValidator());
-                return moduleScript;
             }
         }
         finally {
             reader.close();
         }
+        if(prefetcher != null) {
+            prefetcher.prefetchDependencies(cx, moduleId, source, paths);
+        }
+        return moduleScript;
+    }
+
+    /**
+     * Sets the executor used to prefetch module dependencies. When set, every
+     * module compiled by this provider is scanned for 
+     * <code>require("literal")</code> calls, and the modules found are 
+     * loaded, compiled and cached on the executor, transitively, so that 
+     * the <code>require()</code> calls executed later find them in the cache.
+     * Prefetching is best effort: modules that fail to load are skipped, 
+     * and the failure surfaces when they are actually required. Each module
+     * ID is prefetched at most once per executor.
+     * @param executor the executor for prefetching, or null to disable 
+     * prefetching (the default).
+     */
+    public void setPrefetchExecutor(Executor executor) {
+        prefetcher = executor == null ? null : new Prefetcher(executor);
+    }
+
+    /**
+     * Returns the executor used to prefetch module dependencies.
+     * @return the executor used to prefetch module dependencies, or null if
+     * prefetching is disabled.
+     */
+    public Executor getPrefetchExecutor() {
+        final Prefetcher prefetcher = this.prefetcher;
+        return prefetcher == null ? null : prefetcher.executor;
+    }
+
+    private class Prefetcher {
+        final Executor executor;
+        private final ConcurrentMap<String, Boolean> scheduled = 
+            new ConcurrentHashMap<String, Boolean>(16, .75f, 
+                    getConcurrencyLevel());
+
+        Prefetcher(Executor executor) {
+            this.executor = executor;
+        }
+
+        void prefetchDependencies(Context cx, final String moduleId, 
+                final String source, Scriptable paths)
+        {
+            // Neither the Context nor the paths may be read on the executor
+            // once the calling thread goes on
+            final CompileSettings settings = new CompileSettings(cx);
+            final Scriptable pathsCopy = paths == null ? null : cx.newArray(
+                    ScriptableObject.getTopLevelScope(paths), 
+                    cx.getElements(paths));
+            executor.execute(new Runnable() {
+                public void run() {
+                    final Context pcx = settings.enter();
+                    try {
+                        final CompilerEnvirons compilerEnv = 
+                            new CompilerEnvirons();
+                        compilerEnv.initFromContext(pcx);
+                        for(String id : ModuleDependencies.getRequiredIds(
+                                new Parser(compilerEnv).parse(source, 
+                                        moduleId, 1), moduleId))
+                        {
+                            if(getLoadedModule(id) == null && 
+                                    scheduled.putIfAbsent(id, Boolean.TRUE) 
+                                    == null)
+                            {
+                                prefetch(settings, id, pathsCopy);
+                            }
+                        }
+                    }
+                    catch(RuntimeException e) {
+                        // Syntax errors are reported when the module runs
+                    }
+                    finally {
+                        Context.exit();
+                    }
+                }
+            });
+        }
+
+        private void prefetch(final CompileSettings settings, 
+                final String moduleId, final Scriptable paths)
+        {
+            executor.execute(new Runnable() {
+                public void run() {
+                    final Context pcx = settings.enter();
+                    try {
+                        getModuleScript(pcx, moduleId, paths);
+                    }
+                    catch(Exception e) {
+                        // Reported when the module is actually required
+                    }
+                    finally {
+                        Context.exit();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * The settings of a Context that change how it compiles scripts, taken
+     * so that the Contexts prefetching modules compile them the same way.
+     */
+    private static final class CompileSettings {
+        private final ContextFactory factory;
+        private final int languageVersion;
+        private final int optimizationLevel;
+        private final ErrorReporter errorReporter;
+        private final boolean generatingDebugChanged;
+        private final boolean generatingDebug;
+        private final boolean generatingSource;
+        private final int sourceRetention;
+        private final boolean lazyFunctionCompilation;
+        private final ExecutorService compilationExecutor;
+        private final FunctionMetrics functionMetrics;
+        private final Debugger debugger;
+        private final Object debuggerContextData;
+        private final boolean generateObserverCount;
+        private final boolean dynamicScope;
+        private final Set<String> activationNames;
+
+        @SuppressWarnings("deprecation")
+        CompileSettings(Context cx) {
+            factory = cx.getFactory();
+            languageVersion = cx.getLanguageVersion();
+            optimizationLevel = cx.getOptimizationLevel();
+            errorReporter = cx.getErrorReporter();
+            generatingDebugChanged = cx.isGeneratingDebugChanged();
+            generatingDebug = cx.isGeneratingDebug();
+            generatingSource = cx.isGeneratingSource();
+            sourceRetention = cx.getSourceRetention();
+            lazyFunctionCompilation = cx.isLazyFunctionCompilation();
+            compilationExecutor = cx.getCompilationExecutor();
+            functionMetrics = cx.getFunctionMetrics();
+            debugger = cx.getDebugger();
+            debuggerContextData = cx.getDebuggerContextData();
+            generateObserverCount = cx.generateObserverCount;
+            dynamicScope = cx.hasCompileFunctionsWithDynamicScope();
+            // the Context only exposes its activation names to compilers
+            final CompilerEnvirons compilerEnv = new CompilerEnvirons();
+            compilerEnv.initFromContext(cx);
+            final Set<String> names = compilerEnv.getActivationNames();
+            activationNames = names == null ? null : new HashSet<String>(names);
+        }
+
+        @SuppressWarnings("deprecation")
+        Context enter() {
+            final Context cx = factory.enterContext();
+            // The Contexts of a sealed factory compile the way it made them
+            if(cx.isSealed()) {
+                return cx;
+            }
+            cx.setLanguageVersion(languageVersion);
+            cx.setErrorReporter(errorReporter);
+            // before the optimization level, which it may lower
+            if(generatingDebugChanged) {
+                cx.setGeneratingDebug(generatingDebug);
+            }
+            cx.setOptimizationLevel(optimizationLevel);
+            cx.setGeneratingSource(generatingSource);
+            cx.setSourceRetention(sourceRetention);
+            cx.setLazyFunctionCompilation(lazyFunctionCompilation);
+            cx.setCompilationExecutor(compilationExecutor);
+            cx.setFunctionMetrics(functionMetrics);
+            cx.setDebugger(debugger, debuggerContextData);
+            cx.setGenerateObserverCount(generateObserverCount);
+            cx.setCompileFunctionsWithDynamicScope(dynamicScope);
+            if(activationNames != null) {
+                for(String name : activationNames) {
+                    cx.addActivationName(name);
+                }
+            }
+            return cx;
+        }
     }
     
     /**
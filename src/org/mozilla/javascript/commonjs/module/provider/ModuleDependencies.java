@@ -0,0 +1,82 @@
+package org.mozilla.javascript.commonjs.module.provider;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.FunctionCall;
+import org.mozilla.javascript.ast.Name;
+import org.mozilla.javascript.ast.NodeVisitor;
+import org.mozilla.javascript.ast.StringLiteral;
+
+/**
+ * Static discovery of the modules a module depends on. Only calls of the form
+ * <code>require("literal")</code> are found; modules required with computed
+ * IDs can only be discovered by running the module.
+ * @version $Id$
+ */
+public final class ModuleDependencies
+{
+    private ModuleDependencies() {
+    }
+
+    /**
+     * Returns the IDs passed as string literals to <code>require()</code>
+     * calls in a module, with relative IDs resolved against the module's own
+     * ID the same way <code>require()</code> resolves them.
+     * @param ast the parsed module
+     * @param moduleId the ID of the module
+     * @return the absolute IDs of the required modules, in source order.
+     */
+    public static Set<String> getRequiredIds(AstRoot ast,
+            final String moduleId)
+    {
+        final Set<String> ids = new LinkedHashSet<String>();
+        ast.visit(new NodeVisitor() {
+            public boolean visit(AstNode node) {
+                if(node instanceof FunctionCall) {
+                    final FunctionCall call = (FunctionCall)node;
+                    final List<AstNode> args = call.getArguments();
+                    if(call.getTarget() instanceof Name &&
+                            "require".equals(((Name)call.getTarget())
+                                    .getIdentifier()) &&
+                            args.size() == 1 &&
+                            args.get(0) instanceof StringLiteral)
+                    {
+                        ids.add(getAbsoluteId(moduleId,
+                                ((StringLiteral)args.get(0)).getValue()));
+                    }
+                }
+                return true;
+            }
+        });
+        return ids;
+    }
+
+    private static String getAbsoluteId(String moduleId, String id) {
+        if(id.startsWith("./") || id.startsWith("../")) {
+            return resolveRelativeId(getParentDirectory(moduleId), id);
+        }
+        return id;
+    }
+
+    private static String resolveRelativeId(String directory, String id) {
+        if(id.startsWith("./")) {
+            return resolveRelativeId(directory, id.substring(2));
+        }
+        else if(id.startsWith("../")) {
+            return resolveRelativeId(getParentDirectory(directory),
+                    id.substring(3));
+        }
+        else {
+            return "".equals(directory) ? id : (directory + "/" + id);
+        }
+    }
+
+    private static String getParentDirectory(String path) {
+        final int i = path.lastIndexOf('/');
+        return i == -1 ? "" : path.substring(0, i);
+    }
+}
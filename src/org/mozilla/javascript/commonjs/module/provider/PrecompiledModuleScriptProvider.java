@@ -0,0 +1,131 @@
+package org.mozilla.javascript.commonjs.module.provider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.commonjs.module.ModuleScript;
+import org.mozilla.javascript.commonjs.module.ModuleScriptProvider;
+
+/**
+ * A module script provider for modules compiled ahead of time, typically by
+ * <code>org.mozilla.javascript.tools.jsc.ModuleCompiler</code>. An index
+ * resource maps each module ID to the name of its compiled script class and
+ * to the URI of its source. Classes are loaded and instantiated the first
+ * time their module is requested, so neither the module source nor the
+ * parser is needed at run time.
+ * <p>
+ * IDs missing from the index yield null, so a source based provider can
+ * serve them when combined with this one in a
+ * {@link MultiModuleScriptProvider}.
+ * @version $Id$
+ */
+public class PrecompiledModuleScriptProvider implements ModuleScriptProvider
+{
+    /**
+     * Name of the index resource used when none is specified.
+     */
+    public static final String DEFAULT_INDEX =
+        "META-INF/rhino/modules.properties";
+
+    private final ClassLoader classLoader;
+    private final Map<String, String> index;
+    private final ConcurrentMap<String, ModuleScript> modules =
+        new ConcurrentHashMap<String, ModuleScript>();
+
+    /**
+     * Creates a new provider for the modules listed in the
+     * {@link #DEFAULT_INDEX} resources of the class loader.
+     * @param classLoader the class loader for the index and the classes
+     * @throws IOException if an index resource could not be read
+     */
+    public PrecompiledModuleScriptProvider(ClassLoader classLoader)
+        throws IOException
+    {
+        this(classLoader, DEFAULT_INDEX);
+    }
+
+    /**
+     * Creates a new provider for the modules listed in the specified index
+     * resources of the class loader. When several resources of that name
+     * list the same module ID, the first one found wins.
+     * @param classLoader the class loader for the index and the classes
+     * @param indexName the resource name of the index
+     * @throws IOException if an index resource could not be read
+     */
+    public PrecompiledModuleScriptProvider(ClassLoader classLoader,
+            String indexName) throws IOException
+    {
+        this.classLoader = classLoader;
+        final Map<String, String> index = new HashMap<String, String>();
+        final Enumeration<URL> resources = classLoader.getResources(indexName);
+        while(resources.hasMoreElements()) {
+            final InputStream in = resources.nextElement().openStream();
+            try {
+                final Properties properties = new Properties();
+                properties.load(in);
+                for (Object key : properties.keySet()) {
+                    final String moduleId = (String)key;
+                    if(!index.containsKey(moduleId)) {
+                        index.put(moduleId, properties.getProperty(moduleId));
+                    }
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        this.index = index;
+    }
+
+    /**
+     * Returns the IDs of all modules listed in the index.
+     * @return the IDs of all modules listed in the index.
+     */
+    public Set<String> getModuleIds() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    public ModuleScript getModuleScript(Context cx, String moduleId,
+            Scriptable paths) throws Exception
+    {
+        final ModuleScript loaded = modules.get(moduleId);
+        if(loaded != null) {
+            return loaded;
+        }
+        // entries are "class-name uri", the URI being optional
+        final String entry = index.get(moduleId);
+        if(entry == null) {
+            return null;
+        }
+        final int space = entry.indexOf(' ');
+        final String className = space == -1 ? entry :
+            entry.substring(0, space);
+        final String uri = space == -1 ? null : entry.substring(space + 1);
+        final Class<?> scriptClass = Class.forName(className, true,
+                classLoader);
+        final Script script;
+        try {
+            script = (Script)scriptClass.getConstructor().newInstance();
+        }
+        catch(InvocationTargetException e) {
+            throw Context.throwAsScriptRuntimeEx(e);
+        }
+        final ModuleScript moduleScript = new ModuleScript(script, uri);
+        final ModuleScript existing = modules.putIfAbsent(moduleId,
+                moduleScript);
+        return existing != null ? existing : moduleScript;
+    }
+}
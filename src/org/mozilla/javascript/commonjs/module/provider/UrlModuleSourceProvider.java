@@ -1,5 +1,8 @@
 package org.mozilla.javascript.commonjs.module.provider;
 
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -9,6 +12,11 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 import java.util.Iterator;
 import java.util.List;
 
@@ -23,6 +31,12 @@ import java.util.List;
  * ETags for cache revalidation, and follows the HTTP cache expiry calculation
  * model, and allows for fallback heuristic expiry calculation when no server
  * specified expiry is provided. 
+ * <p>
+ * Modules at file: URIs are read directly from the file system rather than
+ * through a {@link URLConnection}, unless a security domain provider is used
+ * or {@link #openUrlConnection(URL)} is overridden. Missing files are then
+ * skipped without an exception, and revalidation only compares the file's
+ * last modification time.
  * @author Attila Szegedi
  * @version $Id$
  */
@@ -35,6 +49,10 @@ public class UrlModuleSourceProvider extends ModuleSourceProviderBase
     private final UrlConnectionSecurityDomainProvider 
         urlConnectionSecurityDomainProvider;
     private final UrlConnectionExpiryCalculator urlConnectionExpiryCalculator;
+    private final boolean readFilesDirectly;
+    
+    // sources at least this large are memory mapped rather than read
+    private static final int MAPPED_READ_THRESHOLD = 64 * 1024;
     
     /**
      * Creates a new module script provider that loads modules against a set of
@@ -78,6 +96,26 @@ public class UrlModuleSourceProvider extends ModuleSourceProviderBase
         this.urlConnectionExpiryCalculator = urlConnectionExpiryCalculator;
         this.urlConnectionSecurityDomainProvider = 
             urlConnectionSecurityDomainProvider;
+        this.readFilesDirectly = urlConnectionSecurityDomainProvider == null &&
+            !overridesOpenUrlConnection(getClass());
+    }
+
+    private static boolean overridesOpenUrlConnection(Class<?> c) {
+        try {
+            for(; c != UrlModuleSourceProvider.class; c = c.getSuperclass()) {
+                try {
+                    c.getDeclaredMethod("openUrlConnection", URL.class);
+                    return true;
+                }
+                catch(NoSuchMethodException e) {
+                    // Not in this class, try its superclass
+                }
+            }
+            return false;
+        }
+        catch(SecurityException e) {
+            return true;
+        }
     }
 
     @Override
@@ -126,9 +164,6 @@ public class UrlModuleSourceProvider extends ModuleSourceProviderBase
     private ModuleSource loadModuleSourceFromUriInternal(URI uri, 
             Object validator) throws IOException
     {
-        final URL url = uri.toURL();
-        final long request_time = System.currentTimeMillis();
-        final URLConnection urlConnection = openUrlConnection(url);
         final URLValidator applicableValidator;
         if(validator instanceof URLValidator) {
             final URLValidator uriValidator = ((URLValidator)validator);
@@ -138,6 +173,14 @@ public class UrlModuleSourceProvider extends ModuleSourceProviderBase
         else {
             applicableValidator = null;
         }
+        if(readFilesDirectly && "file".equals(uri.getScheme()) && 
+                uri.getAuthority() == null) 
+        {
+            return loadModuleSourceFromFile(uri, applicableValidator);
+        }
+        final URL url = uri.toURL();
+        final long request_time = System.currentTimeMillis();
+        final URLConnection urlConnection = openUrlConnection(url);
         if(applicableValidator != null) {
             applicableValidator.applyConditionals(urlConnection);
         }
@@ -166,22 +209,84 @@ public class UrlModuleSourceProvider extends ModuleSourceProviderBase
         }
     }
 
+    private ModuleSource loadModuleSourceFromFile(URI uri, 
+            URLValidator validator) throws IOException
+    {
+        final File file = new File(uri);
+        final long lastModified = file.lastModified();
+        // A zero timestamp usually means the file does not exist
+        if(lastModified == 0L && !file.isFile()) {
+            return null;
+        }
+        if(validator != null && validator.updateValidator(lastModified, 
+                urlConnectionExpiryCalculator))
+        {
+            return NOT_MODIFIED;
+        }
+        final Reader reader;
+        try {
+            reader = getReader(file);
+        }
+        catch(FileNotFoundException e) {
+            // Directory, unreadable, or removed since
+            return null;
+        }
+        return new ModuleSource(reader, null, uri.toString(), 
+                new URLValidator(uri, lastModified, 
+                        urlConnectionExpiryCalculator));
+    }
+
+    private static Reader getReader(File file) throws IOException {
+        // Decode with the charset a file: URL connection would report
+        String contentType = URLConnection.getFileNameMap().getContentTypeFor(
+                file.getName());
+        if(contentType == null) {
+            contentType = "content/unknown";
+        }
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            final long size = channel.size();
+            if(size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + file);
+            }
+            final ByteBuffer bytes;
+            if(size < MAPPED_READ_THRESHOLD) {
+                bytes = ByteBuffer.allocate((int)size);
+                while(bytes.hasRemaining() && channel.read(bytes) != -1);
+                bytes.flip();
+            }
+            else {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            final CharBuffer chars = Charset.forName(getCharacterEncoding(
+                    contentType)).newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(bytes);
+            return new CharArrayReader(chars.array(), chars.arrayOffset() + 
+                    chars.position(), chars.remaining());
+        }
+        finally {
+            in.close();
+        }
+    }
+
     private static Reader getReader(URLConnection urlConnection) 
     throws IOException
     {
         return new InputStreamReader(urlConnection.getInputStream(), 
-                getCharacterEncoding(urlConnection));
+                getCharacterEncoding(urlConnection.getContentType()));
     }
 
-    private static String getCharacterEncoding(URLConnection urlConnection) {
-        final ParsedContentType pct = new ParsedContentType(
-                urlConnection.getContentType());
+    private static String getCharacterEncoding(String contentType) {
+        final ParsedContentType pct = new ParsedContentType(contentType);
         final String encoding = pct.getEncoding();
         if(encoding != null) {
             return encoding;
         }
-        final String contentType = pct.getContentType();
-        if(contentType != null && contentType.startsWith("text/")) {
+        final String mimeType = pct.getContentType();
+        if(mimeType != null && mimeType.startsWith("text/")) {
             return "8859_1";
         }
         else {
@@ -248,19 +353,41 @@ public class UrlModuleSourceProvider extends ModuleSourceProviderBase
                     urlConnectionExpiryCalculator);
         }
 
+        public URLValidator(URI uri, long lastModified, 
+                UrlConnectionExpiryCalculator urlConnectionExpiryCalculator)
+        throws IOException
+        {
+            this.uri = uri;
+            this.lastModified = lastModified;
+            this.entityTags = null;
+            expiry = calculateExpiry(uri, urlConnectionExpiryCalculator);
+        }
+
+        boolean updateValidator(long lastModified, 
+                UrlConnectionExpiryCalculator urlConnectionExpiryCalculator) 
+        throws IOException
+        {
+            boolean isNotModified = this.lastModified == lastModified;
+            if(isNotModified) {
+                expiry = calculateExpiry(uri, urlConnectionExpiryCalculator);
+            }
+            return isNotModified;
+        }
+
         boolean updateValidator(URLConnection urlConnection, long request_time, 
                 UrlConnectionExpiryCalculator urlConnectionExpiryCalculator) 
         throws IOException
         {
-            boolean isResourceChanged = isResourceChanged(urlConnection);
-            if(!isResourceChanged) {
+            boolean isNotModified = isNotModified(urlConnection);
+            if(isNotModified) {
+                // Revalidated, so it is fresh for another expiry period
                 expiry = calculateExpiry(urlConnection, request_time, 
                         urlConnectionExpiryCalculator);
             }
-            return isResourceChanged;
+            return isNotModified;
         }
         
-        private boolean isResourceChanged(URLConnection urlConnection) 
+        private boolean isNotModified(URLConnection urlConnection) 
         throws IOException {
             if(urlConnection instanceof HttpURLConnection) {
                 return ((HttpURLConnection)urlConnection).getResponseCode() == 
@@ -306,6 +433,17 @@ public class UrlModuleSourceProvider extends ModuleSourceProviderBase
                 urlConnectionExpiryCalculator.calculateExpiry(urlConnection);
         }
 
+        private static long calculateExpiry(URI uri, 
+                UrlConnectionExpiryCalculator urlConnectionExpiryCalculator)
+        throws IOException
+        {
+            // file: URLs have no caching headers, only the heuristic applies;
+            // the connection is merely passed to it, never connected
+            return urlConnectionExpiryCalculator == null ? 0L : 
+                urlConnectionExpiryCalculator.calculateExpiry(
+                        uri.toURL().openConnection());
+        }
+
         private int getMaxAge(String cacheControl) {
             final int maxAgeIndex = cacheControl.indexOf("max-age");
             if(maxAgeIndex == -1) {
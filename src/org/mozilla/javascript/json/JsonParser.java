@@ -41,6 +41,7 @@
 package org.mozilla.javascript.json;
 
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.DecimalToDouble;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptRuntime;
 
@@ -111,7 +112,7 @@ public class JsonParser {
                 case '9':
                 case '0':
                 case '-':
-                    return readNumber(c);
+                    return readNumber();
                 default:
                     throw new ParseException("Unexpected token: " + c);
             }
@@ -254,9 +255,9 @@ public class JsonParser {
         throw new ParseException("Unterminated string literal");
     }
 
-    private Number readNumber(char first) throws ParseException {
-        StringBuilder b = new StringBuilder();
-        b.append(first);
+    private Number readNumber() throws ParseException {
+        // the first character has already been consumed
+        final int start = pos - 1;
         while (pos < length) {
             char c = src.charAt(pos);
             if (!Character.isDigit(c)
@@ -268,32 +269,30 @@ public class JsonParser {
                 break;
             }
             pos += 1;
-            b.append(c);
         }
-        String num = b.toString();
-        int numLength = num.length();
-        try {
-            // check for leading zeroes
-            for (int i = 0; i < numLength; i++) {
-                char c = num.charAt(i);
-                if (Character.isDigit(c)) {
-                    if (c == '0'
-                            && numLength > i + 1
-                            && Character.isDigit(num.charAt(i + 1))) {
-                        throw new ParseException("Unsupported number format: " + num);
-                    }
-                    break;
+        // check for leading zeroes
+        for (int i = start; i < pos; i++) {
+            char c = src.charAt(i);
+            if (Character.isDigit(c)) {
+                if (c == '0'
+                        && pos > i + 1
+                        && Character.isDigit(src.charAt(i + 1))) {
+                    throw new ParseException("Unsupported number format: " +
+                            src.substring(start, pos));
                 }
+                break;
             }
-            final double dval = Double.parseDouble(num);
-            final int ival = (int)dval;
-            if (ival == dval) {
-                return Integer.valueOf(ival);
-            } else {
-                return Double.valueOf(dval);
-            }
-        } catch (NumberFormatException nfe) {
-            throw new ParseException("Unsupported number format: " + num);
+        }
+        final double dval = DecimalToDouble.parse(src, start, pos);
+        if (dval != dval) {
+            throw new ParseException("Unsupported number format: " +
+                    src.substring(start, pos));
+        }
+        final int ival = (int)dval;
+        if (ival == dval) {
+            return Integer.valueOf(ival);
+        } else {
+            return Double.valueOf(dval);
         }
     }
 
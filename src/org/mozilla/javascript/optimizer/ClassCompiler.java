@@ -164,13 +164,25 @@ public class ClassCompiler
     {
         Parser p = new Parser(compilerEnv);
         AstRoot ast = p.parse(source, sourceLocation, lineno);
+        return compileToClassFiles(ast, mainClassName);
+    }
+
+    /**
+     * Compile a parse tree into one or more Java class files like
+     * {@link #compileToClassFiles(String, String, int, String)}, for
+     * callers that already parsed the source with the same
+     * CompilerEnvirons.
+     *
+     * @since 1.7R3
+     */
+    public Object[] compileToClassFiles(AstRoot ast, String mainClassName)
+    {
         IRFactory irf = new IRFactory(compilerEnv);
         ScriptNode tree = irf.transformTree(ast);
 
-        // release reference to original parse tree & parser
+        // release reference to original parse tree
         irf = null;
         ast = null;
-        p = null;
 
         Class<?> superClass = getTargetExtends();
         Class<?>[] interfaces = getTargetImplements();
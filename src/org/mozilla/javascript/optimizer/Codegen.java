@@ -195,20 +195,29 @@ public class Codegen implements Evaluator
         try {
             return generateCode(encodedSource);
         } catch (ClassFileWriter.ClassFileFormatException e) {
-            throw reportClassFileFormatException(scriptOrFn, e.getMessage());
+            throw reportClassFileFormatException(scriptOrFn, e);
         }
     }
     
+    /**
+     * The returned exception has the original ClassFileFormatException as
+     * its cause so {@link Context} can fall back to the interpreter.
+     */
     private RuntimeException reportClassFileFormatException(
         ScriptNode scriptOrFn,
-        String message)
+        ClassFileWriter.ClassFileFormatException e)
     {
+        String message = e.getMessage();
         String msg = scriptOrFn instanceof FunctionNode
         ? ScriptRuntime.getMessage2("msg.while.compiling.fn",
             ((FunctionNode)scriptOrFn).getFunctionName(), message)
         : ScriptRuntime.getMessage1("msg.while.compiling.script", message);
-        return Context.reportRuntimeError(msg, scriptOrFn.getSourceName(),
-            scriptOrFn.getLineno(), null, 0);
+        EvaluatorException ex = Context.reportRuntimeError(msg,
+            scriptOrFn.getSourceName(), scriptOrFn.getLineno(), null, 0);
+        if (ex.getCause() == null) {
+            ex.initCause(e);
+        }
+        return ex;
     }
 
     private void transform(ScriptNode tree)
@@ -218,7 +227,8 @@ public class Codegen implements Evaluator
         int optLevel = compilerEnv.getOptimizationLevel();
 
         Map<String,OptFunctionNode> possibleDirectCalls = null;
-        if (optLevel > 0) {
+        // Function metrics are recorded in call(), which direct calls skip
+        if (optLevel > 0 && !compilerEnv.isGenerateFunctionMetrics()) {
            /*
             * Collect all of the contained functions into a hashtable
             * so that the call optimizer can access the class name & parameter
@@ -252,7 +262,8 @@ public class Codegen implements Evaluator
         ot.transform(tree);
 
         if (optLevel > 0) {
-            (new Optimizer()).optimize(tree);
+            (new Optimizer()).optimize(tree,
+                compilerEnv.getCompilationExecutor());
         }
     }
 
@@ -340,7 +351,7 @@ public class Codegen implements Evaluator
             try {
                 bodygen.generateBodyCode();
             } catch (ClassFileWriter.ClassFileFormatException e) {
-                throw reportClassFileFormatException(n, e.getMessage());
+                throw reportClassFileFormatException(n, e);
             }
 
             if (n.getType() == Token.FUNCTION) {
@@ -551,12 +562,14 @@ public class Codegen implements Evaluator
         cfw.add(ByteCode.ARETURN);
         cfw.markLabel(nonTopCallLabel);
 
+        // With function metrics each case loads the arguments itself, after
+        // taking the start time
+        boolean metrics = compilerEnv.isGenerateFunctionMetrics();
+
         // Now generate switch to call the real methods
-        cfw.addALoad(0);
-        cfw.addALoad(1);
-        cfw.addALoad(2);
-        cfw.addALoad(3);
-        cfw.addALoad(4);
+        if (!metrics) {
+            pushCallArguments(cfw);
+        }
 
         int end = scriptOrFnNodes.length;
         boolean generateSwitch = (2 <= end);
@@ -582,6 +595,27 @@ public class Codegen implements Evaluator
                                             switchStackTop);
                 }
             }
+            String metricsKey = null;
+            int metricsStart = -1;
+            if (metrics) {
+                if (n.getType() == Token.FUNCTION
+                    && !((FunctionNode)n).isGenerator())
+                {
+                    metricsKey = FunctionMetrics.getFunctionKey(
+                        ((FunctionNode)n).getName(), n.getSourceName(),
+                        n.getBaseLineno());
+                    // long start = OptRuntime.startFunctionMetrics(cx);
+                    cfw.addALoad(1);
+                    cfw.addInvoke(ByteCode.INVOKESTATIC,
+                                  "org/mozilla/javascript/optimizer/OptRuntime",
+                                  "startFunctionMetrics",
+                                  "(Lorg/mozilla/javascript/Context;)J");
+                    cfw.addLStore(5);
+                    metricsStart = cfw.acquireLabel();
+                    cfw.markLabel(metricsStart);
+                }
+                pushCallArguments(cfw);
+            }
             if (n.getType() == Token.FUNCTION) {
                 OptFunctionNode ofn = OptFunctionNode.get(n);
                 if (ofn.isTargetOfDirectCall()) {
@@ -616,10 +650,54 @@ public class Codegen implements Evaluator
                           mainClassName,
                           getBodyMethodName(n),
                           getBodyMethodSignature(n));
-            cfw.add(ByteCode.ARETURN);
+            if (metricsKey != null) {
+                // Record the call both on return and on exception
+                int metricsEnd = cfw.acquireLabel();
+                cfw.markLabel(metricsEnd);
+                cfw.addAStore(7);
+                addEndFunctionMetrics(cfw, metricsKey);
+                cfw.addALoad(7);
+                cfw.add(ByteCode.ARETURN);
+
+                int handler = cfw.acquireLabel();
+                cfw.markHandler(handler);
+                cfw.addAStore(7);
+                addEndFunctionMetrics(cfw, metricsKey);
+                cfw.addALoad(7);
+                cfw.add(ByteCode.ATHROW);
+                cfw.addExceptionHandler(metricsStart, metricsEnd, handler,
+                                        null); // catch any
+            } else {
+                cfw.add(ByteCode.ARETURN);
+            }
         }
-        cfw.stopMethod((short)5);
         // 5: this, cx, scope, js this, args[]
+        // with metrics also 5-6: start time, 7: result or exception
+        cfw.stopMethod((short)(metrics ? 8 : 5));
+    }
+
+    private static void pushCallArguments(ClassFileWriter cfw)
+    {
+        cfw.addALoad(0);
+        cfw.addALoad(1);
+        cfw.addALoad(2);
+        cfw.addALoad(3);
+        cfw.addALoad(4);
+    }
+
+    private static void addEndFunctionMetrics(ClassFileWriter cfw,
+                                              String metricsKey)
+    {
+        // OptRuntime.endFunctionMetrics(cx, metricsKey, start);
+        cfw.addALoad(1);
+        cfw.addPush(metricsKey);
+        cfw.addLLoad(5);
+        cfw.addInvoke(ByteCode.INVOKESTATIC,
+                      "org/mozilla/javascript/optimizer/OptRuntime",
+                      "endFunctionMetrics",
+                      "(Lorg/mozilla/javascript/Context;"
+                      +"Ljava/lang/String;"
+                      +"J)V");
     }
 
     private void generateMain(ClassFileWriter cfw)
@@ -2400,11 +2478,13 @@ class BodyCodegen
               case Token.ENUM_ID: {
                 int local = getLocalBlockRegister(node);
                 cfw.addALoad(local);
+                cfw.addALoad(contextLocal);
                 if (type == Token.ENUM_NEXT) {
-                    addScriptRuntimeInvoke(
-                        "enumNext", "(Ljava/lang/Object;)Ljava/lang/Boolean;");
+                    addScriptRuntimeInvoke("enumNext",
+                                           "(Ljava/lang/Object;"
+                                           +"Lorg/mozilla/javascript/Context;"
+                                           +")Ljava/lang/Boolean;");
                 } else {
-                    cfw.addALoad(contextLocal);
                     addScriptRuntimeInvoke("enumId",
                                            "(Ljava/lang/Object;"
                                            +"Lorg/mozilla/javascript/Context;"
@@ -2474,8 +2554,7 @@ class BodyCodegen
               case Token.AND: {
                     generateExpression(child, node);
                     cfw.add(ByteCode.DUP);
-                    addScriptRuntimeInvoke("toBoolean",
-                                           "(Ljava/lang/Object;)Z");
+                    addToBoolean();
                     int falseTarget = cfw.acquireLabel();
                     if (type == Token.AND)
                         cfw.add(ByteCode.IFEQ, falseTarget);
@@ -2491,8 +2570,7 @@ class BodyCodegen
                     Node ifThen = child.getNext();
                     Node ifElse = ifThen.getNext();
                     generateExpression(child, node);
-                    addScriptRuntimeInvoke("toBoolean",
-                                           "(Ljava/lang/Object;)Z");
+                    addToBoolean();
                     int elseTarget = cfw.acquireLabel();
                     cfw.add(ByteCode.IFEQ, elseTarget);
                     short stack = cfw.getStackTop();
@@ -3033,7 +3111,7 @@ class BodyCodegen
           default:
             // Generate generic code for non-optimized jump
             generateExpression(node, parent);
-            addScriptRuntimeInvoke("toBoolean", "(Ljava/lang/Object;)Z");
+            addToBoolean();
             cfw.add(ByteCode.IFNE, trueLabel);
             cfw.add(ByteCode.GOTO, falseLabel);
         }
@@ -3967,9 +4045,11 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
         }
         cfw.addALoad(variableObjectLocal);
         cfw.addPush(node.getString());
+        cfw.addALoad(contextLocal);
         addScriptRuntimeInvoke("typeofName",
                                "(Lorg/mozilla/javascript/Scriptable;"
                                +"Ljava/lang/String;"
+                               +"Lorg/mozilla/javascript/Context;"
                                +")Ljava/lang/String;");
     }
 
@@ -4815,7 +4895,7 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
         cfw.add(ByteCode.POP);
 
         generateExpression(child.getNext(), node);
-        addScriptRuntimeInvoke("toBoolean", "(Ljava/lang/Object;)Z");
+        addToBoolean();
         cfw.addALoad(variableObjectLocal);
         addScriptRuntimeInvoke("updateDotQuery",
                                "(Z"
@@ -4887,6 +4967,15 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
         addScriptRuntimeInvoke("toNumber", "(Ljava/lang/Object;)D");
     }
 
+    private void addToBoolean()
+    {
+        cfw.addALoad(contextLocal);
+        addScriptRuntimeInvoke("toBoolean",
+                               "(Ljava/lang/Object;"
+                               +"Lorg/mozilla/javascript/Context;"
+                               +")Z");
+    }
+
     private void addNewObjectArray(int size)
     {
         if (size == 0) {
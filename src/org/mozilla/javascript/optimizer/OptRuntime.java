@@ -255,6 +255,26 @@ public final class OptRuntime extends ScriptRuntime
         });
     }
 
+    /**
+     * Return the start time of a call to record in the function metrics
+     * of the context, or 0 if it has none.
+     */
+    public static long startFunctionMetrics(Context cx)
+    {
+        return cx.getFunctionMetrics() == null ? 0L : System.nanoTime();
+    }
+
+    public static void endFunctionMetrics(Context cx, String function,
+                                          long start)
+    {
+        if (start != 0L) {
+            FunctionMetrics metrics = cx.getFunctionMetrics();
+            if (metrics != null) {
+                metrics.record(function, System.nanoTime() - start);
+            }
+        }
+    }
+
     public static void throwStopIteration(Object obj) {
         throw new JavaScriptException(
             NativeIterator.getStopIterationObject((Scriptable)obj), "", 0);
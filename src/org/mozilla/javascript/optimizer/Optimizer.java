@@ -42,6 +42,11 @@ package org.mozilla.javascript.optimizer;
 import org.mozilla.javascript.*;
 import org.mozilla.javascript.ast.ScriptNode;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 class Optimizer
 {
 
@@ -61,6 +66,31 @@ class Optimizer
         }
     }
 
+    /**
+     * Optimize each function as a separate task of <tt>executor</tt>.
+     * The analysis of a function only reads and rewrites its own tree.
+     */
+    void optimize(ScriptNode scriptOrFn, ExecutorService executor)
+    {
+        int functionCount = scriptOrFn.getFunctionCount();
+        if (executor == null || functionCount < 2) {
+            optimize(scriptOrFn);
+            return;
+        }
+        List<Future<?>> tasks = new ArrayList<Future<?>>(functionCount);
+        for (int i = 0; i != functionCount; ++i) {
+            final OptFunctionNode f = OptFunctionNode.get(scriptOrFn, i);
+            tasks.add(executor.submit(new Runnable() {
+                public void run() {
+                    new Optimizer().optimizeFunction(f);
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            Kit.getResult(task);
+        }
+    }
+
     private void optimizeFunction(OptFunctionNode theFunction)
     {
         if (theFunction.fnode.requiresActivation()) return;
@@ -254,6 +254,9 @@ public class NativeRegExp extends IdScriptableObject implements Function {
         } else {
             int[] indexp = { (int) d };
             rval = executeRegExp(cx, scopeObj, reImpl, str, indexp, matchType);
+            if (!cx.hasFeature(Context.FEATURE_REGEXP_STATICS)) {
+                reImpl.clearLastMatch();
+            }
 
             if (re.global()) {
                 lastIndex = ((rval == null) || (rval == Undefined.instance))
@@ -341,68 +344,6 @@ public class NativeRegExp extends IdScriptableObject implements Function {
         }
 
         indexp[0] = re.end();
-        Object result;
-        Scriptable obj;
-
-        if (matchType == TEST) {
-            /*
-             * Testing for a match and updating cx.regExpImpl: don't allocate
-             * an array object, do return true.
-             */
-            result = Boolean.TRUE;
-            obj = null;
-        } else {
-            /*
-             * The array returned on match has element 0 bound to the matched
-             * string, elements 1 through re.parenCount bound to the paren
-             * matches, an index property telling the length of the left context,
-             * and an input property referring to the input string.
-             */
-            result = cx.newArray(scopeObj, 0);
-            obj = (Scriptable) result;
-
-            String matchstr = re.group(0);
-            obj.put(0, obj, matchstr);
-        }
-
-        res.input = str;
-
-        if (re.groupCount() == 0) {
-            res.parens = null;
-            res.lastParen = "";
-        } else {
-            res.parens = new String[re.groupCount()];
-
-            for (int group = 1; group <= re.groupCount(); group++) {
-                String cap = re.group(group);
-                res.parens[group - 1] = re.group(group);
-
-                if (matchType != TEST) {
-                    obj.put(group, obj,
-                            cap != null ? cap : Undefined.instance);
-                }
-            }
-            res.lastParen = res.parens[re.groupCount() - 1];
-        }
-
-        if (!(matchType == TEST)) {
-            /*
-             * Define the index and input properties last for better for/in loop
-             * order (so they come after the elements).
-             */
-            obj.put("index", obj, Integer.valueOf(re.start()));
-
-            obj.put("input", obj, str);
-        }
-
-        if (res.lastMatch == null) {
-            res.lastMatch = "";
-            res.leftContext = "";
-            res.rightContext = "";
-        }
-
-        res.lastMatchStart = re.start();
-        res.lastMatch = re.group(0);
 
         if (cx.getLanguageVersion() == Context.VERSION_1_2) {
             /*
@@ -418,21 +359,48 @@ public class NativeRegExp extends IdScriptableObject implements Function {
              * Insofar as JS1.2 always defined $` as "left context from the last
              * match" for global regexps, it was more consistent than perl4.
              */
-
-            res.leftContext = str.substring(start, re.start());
+            res.setLastMatch(re, str, start);
         } else {
             /*
              * For JS1.3 and ECMAv2, emulate Perl5 exactly:
              *
              * js1.3        "hi", "hi there"            "hihitherehi therebye"
              */
-
-            res.leftContext = str.substring(0, re.start());
+            res.setLastMatch(re, str, 0);
+        }
+        if (cx.hasFeature(Context.FEATURE_REGEXP_STATICS)) {
+            res.input = str;
         }
 
-        res.rightContext = str.substring(re.end(), end);
-
-        return result;
+        if (matchType == TEST) {
+            /*
+             * Testing for a match and updating cx.regExpImpl: don't allocate
+             * an array object, do return true.
+             */
+            return Boolean.TRUE;
+        }
+
+        /*
+         * The array returned on match has element 0 bound to the matched
+         * string, elements 1 through re.parenCount bound to the paren
+         * matches, an index property telling the length of the left context,
+         * and an input property referring to the input string.
+         */
+        Scriptable obj = cx.newArray(scopeObj, 0);
+        obj.put(0, obj, res.getLastMatch());
+        for (int group = 1; group <= res.parenCount; group++) {
+            String cap = res.getParen(group - 1);
+            obj.put(group, obj, cap != null ? cap : Undefined.instance);
+        }
+
+        /*
+         * Define the index and input properties last for better for/in loop
+         * order (so they come after the elements).
+         */
+        obj.put("index", obj, Integer.valueOf(res.lastMatchStart));
+        obj.put("input", obj, str);
+
+        return obj;
     }
 
     private static void reportWarning(Context cx, String messageId, String arg) {
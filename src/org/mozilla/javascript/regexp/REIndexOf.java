@@ -48,4 +48,6 @@ public class REIndexOf implements RegExpEngine, Serializable {
         }
         return input.substring(matchStart, matchEnd);
     }
+    public int start(int group) { return group == 0 ? matchStart : -1; }
+    public int end(int group) { return group == 0 ? matchEnd : -1; }
 }
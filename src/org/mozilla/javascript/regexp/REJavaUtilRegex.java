@@ -151,6 +151,18 @@ public class REJavaUtilRegex implements RegExpEngine, Serializable {
     }
 
     public String group(int group) {
+        return isValidCapture(group) ? matcher.group(group) : null;
+    }
+
+    public int start(int group) {
+        return isValidCapture(group) ? matcher.start(group) : -1;
+    }
+
+    public int end(int group) {
+        return isValidCapture(group) ? matcher.end(group) : -1;
+    }
+
+    private boolean isValidCapture(int group) {
         // remove any capture groups that were not cleared in a repetition,
         // also remove any groups that are inside neglookaheads
         if (validCapture == null) {
@@ -165,7 +177,7 @@ public class REJavaUtilRegex implements RegExpEngine, Serializable {
                 }
             }
         }
-        return validCapture[group] ? matcher.group(group) : null;
+        return validCapture[group];
     }
 
     public String js2javaUtilRegex() {
@@ -242,6 +242,34 @@ public class REJoni implements RegExpEngine, Serializable {
     }
 
     public String group(int group) {
+        int charStart = start(group);
+        if (charStart == -1) {
+            return null;
+        }
+        return input.substring(charStart, end(group));
+    }
+
+    public int start(int group) {
+        clearCaptures();
+        // check for non-matching group
+        if (region.beg[group] == -1) {
+            return -1;
+        }
+        // convert between byte-pos and char-pos
+        return b2c(region.beg[group]);
+    }
+
+    public int end(int group) {
+        clearCaptures();
+        // check for non-matching group
+        if (region.beg[group] == -1) {
+            return -1;
+        }
+        // convert between byte-pos and char-pos
+        return b2c(region.end[group]);
+    }
+
+    private void clearCaptures() {
         // ECMA 262 15.10.2.5 RepeatMatcher Step 4 - clear captures
         // if the start of any capture group is before the start of the prev
         // capture group, then clear it (set beg=-1)
@@ -256,16 +284,6 @@ public class REJoni implements RegExpEngine, Serializable {
             }
             capturesCleared = true;
         }
-
-        // check for non-matching group
-        if (region.beg[group] == -1) {
-            return null;
-        }
-
-        // convert between byte-pos and char-pos and return input.substr
-        int charStart = b2c(region.beg[group]);
-        int charEnd = b2c(region.end[group]);
-        return input.substring(charStart, charEnd);
     }
 
     private void addMulti(int bytePos) {
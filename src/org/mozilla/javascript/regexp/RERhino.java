@@ -365,6 +365,24 @@ public class RERhino implements RegExpEngine, Serializable {
         return input.substring(start, end);
     }
 
+    public int start(int group) {
+        if (group == 0) {
+            return start();
+        }
+        return gData.parens_index(group - 1);
+    }
+
+    public int end(int group) {
+        if (group == 0) {
+            return end();
+        }
+        int start = gData.parens_index(group - 1);
+        if (start == -1) {
+            return -1;
+        }
+        return start + gData.parens_length(group - 1);
+    }
+
     private static void reportWarning(Context cx, String messageId, String arg) {
         if (cx.hasFeature(Context.FEATURE_STRICT_MODE)) {
             String msg = ScriptRuntime.getMessage1(messageId, arg);
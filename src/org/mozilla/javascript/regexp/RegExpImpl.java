@@ -66,58 +66,65 @@ public class RegExpImpl implements RegExpProxy {
         GlobData data = new GlobData();
         data.mode = actionType;
 
-        switch (actionType) {
-          case RA_MATCH:
-            {
-                Object rval;
+        try {
+            switch (actionType) {
+              case RA_MATCH:
+                {
+                    Object rval;
+                    data.optarg = 1;
+                    rval = matchOrReplace(cx, scope, thisObj, args,
+                                          this, data, false);
+                    return data.arrayobj == null ? rval : data.arrayobj;
+                }
+
+              case RA_SEARCH:
                 data.optarg = 1;
-                rval = matchOrReplace(cx, scope, thisObj, args,
+                return matchOrReplace(cx, scope, thisObj, args,
                                       this, data, false);
-                return data.arrayobj == null ? rval : data.arrayobj;
-            }
-
-          case RA_SEARCH:
-            data.optarg = 1;
-            return matchOrReplace(cx, scope, thisObj, args,
-                                  this, data, false);
 
-          case RA_REPLACE:
-            {
-                Object arg1 = args.length < 2 ? Undefined.instance : args[1];
-                String repstr = null;
-                Function lambda = null;
-                if (arg1 instanceof Function) {
-                    lambda = (Function) arg1;
-                } else {
-                    repstr = ScriptRuntime.toString(arg1);
-                }
+              case RA_REPLACE:
+                {
+                    Object arg1 = args.length < 2 ? Undefined.instance
+                                                  : args[1];
+                    String repstr = null;
+                    Function lambda = null;
+                    if (arg1 instanceof Function) {
+                        lambda = (Function) arg1;
+                    } else {
+                        repstr = ScriptRuntime.toString(arg1);
+                    }
 
-                data.optarg = 2;
-                data.lambda = lambda;
-                data.repstr = repstr;
-                data.dollar = repstr == null ? -1 : repstr.indexOf('$');
-                data.charBuf = null;
-                data.leftIndex = 0;
-                Object val = matchOrReplace(cx, scope, thisObj, args,
-                                            this, data, true);
-                String rc = this.rightContext;
-
-                if (data.charBuf == null) {
-                    if (data.global || val == null
-                        || !val.equals(Boolean.TRUE))
-                    {
-                        /* Didn't match even once. */
-                        return data.str;
+                    data.optarg = 2;
+                    data.lambda = lambda;
+                    data.repstr = repstr;
+                    data.dollar = repstr == null ? -1 : repstr.indexOf('$');
+                    data.charBuf = null;
+                    data.leftIndex = 0;
+                    Object val = matchOrReplace(cx, scope, thisObj, args,
+                                                this, data, true);
+
+                    if (data.charBuf == null) {
+                        if (data.global || val == null
+                            || !val.equals(Boolean.TRUE))
+                        {
+                            /* Didn't match even once. */
+                            return data.str;
+                        }
+                        replace_glob(data, cx, scope, this, 0,
+                                     getLeftContextLength());
                     }
-                    String lc = this.leftContext;
-                    replace_glob(data, cx, scope, this, 0, lc.length());
+                    data.charBuf.append(matchInput, lastMatchEnd,
+                                        matchInput.length());
+                    return data.charBuf.toString();
                 }
-                data.charBuf.append(rc);
-                return data.charBuf.toString();
-            }
 
-          default:
-            throw Kit.codeBug();
+              default:
+                throw Kit.codeBug();
+            }
+        } finally {
+            if (!cx.hasFeature(Context.FEATURE_REGEXP_STATICS)) {
+                clearLastMatch();
+            }
         }
     }
 
@@ -160,7 +167,7 @@ public class RegExpImpl implements RegExpProxy {
             result = re.executeRegExp(cx, scope, reImpl,
                                       str, indexp, NativeRegExp.TEST);
             if (result != null && result.equals(Boolean.TRUE)) {
-                result = Integer.valueOf(reImpl.leftContext.length());
+                result = Integer.valueOf(reImpl.getLeftContextLength());
             } else {
                 result = Integer.valueOf(-1);
             }
@@ -178,10 +185,10 @@ public class RegExpImpl implements RegExpProxy {
                     if (data.mode != RA_REPLACE) Kit.codeBug();
                     int leftIndex = data.leftIndex;
                     int leftlen = reImpl.lastMatchStart - leftIndex;
-                    data.leftIndex = reImpl.lastMatchStart + reImpl.lastMatch.length();
+                    data.leftIndex = reImpl.lastMatchEnd;
                     replace_glob(data, cx, scope, reImpl, leftIndex, leftlen);
                 }
-                if (reImpl.lastMatch.length() == 0) {
+                if (reImpl.lastMatchEnd == reImpl.lastMatchStart) {
                     if (indexp[0] == str.length())
                         break;
                     indexp[0]++;
@@ -228,8 +235,7 @@ public class RegExpImpl implements RegExpProxy {
             ip[0] = ipsave;
             matched[0] = true;
 
-            String sep = this.lastMatch;
-            matchlen[0] = sep.length();
+            matchlen[0] = lastMatchEnd - lastMatchStart;
             if (matchlen[0] == 0) {
                 /*
                  * Empty string match: never split on an empty
@@ -261,7 +267,7 @@ public class RegExpImpl implements RegExpProxy {
             result = i - matchlen[0];
             break;
         }
-        int size = (parens == null) ? 0 : parens.length;
+        int size = parenCount;
         parensp[0] = new String[size];
         for (int num = 0; num < size; num++) {
             parensp[0][num] = getParenSubString(num);
@@ -269,19 +275,103 @@ public class RegExpImpl implements RegExpProxy {
         return result;
     }
 
+    /**
+     * Record the last successful match.  Only offsets into the matched
+     * string are kept; the substrings exposed as $&amp;, $1, $`, ... are
+     * created on demand by the accessors below.
+     */
+    void setLastMatch(RegExpEngine re, String str, int leftStart)
+    {
+        int count = re.groupCount();
+        int[] index = parenIndex;
+        if (count > 0 && (index == null || index.length < 2 * count)) {
+            index = new int[2 * count];
+            parenIndex = index;
+        }
+        for (int group = 1; group <= count; group++) {
+            int start = re.start(group);
+            index[2 * group - 2] = start;
+            index[2 * group - 1] = (start == -1) ? -1 : re.end(group);
+        }
+        parenCount = count;
+        matchInput = str;
+        lastMatchStart = re.start();
+        lastMatchEnd = re.end();
+        leftContextStart = leftStart;
+    }
+
+    /**
+     * Forget the last match so the matched string is no longer reachable
+     * from this object.
+     */
+    void clearLastMatch()
+    {
+        matchInput = null;
+        parenCount = 0;
+        lastMatchStart = lastMatchEnd = leftContextStart = 0;
+    }
+
+    /** Last string matched (perl $&amp;). */
+    String getLastMatch()
+    {
+        if (matchInput == null) {
+            return "";
+        }
+        return matchInput.substring(lastMatchStart, lastMatchEnd);
+    }
+
+    /** Last paren matched (perl $+), or null if it did not participate. */
+    String getLastParen()
+    {
+        return (parenCount == 0) ? "" : getParen(parenCount - 1);
+    }
+
+    /** Input to the left of the last match (perl $`). */
+    String getLeftContext()
+    {
+        if (matchInput == null) {
+            return "";
+        }
+        return matchInput.substring(leftContextStart, lastMatchStart);
+    }
+
+    int getLeftContextLength()
+    {
+        return lastMatchStart - leftContextStart;
+    }
+
+    /** Input to the right of the last match (perl $'). */
+    String getRightContext()
+    {
+        if (matchInput == null) {
+            return "";
+        }
+        return matchInput.substring(lastMatchEnd);
+    }
+
+    /**
+     * Zero-based paren substring of the last match, or null if the paren
+     * did not participate in it.
+     */
+    String getParen(int i)
+    {
+        if (i < parenCount) {
+            int start = parenIndex[2 * i];
+            if (start != -1) {
+                return matchInput.substring(start, parenIndex[2 * i + 1]);
+            }
+        }
+        return null;
+    }
+
     /**
      * Analog of REGEXP_PAREN_SUBSTRING in C jsregexp.h.
      * Assumes zero-based; i.e., for $3, i==2
      */
     String getParenSubString(int i)
     {
-        if (parens != null && i < parens.length) {
-            String parsub = parens[i];
-            if (parsub != null) {
-                return parsub;
-            }
-        }
-        return "";
+        String parsub = getParen(i);
+        return (parsub != null) ? parsub : "";
     }
 
 
@@ -295,7 +385,7 @@ public class RegExpImpl implements RegExpProxy {
         if (mdata.arrayobj == null) {
             mdata.arrayobj = cx.newArray(scope, 0);
         }
-        mdata.arrayobj.put(count, mdata.arrayobj, reImpl.lastMatch);
+        mdata.arrayobj.put(count, mdata.arrayobj, reImpl.getLastMatch());
     }
 
     /*
@@ -310,19 +400,18 @@ public class RegExpImpl implements RegExpProxy {
         if (rdata.lambda != null) {
             // invoke lambda function with args lastMatch, $1, $2, ... $n,
             // leftContext.length, whole string.
-            String[] parens = reImpl.parens;
-            int parenCount = (parens == null) ? 0 : parens.length;
+            int parenCount = reImpl.parenCount;
             Object[] args = new Object[parenCount + 3];
-            args[0] = reImpl.lastMatch.toString();
+            args[0] = reImpl.getLastMatch();
             for (int i=0; i < parenCount; i++) {
-                String sub = parens[i];
+                String sub = reImpl.getParen(i);
                 if (sub != null) {
-                    args[i+1] = sub.toString();
+                    args[i+1] = sub;
                 } else {
                     args[i+1] = Undefined.instance;
                 }
             }
-            args[parenCount+1] = Integer.valueOf(reImpl.leftContext.length());
+            args[parenCount+1] = Integer.valueOf(reImpl.getLeftContextLength());
             args[parenCount+2] = rdata.str;
             // This is a hack to prevent expose of reImpl data to
             // JS function which can run new regexps modifing
@@ -350,7 +439,7 @@ public class RegExpImpl implements RegExpProxy {
             rdata.charBuf = charBuf;
         }
 
-        charBuf.append(reImpl.input, leftIndex, leftIndex + leftlen);
+        charBuf.append(reImpl.matchInput, leftIndex, leftIndex + leftlen);
         if (rdata.lambda != null) {
             charBuf.append(lambdaStr);
         } else {
@@ -400,7 +489,7 @@ public class RegExpImpl implements RegExpProxy {
                 }
             }
             else {  /* ECMA 3, 1-9 or 01-99 */
-                int parenCount = (res.parens == null) ? 0 : res.parens.length;
+                int parenCount = res.parenCount;
                 num = dc - '0';
                 if (num > parenCount) {
                     return null;
@@ -429,9 +518,9 @@ public class RegExpImpl implements RegExpProxy {
           case '$':
               return new String("$");
           case '&':
-            return res.lastMatch;
+            return res.getLastMatch();
           case '+':
-            return res.lastParen;
+            return res.getLastParen();
           case '`':
             if (version == Context.VERSION_1_2) {
                 /*
@@ -441,11 +530,11 @@ public class RegExpImpl implements RegExpProxy {
                  * $` at the beginning of the target string when it is used in a
                  * substitution, so we emulate that special case here.
                  */
-                res.leftContext = res.input.substring(0, res.lastMatchStart);
+                res.leftContextStart = 0;
             }
-            return res.leftContext;
+            return res.getLeftContext();
           case '\'':
-            return res.rightContext;
+            return res.getRightContext();
         }
         return null;
     }
@@ -591,6 +680,9 @@ public class RegExpImpl implements RegExpProxy {
                 }
             }
         }
+        if (re != null && !cx.hasFeature(Context.FEATURE_REGEXP_STATICS)) {
+            ((RegExpImpl) reProxy).clearLastMatch();
+        }
         return result;
     }
 
@@ -718,13 +810,13 @@ public class RegExpImpl implements RegExpProxy {
 
     String    input;          /* input string to match (perl $_, GC root) */
     boolean   multiline;      /* whether input contains newlines (perl $*) */
-    String[]  parens;         /* Vector of SubString; last set of parens
-                                           matched (perl $1, $2) */
-    String    lastMatch;      /* last string matched (perl $&) */
-    String    lastParen;      /* last paren matched (perl $+) */
-    String    leftContext;    /* input to left of last match (perl $`) */
-    String    rightContext;   /* input to right of last match (perl $') */
+    String    matchInput;     /* string the last match offsets refer to */
+    int       parenCount;     /* number of parens in last match */
+    int[]     parenIndex;     /* start/end pairs of last set of parens
+                                 matched (perl $1, $2), -1 if unmatched */
     int       lastMatchStart; /* start of last match */
+    int       lastMatchEnd;   /* end of last match */
+    int       leftContextStart; /* start of left context (perl $`) */
 }
 
 
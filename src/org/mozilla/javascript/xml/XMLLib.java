@@ -66,6 +66,63 @@ public abstract class XMLLib
 		public abstract String getImplementationClassName();
 	}
 
+    /**
+     * Counts of the uses of a pool of XML parsers or transformers.
+     *
+     * @see XMLLib#getParserPoolStatistics()
+     * @see XMLLib#getTransformerPoolStatistics()
+     * @since 1.7R3
+     */
+    public static final class PoolStatistics
+    {
+        private final long createdCount;
+        private final long reusedCount;
+        private final long discardedCount;
+        private final int idleCount;
+
+        public PoolStatistics(long createdCount, long reusedCount,
+                              long discardedCount, int idleCount)
+        {
+            this.createdCount = createdCount;
+            this.reusedCount = reusedCount;
+            this.discardedCount = discardedCount;
+            this.idleCount = idleCount;
+        }
+
+        /**
+         * Return the number of instances created because none was idle.
+         */
+        public long getCreatedCount()
+        {
+            return createdCount;
+        }
+
+        /**
+         * Return the number of times an idle instance was reused.
+         */
+        public long getReusedCount()
+        {
+            return reusedCount;
+        }
+
+        /**
+         * Return the number of instances dropped because the pool was full
+         * or they could not be reset.
+         */
+        public long getDiscardedCount()
+        {
+            return discardedCount;
+        }
+
+        /**
+         * Return the number of instances idle in the pool.
+         */
+        public int getIdleCount()
+        {
+            return idleCount;
+        }
+    }
+
     public static XMLLib extractFromScopeOrNull(Scriptable scope)
     {
         ScriptableObject so = ScriptRuntime.getLibraryScopeOrNull(scope);
@@ -170,4 +227,40 @@ public abstract class XMLLib
     public int getPrettyIndent() {
         throw new UnsupportedOperationException();
     }
+
+    /**
+     * Set the number of idle XML parsers and transformers kept for reuse by
+     * the threads using this library, 0 to not keep any. The instances
+     * already kept are dropped.
+     * @since 1.7R3
+     */
+    public void setPoolSize(int size) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @see #setPoolSize(int)
+     * @since 1.7R3
+     */
+    public int getPoolSize() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Return the counts of the uses of the pool of XML parsers since the
+     * pool size was last set.
+     * @since 1.7R3
+     */
+    public PoolStatistics getParserPoolStatistics() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Return the counts of the uses of the pool of XML transformers since
+     * the pool size was last set.
+     * @since 1.7R3
+     */
+    public PoolStatistics getTransformerPoolStatistics() {
+        throw new UnsupportedOperationException();
+    }
 }
@@ -0,0 +1,83 @@
+package org.mozilla.javascript;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the allocation-free decimal parser against Double.parseDouble.
+ */
+public class DecimalToDoubleTest extends TestCase {
+
+    private static void check(String s) {
+        double expected = Double.parseDouble(s);
+        double actual = DecimalToDouble.parse(s, 0, s.length());
+        assertEquals(s, Double.doubleToRawLongBits(expected),
+                     Double.doubleToRawLongBits(actual));
+    }
+
+    private static void checkInvalid(String s) {
+        assertTrue(s, Double.isNaN(DecimalToDouble.parse(s, 0, s.length())));
+    }
+
+    public void testSimpleValues() {
+        String[] values = {
+            "0", "-0", "+0", "0.0", "-0.0", "1", "-1", "12345", "0.1", ".5",
+            "5.", "1e10", "1E-10", "1e+10", "3.14159", "-2.5e-3",
+            "9007199254740993", "9007199254740992.5", "1e22", "1e23",
+            "123456789012345678901234567890", "0.000000000000000000001",
+            "1.7976931348623157e308", "1.7976931348623159e308", "1e309",
+            "4.9e-324", "2.4703282292062328e-324", "2.4703282292062327e-324",
+            "2.2250738585072011e-308", "2.2250738585072012e-308",
+            "1e-400", "1e400", "00000123.4500000", "0.30000000000000004",
+            "18446744073709551615", "9999999999999999999", "99999999999999999999"
+        };
+        for (String s : values) {
+            check(s);
+        }
+    }
+
+    public void testInvalidValues() {
+        String[] values = {
+            "", "-", "+", ".", "e5", "1e", "1e+", "1.2.3", "1x", "--1",
+            "1e5.5", " 1", "1 ", "0x10", "Infinity", "NaN", "1d", "1f"
+        };
+        for (String s : values) {
+            checkInvalid(s);
+        }
+    }
+
+    public void testSubstring() {
+        String s = "[12.5,-3e2]";
+        assertEquals(12.5, DecimalToDouble.parse(s, 1, 5), 0.0);
+        assertEquals(-300.0, DecimalToDouble.parse(s, 6, 10), 0.0);
+    }
+
+    public void testRandomDoubles() {
+        Random random = new Random(0x29);
+        for (int i = 0; i < 100000; i++) {
+            double d = Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(d) || Double.isInfinite(d)) continue;
+            check(Double.toString(d));
+            check(DoubleToDecimal.toString(d));
+        }
+    }
+
+    public void testRandomDigitStrings() {
+        Random random = new Random(0x30);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.setLength(0);
+            int digits = 1 + random.nextInt(25);
+            int point = random.nextInt(digits + 1);
+            for (int j = 0; j < digits; j++) {
+                if (j == point) sb.append('.');
+                sb.append((char)('0' + random.nextInt(10)));
+            }
+            if (random.nextBoolean()) {
+                sb.append('e').append(random.nextInt(700) - 350);
+            }
+            check(sb.toString());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.mozilla.javascript;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the Schubfach based number to string conversion with the
+ * BigInteger based DToA implementation it replaces, and with a BigDecimal
+ * search for the shortest, closest decimal that reads back as the same
+ * double.
+ */
+public class DoubleToDecimalTest extends TestCase {
+
+    private static String legacy(double d) {
+        // special cases as handled by ScriptRuntime.numberToString
+        if (d != d) return "NaN";
+        if (d == Double.POSITIVE_INFINITY) return "Infinity";
+        if (d == Double.NEGATIVE_INFINITY) return "-Infinity";
+        if (d == 0.0) return "0";
+        StringBuffer sb = new StringBuffer();
+        DToA.JS_dtostr(sb, DToA.DTOSTR_STANDARD, 0, d);
+        return sb.toString();
+    }
+
+    /**
+     * Shortest decimal which converts back to d; among several of the
+     * same length the closest, and the even one on a tie.
+     */
+    private static BigDecimal shortest(double d) {
+        BigDecimal exact = new BigDecimal(d);
+        for (int k = 1; k <= 17; k++) {
+            BigDecimal nearest =
+                exact.round(new MathContext(k, RoundingMode.HALF_EVEN));
+            if (nearest.doubleValue() == d) return nearest;
+            for (RoundingMode mode : new RoundingMode[] {
+                    RoundingMode.FLOOR, RoundingMode.CEILING }) {
+                BigDecimal other = exact.round(new MathContext(k, mode));
+                if (other.doubleValue() == d) return other;
+            }
+        }
+        throw new AssertionError();
+    }
+
+    private static void check(double d) {
+        String actual = DoubleToDecimal.toString(d);
+        String message = "bits " + Long.toHexString(Double.doubleToRawLongBits(d));
+        String expected = null;
+        boolean legacyValid;
+        try {
+            expected = legacy(d);
+            legacyValid = Double.isNaN(d) ||
+                Double.parseDouble(expected) == d;
+        } catch (RuntimeException e) {
+            // DToA fails or emits bogus digits for some subnormals
+            legacyValid = false;
+        }
+        if (legacyValid) {
+            assertEquals(message, expected, actual);
+        }
+        if (!Double.isNaN(d) && !Double.isInfinite(d) && d != 0.0) {
+            assertEquals(message, d, Double.parseDouble(actual), 0.0);
+            assertEquals(message, 0,
+                         shortest(d).compareTo(new BigDecimal(actual)));
+        }
+    }
+
+    public void testSpecialValues() {
+        double[] values = {
+            0.0, -0.0, 1.0, -1.0, 0.1, 0.2, 0.3, 0.1 + 0.2, 1.0 / 3,
+            100, 123456789, 1e21, 1e20, 123e18, 1.5e21, 1e-6, 1e-7,
+            1.2345e-7, 0.000001234, 5e-324, -5e-324, 1e-323, 2e-323,
+            Double.MIN_NORMAL, Double.MAX_VALUE, -Double.MAX_VALUE,
+            9007199254740992.0, 9007199254740993.0, 4.35, 2.5, 0.5,
+            Math.PI, Math.E, 1e23, 8.41e21, 5e-310, 1.7976931348623157e308,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+        };
+        for (double d : values) {
+            check(d);
+        }
+        assertEquals("1e+21", DoubleToDecimal.toString(1e21));
+        assertEquals("0.30000000000000004", DoubleToDecimal.toString(0.1 + 0.2));
+        assertEquals("-1.5e-7", DoubleToDecimal.toString(-1.5e-7));
+        assertEquals("5e-324", DoubleToDecimal.toString(Double.MIN_VALUE));
+    }
+
+    public void testPowersOfTwoAndTen() {
+        for (int e = -1074; e <= 1023; e++) {
+            check(Math.pow(2, e));
+        }
+        for (int e = -323; e <= 308; e++) {
+            double d = Double.parseDouble("1e" + e);
+            check(d);
+            check(Math.nextUp(d));
+            check(Math.nextAfter(d, 0));
+        }
+    }
+
+    public void testSmallSubnormals() {
+        for (long bits = 1; bits < 5000; bits++) {
+            check(Double.longBitsToDouble(bits));
+        }
+    }
+
+    public void testRandomBitPatterns() {
+        Random random = new Random(0x5C4B);
+        for (int i = 0; i < 50000; i++) {
+            double d = Double.longBitsToDouble(random.nextLong());
+            check(d);
+        }
+    }
+
+    public void testRandomShortDecimals() {
+        Random random = new Random(42);
+        for (int i = 0; i < 50000; i++) {
+            // values as they typically show up in JSON and CSV data
+            double d = random.nextInt(10000000) / Math.pow(10, random.nextInt(9));
+            check(d);
+        }
+    }
+}
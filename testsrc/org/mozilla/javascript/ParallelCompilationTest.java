@@ -0,0 +1,140 @@
+package org.mozilla.javascript;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.ScriptNode;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+
+/**
+ * Compiling with {@link CompilerEnvirons#setCompilationExecutor} generates
+ * the same code as compiling on the calling thread.
+ */
+public class ParallelCompilationTest extends TestCase
+{
+    private static final String EXPECTED =
+        "04k0x042,42;1484k37x3742,42;2964k74x7442,42;"
+        + "4444k111x11142,42;5924k148x14842,42;7404k185x18542,42";
+
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp()
+    {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        executor.shutdown();
+    }
+
+    private static String source()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("function f").append(i).append("(a, b) {\n")
+              .append("  var re = /x").append(i).append("(\\d+)/g;\n")
+              .append("  function g(c) { return c * ").append(i)
+              .append(" + (function(d) { return d + 'k").append(i)
+              .append("'; })(c); }\n")
+              .append("  for (var j = 0; j < a; j++) b += j;\n")
+              .append("  return g(b) + String(re.exec('x").append(i)
+              .append("42'));\n}\n");
+        }
+        sb.append("var r = []; for (var k = 0; k < 200; k += 37)"
+                  + " r.push(this['f' + k](3, 1)); r.join(';')");
+        return sb.toString();
+    }
+
+    private InterpreterData interpret(String source, boolean parallel)
+    {
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.setOptimizationLevel(-1);
+        env.setCompilationExecutor(parallel ? executor : null);
+        AstRoot ast = new Parser(env).parse(source, "test.js", 1);
+        ScriptNode tree = new IRFactory(env).transformTree(ast);
+        return (InterpreterData) new Interpreter().compile(
+                env, tree, tree.getEncodedSource(), false);
+    }
+
+    private static void assertSameCode(InterpreterData expected,
+                                       InterpreterData actual)
+    {
+        assertEquals(expected.itsName, actual.itsName);
+        assertTrue(Arrays.equals(expected.itsICode, actual.itsICode));
+        assertTrue(Arrays.equals(expected.itsStringTable,
+                                 actual.itsStringTable));
+        assertTrue(Arrays.equals(expected.itsDoubleTable,
+                                 actual.itsDoubleTable));
+        assertTrue(Arrays.equals(expected.argNames, actual.argNames));
+        assertEquals(expected.itsMaxFrameArray, actual.itsMaxFrameArray);
+        assertEquals(expected.itsRegExpLiterals == null,
+                     actual.itsRegExpLiterals == null);
+        assertEquals(expected.getFunctionCount(), actual.getFunctionCount());
+        for (int i = 0; i < expected.getFunctionCount(); i++) {
+            assertSameCode(expected.itsNestedFunctions[i],
+                           actual.itsNestedFunctions[i]);
+        }
+    }
+
+    public void testInterpreter()
+    {
+        Context cx = Context.enter();
+        try {
+            String source = source();
+            InterpreterData sequential = interpret(source, false);
+            InterpreterData parallel = interpret(source, true);
+            assertSameCode(sequential, parallel);
+
+            Scriptable scope = cx.initStandardObjects();
+            Script script = InterpretedFunction.createScript(parallel, null);
+            assertEquals(EXPECTED, Context.toString(script.exec(cx, scope)));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    public void testContextExecutor()
+    {
+        Context cx = Context.enter();
+        try {
+            cx.setOptimizationLevel(-1);
+            cx.setCompilationExecutor(executor);
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope, source(), "test.js", 1,
+                                              null);
+            assertEquals(EXPECTED, Context.toString(result));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    public void testClassCompiler()
+    {
+        Context.enter();
+        try {
+            for (int opt = 0; opt <= 9; opt += 9) {
+                CompilerEnvirons env = new CompilerEnvirons();
+                env.setOptimizationLevel(opt);
+                Object[] sequential = new ClassCompiler(env)
+                        .compileToClassFiles(source(), "test.js", 1, "Test");
+                env.setCompilationExecutor(executor);
+                Object[] parallel = new ClassCompiler(env)
+                        .compileToClassFiles(source(), "test.js", 1, "Test");
+                assertEquals(sequential.length, parallel.length);
+                for (int i = 1; i < sequential.length; i += 2) {
+                    assertTrue(Arrays.equals((byte[]) sequential[i],
+                                             (byte[]) parallel[i]));
+                }
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.mozilla.javascript.commonjs.module;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.commonjs.module.provider.PrecompiledModuleScriptProvider;
+import org.mozilla.javascript.tools.jsc.ModuleCompiler;
+
+/**
+ * Runs module trees compiled into a jar by {@link ModuleCompiler}.
+ * @version $Id$
+ */
+public class PrecompiledModuleTests extends TestCase
+{
+    private File jar;
+
+    @Override
+    protected void setUp() throws Exception {
+        jar = File.createTempFile("modules", ".jar");
+    }
+
+    @Override
+    protected void tearDown() {
+        jar.delete();
+    }
+
+    public void testTransitive() throws Exception {
+        final PrecompiledModuleScriptProvider provider = compile("transitive");
+        assertEquals(new HashSet<String>(Arrays.asList(
+                "program", "test", "a", "b", "c")), provider.getModuleIds());
+        assertEquals("pass:PASS transitive,info:DONE", run(provider));
+    }
+
+    public void testRelativeIds() throws Exception {
+        final PrecompiledModuleScriptProvider provider = compile("relative");
+        assertEquals(new HashSet<String>(Arrays.asList("program", "test",
+                "submodule/a", "submodule/b")), provider.getModuleIds());
+        assertEquals("pass:PASS a and b share foo through a relative require,"
+                + "info:DONE", run(provider));
+    }
+
+    public void testUnknownModule() throws Exception {
+        final PrecompiledModuleScriptProvider provider = compile("transitive");
+        final Context cx = Context.enter();
+        try {
+            assertNull(provider.getModuleScript(cx, "system", null));
+            final ModuleScript a = provider.getModuleScript(cx, "a", null);
+            assertSame(a, provider.getModuleScript(cx, "a", null));
+            assertTrue(a.getUri().endsWith("transitive/a.js"));
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
+    private PrecompiledModuleScriptProvider compile(String testName)
+    throws Exception
+    {
+        final URL url = getClass().getResource("1.0/" + testName);
+        final String dir = URLDecoder.decode(url.getFile(), "UTF-8");
+        final ModuleCompiler compiler = new ModuleCompiler();
+        final String[] ids = compiler.processOptions(new String[] {
+                "-modules", dir, "-package", "compiled." + testName,
+                "-o", jar.getPath(), "program" });
+        compiler.processModules(ids);
+        assertFalse(compiler.hasReportedError());
+        return new PrecompiledModuleScriptProvider(new URLClassLoader(
+                new URL[] { jar.toURI().toURL() }, getClass().getClassLoader()));
+    }
+
+    private static String run(ModuleScriptProvider provider) {
+        final Context cx = Context.enter();
+        try {
+            final Scriptable scope = cx.initStandardObjects();
+            cx.evaluateString(scope, "var out = [];" +
+                    "function print(msg, kind) { out.push(kind + ':' + msg); }",
+                    "print", 1, null);
+            new Require(cx, scope, provider, null, null, true)
+                    .requireMain(cx, "program");
+            return Context.toString(cx.evaluateString(scope, "out.join()",
+                    "out", 1, null));
+        }
+        finally {
+            Context.exit();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.mozilla.javascript.commonjs.module;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.FunctionMetrics;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSource;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSourceProvider;
+import org.mozilla.javascript.commonjs.module.provider.StrongCachingModuleScriptProvider;
+import org.mozilla.javascript.commonjs.module.provider.UrlModuleSourceProvider;
+
+/**
+ * Tests prefetching of module dependencies.
+ * @version $Id$
+ */
+public class PrefetchTests extends TestCase
+{
+    private final List<String> loads = 
+        Collections.synchronizedList(new ArrayList<String>());
+    private StrongCachingModuleScriptProvider provider;
+
+    @Override
+    protected void setUp() throws Exception {
+        final ModuleSourceProvider sources = new UrlModuleSourceProvider(
+                Collections.singleton(getClass().getResource(
+                        "1.0/transitive/").toURI()), null);
+        provider = new StrongCachingModuleScriptProvider(
+                new ModuleSourceProvider() {
+                    public ModuleSource getModuleSource(String moduleId, 
+                            Scriptable paths, Object validator) 
+                    throws IOException
+                    {
+                        loads.add(moduleId + (validator == null ? "" : "?"));
+                        return sources.getModuleSource(moduleId, paths, 
+                                validator);
+                    }
+                });
+    }
+
+    public void testPrefetch() throws Exception {
+        provider.setPrefetchExecutor(new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        final Context cx = Context.enter();
+        try {
+            provider.getModuleScript(cx, "program", null);
+            assertEquals("[program, test, system, a, b, c]", loads.toString());
+            loads.clear();
+            assertEquals("pass:PASS transitive,info:DONE", run(cx));
+            // everything was already compiled, only revalidated
+            assertEquals("[program?, test?, a?, b?, c?]", loads.toString());
+        }
+        finally {
+            Context.exit();
+        }
+    }
+
+    public void testPrefetchOnThreadPool() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        provider.setPrefetchExecutor(executor);
+        assertSame(executor, provider.getPrefetchExecutor());
+        final Context cx = Context.enter();
+        try {
+            provider.getModuleScript(cx, "program", null);
+            for(int i = 0; i < 100 && !loads.contains("c"); ++i) {
+                Thread.sleep(50);
+            }
+            assertTrue(loads.toString(), loads.contains("c"));
+            assertEquals("pass:PASS transitive,info:DONE", run(cx));
+        }
+        finally {
+            Context.exit();
+            executor.shutdown();
+        }
+    }
+
+    public void testPrefetchCompileSettings() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        provider.setPrefetchExecutor(executor);
+        final FunctionMetrics metrics = new FunctionMetrics();
+        final Context cx = Context.enter();
+        try {
+            cx.setFunctionMetrics(metrics);
+            provider.getModuleScript(cx, "program", null);
+            for(int i = 0; i < 100 && !loads.contains("c"); ++i) {
+                Thread.sleep(50);
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals("pass:PASS transitive,info:DONE", run(cx));
+            // the prefetched modules were compiled to record metrics too
+            boolean found = false;
+            for(String function : metrics.getFunctions()) {
+                found |= function.indexOf("c.js") != -1;
+            }
+            assertTrue(metrics.getAllStats().keySet().toString(), found);
+        }
+        finally {
+            Context.exit();
+            executor.shutdownNow();
+        }
+    }
+
+    private String run(Context cx) throws Exception {
+        final Scriptable scope = cx.initStandardObjects();
+        cx.evaluateString(scope, "var out = [];" +
+                "function print(msg, kind) { out.push(kind + ':' + msg); }",
+                "print", 1, null);
+        new Require(cx, scope, provider, null, null, true)
+                .requireMain(cx, "program");
+        return Context.toString(cx.evaluateString(scope, "out.join()",
+                "out", 1, null));
+    }
+}
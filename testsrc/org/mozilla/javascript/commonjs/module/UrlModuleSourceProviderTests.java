@@ -0,0 +1,92 @@
+package org.mozilla.javascript.commonjs.module;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Kit;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSource;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSourceProvider;
+import org.mozilla.javascript.commonjs.module.provider.UrlModuleSourceProvider;
+
+/**
+ * Tests loading of file modules by {@link UrlModuleSourceProvider}.
+ * @version $Id$
+ */
+public class UrlModuleSourceProviderTests extends TestCase
+{
+    private File dir;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = File.createTempFile("modules", "");
+        dir.delete();
+        dir.mkdir();
+    }
+
+    @Override
+    protected void tearDown() {
+        for(File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testRevalidation() throws Exception {
+        final File file = write("m", "exports.x = 1;");
+        file.setLastModified(1000000000000L);
+        // no expiry calculator, so every request revalidates
+        final ModuleSourceProvider provider = new UrlModuleSourceProvider(
+                Collections.singleton(dir.toURI()), null, null, null);
+        final ModuleSource source = provider.getModuleSource("m", null, null);
+        assertEquals(file.toURI().toString(), source.getUri());
+        assertEquals("exports.x = 1;", read(source));
+        assertSame(ModuleSourceProvider.NOT_MODIFIED, provider.getModuleSource(
+                "m", null, source.getValidator()));
+
+        write("m", "exports.x = 2;");
+        file.setLastModified(1000000001000L);
+        assertEquals("exports.x = 2;", read(provider.getModuleSource("m",
+                null, source.getValidator())));
+
+        assertNull(provider.getModuleSource("missing", null, null));
+    }
+
+    public void testLargeFile() throws Exception {
+        final StringBuilder b = new StringBuilder();
+        for(int i = 0; b.length() < 200000; ++i) {
+            b.append("exports.f").append(i).append(" = 'x';\n");
+        }
+        write("large", b.toString());
+        final ModuleSourceProvider provider = new UrlModuleSourceProvider(
+                Collections.singleton(dir.toURI()), null);
+        assertEquals(b.toString(), read(provider.getModuleSource("large",
+                null, null)));
+    }
+
+    private File write(String moduleId, String text) throws IOException {
+        final File file = new File(dir, moduleId + ".js");
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes("US-ASCII"));
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static String read(ModuleSource source) throws IOException {
+        final Reader reader = source.getReader();
+        try {
+            return Kit.readReader(reader);
+        }
+        finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.mozilla.javascript.regexp;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the legacy RegExp static properties which are materialized lazily
+ * from the offsets of the last match, and can be turned off with
+ * {@link Context#FEATURE_REGEXP_STATICS}.
+ */
+public class RegExpStaticsTest extends TestCase {
+
+    private static Object eval(ContextFactory factory, final String source) {
+        return factory.call(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Object result = cx.evaluateString(scope, source, "test", 1,
+                        null);
+                return Context.toString(result);
+            }
+        });
+    }
+
+    public void testStatics() {
+        ContextFactory factory = new ContextFactory();
+        assertEquals("b,x,b,x|cd,xab|cd",
+                eval(factory, "/(a)(z)?(b)/.test('xab|cd');"
+                        + "[RegExp.$3, 'x' + RegExp.$2, RegExp.lastParen,"
+                        + " RegExp.leftContext + RegExp.$9 + RegExp.rightContext,"
+                        + " RegExp.input].join(',')"));
+        assertEquals("x!b!yY",
+                eval(factory, "'xaby'.replace(/a(b)/, \"!$1!\") +"
+                        + " RegExp.rightContext.toUpperCase()"));
+        assertEquals("a-b-c-", eval(factory,
+                "'a1b22c333'.replace(/\\d+/g, function(m) {"
+                        + " return '-'; })"));
+        assertEquals("(3)", eval(factory,
+                "'aab'.replace(/a*(x)?b/, function(m, x, i, s) {"
+                        + " return '(' + (x === undefined ? m.length : x)"
+                        + " + ')'; })"));
+        assertEquals("c", eval(factory, "'a,b,c'.split(/,/); RegExp.rightContext"));
+        assertEquals("2", eval(factory, "'abcabc'.search(/ca/)"));
+    }
+
+    public void testStaticsDisabled() {
+        ContextFactory factory = new ContextFactory() {
+            @Override
+            protected boolean hasFeature(Context cx, int featureIndex) {
+                if (featureIndex == Context.FEATURE_REGEXP_STATICS) {
+                    return false;
+                }
+                return super.hasFeature(cx, featureIndex);
+            }
+        };
+        assertEquals("true,,,", eval(factory,
+                "[/(a)b/.test('xab'), RegExp.$1, RegExp.lastMatch,"
+                        + " RegExp.input].join(',')"));
+        assertEquals("xYzb!", eval(factory,
+                "'xabzb'.replace(/a(b)/, 'Y').replace(/(b)$/g, '$1!')"
+                        + " + RegExp.lastMatch"));
+        assertEquals("a,1,b,2,c", eval(factory,
+                "'a1b2c'.split(/(\\d)/).join(',') + RegExp.rightContext"));
+    }
+}
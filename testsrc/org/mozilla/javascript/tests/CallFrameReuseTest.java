@@ -0,0 +1,85 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.JavaScriptException;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * The interpreter reuses the frames of returned calls only when nothing
+ * else refers to them.
+ */
+public class CallFrameReuseTest extends TestCase
+{
+    private static Object eval(final String source)
+    {
+        return new ContextFactory().call(new ContextAction() {
+            public Object run(Context cx) {
+                cx.setOptimizationLevel(-1);
+                cx.setLanguageVersion(Context.VERSION_1_8);
+                Scriptable scope = cx.initStandardObjects();
+                return cx.evaluateString(scope, source, "test.js", 1, null);
+            }
+        });
+    }
+
+    public void testRecursion()
+    {
+        assertEquals(Double.valueOf(6765), eval(
+            "function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }\n" +
+            "fib(20);"));
+        // tail calls, constructors and Function.prototype.call
+        assertEquals("10,5,3", eval(
+            "function P(n) { this.n = n; }\n" +
+            "function down(n) { if (n == 0) return 0; return down(n - 1); }\n" +
+            "function sum(a, b) { return a + b; }\n" +
+            "[sum.call(null, down(100) + 4, 6), new P(5).n, sum.apply(null, [1, 2])]" +
+            ".join();"));
+    }
+
+    public void testExceptionStackSurvivesLaterCalls()
+    {
+        // the frames of the error stack return normally, and the stack
+        // is computed when it is read
+        String stack = (String)eval(
+            "function inner() { try { undefined.x; } catch (x) { return x; } }\n" +
+            "function outer() { return inner(); }\n" +
+            "function other(n) { return n == 0 ? 0 : other(n - 1); }\n" +
+            "var e = outer();\n" +
+            "other(50);\n" +
+            "e.stack;");
+        assertTrue(stack, stack.indexOf("(inner)") != -1);
+        assertTrue(stack, stack.indexOf("(outer)") != -1);
+        assertEquals(-1, stack.indexOf("(other)"));
+    }
+
+    public void testThrownValueStack()
+    {
+        try {
+            eval("function f() { throw 1; }\n" +
+                 "function g() { f(); }\n" +
+                 "g();");
+            fail();
+        } catch (JavaScriptException ex) {
+            String stack = ex.getScriptStackTrace();
+            assertTrue(stack, stack.indexOf("(f)") != -1);
+            assertTrue(stack, stack.indexOf("(g)") != -1);
+        }
+    }
+
+    public void testGenerators()
+    {
+        assertEquals("0,1,2,3:0,1,2,3", eval(
+            "function gen(n) { var i = 0; while (i < n) yield i++; }\n" +
+            "function f(n) { return n == 0 ? 0 : f(n - 1); }\n" +
+            "var a = [], b = [];\n" +
+            "var g1 = gen(4), g2 = gen(4);\n" +
+            "for (var i = 0; i < 4; i++) {\n" +
+            "  a.push(g1.next()); f(10); b.push(g2.next()); f(10);\n" +
+            "}\n" +
+            "a.join() + ':' + b.join();"));
+    }
+}
@@ -0,0 +1,62 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * The runtime uses the Context it is given for conversions and for the
+ * typeof and for-in operators instead of the Context of the current
+ * thread.
+ */
+public class ContextArgumentTest extends TestCase
+{
+    private static final String SOURCE =
+        "var b = new Boolean(false), n = 0;\n" +
+        "for (var k in Iterator({ x: 1, y: 2 })) n++;\n" +
+        "[b ? 1 : 0, !b, b && 1, typeof noSuchName, n].join();";
+
+    private static Object eval(final int optimizationLevel,
+                               final int version)
+    {
+        return new ContextFactory().call(new ContextAction() {
+            public Object run(Context cx) {
+                cx.setOptimizationLevel(optimizationLevel);
+                cx.setLanguageVersion(version);
+                Scriptable scope = cx.initStandardObjects();
+                return cx.evaluateString(scope, SOURCE, "test.js", 1, null);
+            }
+        });
+    }
+
+    public void testOperators()
+    {
+        for (int level = -1; level <= 9; level += 9) {
+            assertEquals("1,false,1,undefined,2",
+                         eval(level, Context.VERSION_DEFAULT));
+            // before 1.3 objects convert to booleans through valueOf
+            assertEquals("0,true,false,undefined,2",
+                         eval(level, Context.VERSION_1_2));
+        }
+    }
+
+    public void testJavaToJS()
+    {
+        Context cx = new ContextFactory().enterContext();
+        Scriptable scope;
+        try {
+            scope = cx.initStandardObjects();
+        } finally {
+            Context.exit();
+        }
+        assertNull(Context.getCurrentContext());
+        assertEquals("x", Context.javaToJS("x", scope, null));
+        Object wrapped = Context.javaToJS(new StringBuffer("x"), scope, cx);
+        assertTrue(wrapped instanceof Scriptable);
+        assertEquals("JavaObject", ((Scriptable)wrapped).getClassName());
+        assertEquals(0, cx.getElements(cx.newArray(scope, 0)).length);
+    }
+}
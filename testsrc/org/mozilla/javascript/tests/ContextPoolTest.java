@@ -0,0 +1,106 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+
+/**
+ * A ContextFactory with a Context pool reuses the Contexts it made for
+ * threads entering it.
+ */
+public class ContextPoolTest extends TestCase
+{
+    private static final ContextAction CURRENT = new ContextAction() {
+        public Object run(Context cx) {
+            return cx;
+        }
+    };
+
+    private static class CountingListener implements ContextFactory.Listener
+    {
+        int created;
+        int released;
+
+        public void contextCreated(Context cx) {
+            ++created;
+        }
+
+        public void contextReleased(Context cx) {
+            ++released;
+        }
+    }
+
+    public void testReuse() throws Exception
+    {
+        final ContextFactory factory = new ContextFactory();
+        CountingListener listener = new CountingListener();
+        factory.addListener(listener);
+        factory.initContextPool(1);
+        assertEquals(1, factory.getContextPoolSize());
+
+        final Object cx = factory.call(CURRENT);
+        assertSame(cx, factory.call(CURRENT));
+        final Object[] other = new Object[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                other[0] = factory.call(CURRENT);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertSame(cx, other[0]);
+        // listeners are told of a creation for each release
+        assertEquals(3, listener.created);
+        assertEquals(3, listener.released);
+
+        // only one Context is kept
+        Context outer = factory.enterContext();
+        try {
+            thread = new Thread() {
+                @Override
+                public void run() {
+                    other[0] = factory.call(CURRENT);
+                }
+            };
+            thread.start();
+            thread.join();
+        } finally {
+            Context.exit();
+        }
+        assertSame(cx, outer);
+        assertNotSame(cx, other[0]);
+        assertSame(other[0], factory.call(CURRENT));
+        assertEquals(6, listener.created);
+        assertEquals(6, listener.released);
+    }
+
+    public void testExplicitContext()
+    {
+        ContextFactory factory = new ContextFactory();
+        factory.initContextPool(4);
+        Context pooled = (Context)factory.call(CURRENT);
+        // a Context entered explicitly belongs to the caller
+        Context cx = factory.enterContext(pooled);
+        Context.exit();
+        assertSame(pooled, cx);
+        assertNotSame(cx, factory.call(CURRENT));
+        Context other = (Context)factory.call(CURRENT);
+        assertNotSame(cx, other);
+        assertSame(other, factory.call(CURRENT));
+    }
+
+    public void testNoPool()
+    {
+        ContextFactory factory = new ContextFactory();
+        assertEquals(0, factory.getContextPoolSize());
+        assertNotSame(factory.call(CURRENT), factory.call(CURRENT));
+        factory.initContextPool(2);
+        Object cx = factory.call(CURRENT);
+        assertSame(cx, factory.call(CURRENT));
+        factory.initContextPool(0);
+        assertNotSame(cx, factory.call(CURRENT));
+    }
+}
@@ -0,0 +1,106 @@
+package org.mozilla.javascript.tests;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.FunctionMetrics;
+import org.mozilla.javascript.Script;
+
+/**
+ * Calls of instrumented functions are counted in all modes.
+ * @see Context#setFunctionMetrics(FunctionMetrics)
+ */
+public class FunctionMetricsTest extends TestCase
+{
+    private static final String SOURCE =
+        "function f(n) {\n" +
+        "  return g(n) + (function() { return 1; })();\n" +
+        "}\n" +
+        "function g(n) { if (n == 3) throw n; return n; }\n" +
+        "for (var i = 0; i < 10; i++) {\n" +
+        "  try { f(i); } catch (e) {}\n" +
+        "}\n";
+
+    private static Object run(final Script script, final FunctionMetrics m,
+                              final int optimizationLevel)
+    {
+        return new ContextFactory().call(new ContextAction() {
+            public Object run(Context cx) {
+                cx.setOptimizationLevel(optimizationLevel);
+                cx.setFunctionMetrics(m);
+                Script s = script != null ? script
+                    : cx.compileString(SOURCE, "test.js", 1, null);
+                return s.exec(cx, cx.initStandardObjects());
+            }
+        });
+    }
+
+    private static void assertCounts(int optimizationLevel)
+    {
+        FunctionMetrics m = new FunctionMetrics();
+        run(null, m, optimizationLevel);
+        assertEquals(10, m.getInvocationCount("f()@test.js:1"));
+        assertEquals(10, m.getInvocationCount("g()@test.js:4"));
+        // f(3) does not get to call the anonymous function
+        assertEquals(9, m.getInvocationCount("anonymous()@test.js:2"));
+        assertEquals(3, m.getFunctions().length);
+
+        FunctionMetrics.Stats f = m.getStats("f()@test.js:1");
+        assertTrue(f.getTotalTime() > 0);
+        assertTrue(f.getPercentileTime(50) <= f.getPercentileTime(100));
+        assertTrue(f.getPercentileTime(100) >= f.getMeanTime());
+    }
+
+    public void testInterpreted()
+    {
+        assertCounts(-1);
+    }
+
+    public void testCompiled()
+    {
+        assertCounts(0);
+        assertCounts(9);
+    }
+
+    public void testNotInstrumented()
+    {
+        Script script = (Script)new ContextFactory().call(new ContextAction() {
+            public Object run(Context cx) {
+                cx.setOptimizationLevel(-1);
+                return cx.compileString(SOURCE, "test.js", 1, null);
+            }
+        });
+        FunctionMetrics m = new FunctionMetrics();
+        run(script, m, -1);
+        assertEquals(0, m.getFunctions().length);
+    }
+
+    public void testMBean() throws Exception
+    {
+        FunctionMetrics m = new FunctionMetrics();
+        run(null, m, -1);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(
+            "org.mozilla.javascript:type=FunctionMetrics,name=test");
+        server.registerMBean(m, name);
+        try {
+            String[] functions = (String[])server.getAttribute(name,
+                                                               "Functions");
+            assertEquals("anonymous()@test.js:2", functions[0]);
+            assertEquals(Long.valueOf(10), server.invoke(name,
+                "getInvocationCount", new Object[] { "f()@test.js:1" },
+                new String[] { String.class.getName() }));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0, m.getFunctions().length);
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
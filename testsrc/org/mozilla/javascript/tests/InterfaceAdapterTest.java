@@ -0,0 +1,117 @@
+package org.mozilla.javascript.tests;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * JavaScript functions converted to Java interfaces receive the arguments
+ * and the method name and return values of the method's return type.
+ */
+public class InterfaceAdapterTest extends TestCase
+{
+    public interface Primitives {
+        int toInt(byte b, short s, int i, long l, float f, double d,
+                  char c, boolean z);
+        long toLong(byte b, short s, int i, long l, float f, double d,
+                    char c, boolean z);
+        double toDouble(byte b, short s, int i, long l, float f, double d,
+                        char c, boolean z);
+        boolean toBoolean(byte b, short s, int i, long l, float f, double d,
+                          char c, boolean z);
+        char toChar(byte b, short s, int i, long l, float f, double d,
+                    char c, boolean z);
+    }
+
+    public interface Objects {
+        String objects(Object o, List<?> l, String s);
+        void objectsNoResult(Object o, List<?> l, String s);
+    }
+
+    public static String callPrimitives(Primitives p)
+    {
+        byte b = 1;
+        short s = 2;
+        return "" + p.toInt(b, s, 3, 4L, 5.5f, 6.25, 'x', true) + ","
+            + p.toLong(b, s, 3, 4L, 5.5f, 6.25, 'x', true) + ","
+            + p.toDouble(b, s, 3, 4L, 5.5f, 6.25, 'x', true) + ","
+            + p.toBoolean(b, s, 3, 4L, 5.5f, 6.25, 'x', true) + ","
+            + p.toChar(b, s, 3, 4L, 5.5f, 6.25, 'x', true);
+    }
+
+    public static String callObjects(Objects o)
+    {
+        List<Object> list = new ArrayList<Object>();
+        list.add("a");
+        o.objectsNoResult(list, list, "s");
+        return o.objects(list, list, "s");
+    }
+
+    private static Object eval(final String source)
+    {
+        return new ContextFactory().call(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                return cx.evaluateString(scope, source, "test.js", 1, null);
+            }
+        });
+    }
+
+    public void testPrimitives()
+    {
+        assertEquals("10,21,21.75,false,y", eval(
+            "var T = org.mozilla.javascript.tests.InterfaceAdapterTest;\n" +
+            "String(T.callPrimitives(function(b, s, i, l, f, d, c, z, name) {\n" +
+            "  switch (name) {\n" +
+            "    case 'toInt': return b + s + i + l;\n" +
+            "    case 'toLong': return b + s + i + l + f + d;\n" +
+            "    case 'toDouble': return b + s + i + l + f + d;\n" +
+            "    case 'toBoolean': return !z;\n" +
+            "    case 'toChar': return c == 'x' ? 'y' : 'z';\n" +
+            "  }\n" +
+            "}));"));
+    }
+
+    public void testObjects()
+    {
+        assertEquals("objectsNoResult,objects:a:s", eval(
+            "var T = org.mozilla.javascript.tests.InterfaceAdapterTest;\n" +
+            "var calls = [];\n" +
+            "String(T.callObjects(function(o, l, s, name) {\n" +
+            "  calls.push(name);\n" +
+            "  if (o !== l || l.size() != 1) throw 'not the same list';\n" +
+            "  return calls.join() + ':' + l.get(0) + ':' + s;\n" +
+            "}));"));
+    }
+
+    private static Runnable runnable;
+    private static String mark;
+
+    public static void keep(Runnable r)
+    {
+        runnable = r;
+    }
+
+    public static void mark(String s)
+    {
+        mark = s;
+    }
+
+    public void testWithoutContext()
+    {
+        eval("var T = org.mozilla.javascript.tests.InterfaceAdapterTest;\n" +
+             "T.keep(function() { T.mark('ran'); });");
+        assertFalse(Proxy.isProxyClass(runnable.getClass()));
+        assertNull(Context.getCurrentContext());
+        runnable.run();
+        assertEquals("ran", mark);
+        assertNull(Context.getCurrentContext());
+    }
+}
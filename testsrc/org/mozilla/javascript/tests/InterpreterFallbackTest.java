@@ -0,0 +1,115 @@
+package org.mozilla.javascript.tests;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ErrorReporter;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Scripts whose generated classes exceed JVM limits (64K method size,
+ * 64K constant pool entries) are run by the interpreter instead of failing
+ * to compile.
+ */
+public class InterpreterFallbackTest extends TestCase
+{
+    /** A multi-MB data table, too many constants for one class file. */
+    private static String bigLiteralScript()
+    {
+        StringBuilder sb = new StringBuilder("var data = {");
+        for (int i = 0; i < 20000; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("key").append(i).append(": [").append(i)
+              .append(", 'value").append(i).append("', ").append(i)
+              .append(".5, {nested: 'entry").append(i).append("'}]");
+        }
+        sb.append("};\n");
+        sb.append("data.key19999[1] + ':' + data.key12345[3].nested;");
+        return sb.toString();
+    }
+
+    /** A single function body that exceeds the 64K method size limit. */
+    private static String bigFunctionSource()
+    {
+        StringBuilder sb = new StringBuilder("function big(x) { var s = x;");
+        for (int i = 0; i < 6000; i++) {
+            sb.append("s = s + (s & 1);");
+        }
+        sb.append(" return s; }");
+        return sb.toString();
+    }
+
+    public void testBigLiteral()
+    {
+        final String source = bigLiteralScript();
+        assertTrue(source.length() > 1024 * 1024);
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Object result = cx.evaluateString(scope, source, "big.js",
+                        1, null);
+                assertEquals("value19999:entry12345", result);
+                return null;
+            }
+        });
+    }
+
+    public void testBigFunctionFromReader()
+    {
+        final String source = bigFunctionSource() + "\nbig(3);";
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                try {
+                    Script script = cx.compileReader(new StringReader(source),
+                            "big.js", 1, null);
+                    Object result = script.exec(cx, scope);
+                    assertEquals(4, ((Number) result).intValue());
+                } catch (java.io.IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return null;
+            }
+        });
+    }
+
+    public void testCompileFunctionReportsWarning()
+    {
+        final String source = bigFunctionSource();
+        Utils.runWithOptimizationLevel(new ContextAction() {
+            public Object run(Context cx) {
+                final StringBuilder warnings = new StringBuilder();
+                cx.setErrorReporter(new ErrorReporter() {
+                    public void warning(String message, String sourceName,
+                            int line, String lineSource, int lineOffset) {
+                        warnings.append(message);
+                    }
+                    public void error(String message, String sourceName,
+                            int line, String lineSource, int lineOffset) {
+                        fail(message);
+                    }
+                    public EvaluatorException runtimeError(String message,
+                            String sourceName, int line, String lineSource,
+                            int lineOffset) {
+                        return new EvaluatorException(message, sourceName,
+                                line, lineSource, lineOffset);
+                    }
+                });
+                Scriptable scope = cx.initStandardObjects();
+                Function f = cx.compileFunction(scope, source, "big.js", 1,
+                        null);
+                Object result = f.call(cx, scope, scope, new Object[] { 5 });
+                assertEquals(6, ((Number) result).intValue());
+                assertTrue(warnings.toString(),
+                        warnings.indexOf("64K") >= 0);
+                return null;
+            }
+        }, 9);
+    }
+}
@@ -0,0 +1,140 @@
+package org.mozilla.javascript.tests;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.ClassCache;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Top-level scopes share the classes generated for the same JavaAdapter
+ * signature, and the classes can be stored in a directory.
+ */
+public class JavaAdapterCacheTest extends TestCase
+{
+    public interface Marker
+    {
+        void mark();
+    }
+
+    /**
+     * Loads {@link Marker} itself so that the adapters implementing it
+     * refer to classes of this loader.
+     */
+    static class MarkerClassLoader extends URLClassLoader
+    {
+        MarkerClassLoader(ClassLoader parent)
+        {
+            super(new URL[] { Marker.class.getProtectionDomain()
+                                  .getCodeSource().getLocation() },
+                  parent);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name,
+                                                  boolean resolve)
+            throws ClassNotFoundException
+        {
+            if (name.equals(Marker.class.getName())) {
+                Class<?> c = findLoadedClass(name);
+                return c != null ? c : findClass(name);
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    private static Class<?> adapterClass(String source, boolean caching)
+    {
+        return adapterClass(new ContextFactory(), source, caching);
+    }
+
+    private static Class<?> adapterClass(ContextFactory factory,
+                                         final String source,
+                                         final boolean caching)
+    {
+        return (Class<?>)factory.call(new ContextAction() {
+            public Object run(Context cx) {
+                ScriptableObject scope = cx.initStandardObjects();
+                ClassCache.get(scope).setCachingEnabled(caching);
+                Object adapter = cx.evaluateString(scope, source,
+                                                   "test.js", 1, null);
+                return Context.jsToJava(adapter, Object.class).getClass();
+            }
+        });
+    }
+
+    public void testSharedBetweenScopes()
+    {
+        String source = "new JavaAdapter(java.lang.Runnable, " +
+                        "{ run: function() {}, shared: function(a) {} })";
+        Class<?> c = adapterClass(source, true);
+        assertSame(c, adapterClass(source, true));
+        assertNotSame(c, adapterClass(source, false));
+        assertNotSame(c, adapterClass(
+            "new JavaAdapter(java.lang.Runnable, " +
+            "{ run: function() {}, shared: function(a, b) {} })", true));
+    }
+
+    public void testStore() throws Exception
+    {
+        File dir = File.createTempFile("adapters", "");
+        assertTrue(dir.delete());
+        String property = "rhino.adapter.cache.dir";
+        System.setProperty(property, dir.getPath());
+        try {
+            String source = "new JavaAdapter(java.lang.Runnable, " +
+                "{ run: function() {}, stored" + System.nanoTime() +
+                ": function() {} })";
+            Class<?> c = adapterClass(source, true);
+            File file = new File(dir, c.getName() + ".class");
+            assertTrue(file.isFile());
+            assertEquals(1, dir.list().length);
+
+            // a factory with another application class loader does not
+            // share the classes but reads the stored code
+            assertTrue(file.setLastModified(1000000000000L));
+            ContextFactory factory = new ContextFactory();
+            factory.initApplicationClassLoader(
+                new URLClassLoader(new URL[0], getClass().getClassLoader()));
+            Class<?> c2 = adapterClass(factory, source, true);
+            assertNotSame(c, c2);
+            assertEquals(c.getName(), c2.getName());
+            assertEquals(1000000000000L, file.lastModified());
+            assertTrue(file.delete());
+        } finally {
+            System.getProperties().remove(property);
+            dir.delete();
+        }
+    }
+
+    public void testClassLoaderCollected()
+    {
+        ClassLoader loader
+            = new MarkerClassLoader(getClass().getClassLoader());
+        WeakReference<ClassLoader> ref = new WeakReference<ClassLoader>(loader);
+        ContextFactory factory = new ContextFactory();
+        factory.initApplicationClassLoader(loader);
+        Class<?> c = adapterClass(factory,
+            "new JavaAdapter(Packages['" + Marker.class.getName() + "'], " +
+            "{ mark: function() {} })", true);
+        assertSame(loader, c.getInterfaces()[0].getClassLoader());
+        loader = null;
+        factory = null;
+        c = null;
+        for (int i = 0; i != 20 && ref.get() != null; ++i) {
+            byte[][] garbage = new byte[64][];
+            for (int j = 0; j != garbage.length; ++j) {
+                garbage[j] = new byte[1 << 16];
+            }
+            System.gc();
+        }
+        assertNull(ref.get());
+    }
+}
@@ -0,0 +1,163 @@
+package org.mozilla.javascript.tests;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Java packages of all top-level scopes share the classes found, and the
+ * names found not to be classes, for a class loader, and can be read from
+ * several threads at once.
+ */
+public class JavaPackageCacheTest extends TestCase
+{
+    static class CountingClassLoader extends ClassLoader
+    {
+        final Map<String,Integer> counts = new HashMap<String,Integer>();
+
+        CountingClassLoader(ClassLoader parent)
+        {
+            super(parent);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name,
+                                                  boolean resolve)
+            throws ClassNotFoundException
+        {
+            Integer count = counts.get(name);
+            counts.put(name, Integer.valueOf(count == null ? 1 : count + 1));
+            return super.loadClass(name, resolve);
+        }
+
+        synchronized int count(String name)
+        {
+            Integer count = counts.get(name);
+            return count == null ? 0 : count.intValue();
+        }
+    }
+
+    /**
+     * Only loads {@link Late} once it is made visible.
+     */
+    static class LateClassLoader extends ClassLoader
+    {
+        volatile boolean visible;
+
+        LateClassLoader(ClassLoader parent)
+        {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve)
+            throws ClassNotFoundException
+        {
+            if (!visible && name.equals(Late.class.getName())) {
+                throw new ClassNotFoundException(name);
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    public static class Late
+    {
+    }
+
+    private static Object eval(ContextFactory factory, final String source)
+    {
+        return factory.call(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                return cx.evaluateString(scope, source, "test.js", 1, null);
+            }
+        });
+    }
+
+    public void testSharedBetweenScopes()
+    {
+        CountingClassLoader loader
+            = new CountingClassLoader(getClass().getClassLoader());
+        ContextFactory factory = new ContextFactory();
+        factory.initApplicationClassLoader(loader);
+        String source = "[typeof java.util.ArrayList, " +
+                        "String(Packages.no.such.Clazz)].join()";
+        for (int i = 0; i != 3; ++i) {
+            assertEquals("function,[JavaPackage no.such.Clazz]",
+                         eval(factory, source));
+        }
+        assertEquals(1, loader.count("java.util.ArrayList"));
+        assertEquals(1, loader.count("no.such.Clazz"));
+    }
+
+    public void testInvalidateMissingClasses()
+    {
+        LateClassLoader loader
+            = new LateClassLoader(getClass().getClassLoader());
+        ContextFactory factory = new ContextFactory();
+        factory.initApplicationClassLoader(loader);
+        String source =
+            "typeof Packages.org.mozilla.javascript.tests." +
+            "JavaPackageCacheTest$Late";
+        assertEquals("object", eval(factory, source));
+        loader.visible = true;
+        // the miss is remembered for all scopes until invalidated
+        assertEquals("object", eval(factory, source));
+        ContextFactory.invalidateMissingJavaClasses(loader);
+        assertEquals("function", eval(factory, source));
+    }
+
+    public void testConcurrentLookups() throws Exception
+    {
+        final ContextFactory factory = new ContextFactory();
+        final Scriptable scope = (Scriptable)factory.call(new ContextAction() {
+            public Object run(Context cx) {
+                return cx.initStandardObjects();
+            }
+        });
+        final String[] names = {
+            "java.util.concurrent.ConcurrentHashMap", "java.util.BitSet",
+            "java.text.Collator", "no.such.Clazz"
+        };
+        final Object[][] results = new Object[8][];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i != threads.length; ++i) {
+            final int thread = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    factory.call(new ContextAction() {
+                        public Object run(Context cx) {
+                            Object[] values = new Object[names.length];
+                            for (int j = 0; j != names.length; ++j) {
+                                values[j] = cx.evaluateString(scope,
+                                    "Packages." + names[j], "test.js", 1,
+                                    null);
+                            }
+                            results[thread] = values;
+                            return null;
+                        }
+                    });
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i != threads.length; ++i) {
+            threads[i].join();
+        }
+        for (int i = 0; i != results.length; ++i) {
+            assertNotNull(results[i]);
+            for (int j = 0; j != names.length; ++j) {
+                assertSame(results[0][j], results[i][j]);
+            }
+        }
+        assertEquals("[JavaPackage no.such.Clazz]",
+                     String.valueOf(results[0][3]));
+    }
+}
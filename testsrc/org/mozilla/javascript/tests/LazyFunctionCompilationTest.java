@@ -0,0 +1,108 @@
+package org.mozilla.javascript.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Functions compiled on their first call behave like eagerly compiled ones.
+ * @see Context#setLazyFunctionCompilation(boolean)
+ */
+public class LazyFunctionCompilationTest extends TestCase
+{
+    private static final String SOURCE =
+        "function outer(a, b) {\n" +
+        "  var re = /x(\\d+)/g;\n" +
+        "  function inner(s) { return s.replace(re, '<$1>'); }\n" +
+        "  var counter = function() { return ++a; };\n" +
+        "  return inner(b) + ':' + counter() + counter();\n" +
+        "}\n" +
+        "function unused() { return 'never called'; }\n" +
+        "var data = [outer.length, unused.length, outer(1, 'ax12bx3')];\n" +
+        "data.push(String(unused).indexOf('never called') > 0);\n" +
+        "data.join(',')";
+
+    private static Object eval(final String source, final boolean lazy)
+    {
+        return new ContextFactory().call(new ContextAction() {
+            public Object run(Context cx) {
+                cx.setOptimizationLevel(-1);
+                cx.setLazyFunctionCompilation(lazy);
+                Scriptable scope = cx.initStandardObjects();
+                return cx.evaluateString(scope, source, "test.js", 1, null);
+            }
+        });
+    }
+
+    public void testSameResult()
+    {
+        assertEquals("2,0,a<12>b<3>:23,true", eval(SOURCE, false));
+        assertEquals("2,0,a<12>b<3>:23,true", eval(SOURCE, true));
+    }
+
+    public void testSyntaxErrorsReportedUpFront()
+    {
+        try {
+            eval("function f() { return 1; }\n" +
+                 "function g() { var = 2; }\n" +
+                 "f();", true);
+            fail("syntax error in uncalled function not reported");
+        } catch (EvaluatorException e) {
+            assertEquals(2, e.lineNumber());
+        }
+    }
+
+    public void testConcurrentFirstCall() throws Exception
+    {
+        final ContextFactory factory = new ContextFactory();
+        final Scriptable scope = (Scriptable) factory.call(new ContextAction() {
+            public Object run(Context cx) {
+                cx.setOptimizationLevel(-1);
+                cx.setLazyFunctionCompilation(true);
+                Scriptable s = cx.initStandardObjects();
+                cx.evaluateString(s,
+                        "function sum(n) { var t = 0;" +
+                        " for (var i = 1; i <= n; i++) t += i; return t; }",
+                        "sum.js", 1, null);
+                return s;
+            }
+        });
+        final List<Object> results = new ArrayList<Object>();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    Object r = factory.call(new ContextAction() {
+                        public Object run(Context cx) {
+                            Function f = (Function) scope.get("sum", scope);
+                            return f.call(cx, scope, scope,
+                                          new Object[] { 100 });
+                        }
+                    });
+                    synchronized (results) {
+                        results.add(r);
+                    }
+                }
+            };
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(threads.length, results.size());
+        for (Object r : results) {
+            assertEquals(5050, ((Number) r).intValue());
+        }
+    }
+}
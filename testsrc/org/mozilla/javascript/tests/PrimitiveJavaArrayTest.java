@@ -0,0 +1,117 @@
+package org.mozilla.javascript.tests;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Scripts read and write the elements of Java arrays of primitive types,
+ * and JavaScript arrays convert to such arrays, with the same conversions
+ * as for other Java values.
+ */
+public class PrimitiveJavaArrayTest extends TestCase
+{
+    private static Object eval(final String source)
+    {
+        return new ContextFactory().call(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                return cx.evaluateString(scope, source, "test.js", 1, null);
+            }
+        });
+    }
+
+    private static String roundTrip(String type, String values)
+    {
+        return String.valueOf(eval(
+            "var a = java.lang.reflect.Array.newInstance(" +
+            "java.lang." + type + ".TYPE, 4);\n" +
+            "var v = [" + values + "];\n" +
+            "for (var i = 0; i < v.length; i++) a[i] = v[i];\n" +
+            "var r = [];\n" +
+            "for (var i = 0; i < a.length; i++) r.push(a[i]);\n" +
+            "r.join() + ':' + typeof a[0] + ':' + a[4];"));
+    }
+
+    public void testElements()
+    {
+        assertEquals("1.5,-2,NaN,3:number:undefined",
+                     roundTrip("Double", "1.5, -2, NaN, '3'"));
+        assertEquals("1.5,-2,3,4:number:undefined",
+                     roundTrip("Float", "1.5, -2, '3', 4"));
+        assertEquals("1,-2,3,2147483648:number:undefined",
+                     roundTrip("Long", "1.5, -2.5, '3', 2147483648"));
+        assertEquals("1,-2,3,2147483647:number:undefined",
+                     roundTrip("Integer", "1.5, -2.5, '3', 2147483647"));
+        assertEquals("1,-2,3,32767:number:undefined",
+                     roundTrip("Short", "1, -2, '3', 32767"));
+        assertEquals("1,-2,3,127:number:undefined",
+                     roundTrip("Byte", "1, -2, '3', 127"));
+        assertEquals("97,98,1,65535:number:undefined",
+                     roundTrip("Character", "97, 'b', 1.5, 65535"));
+        assertEquals("true,false,true,false:boolean:undefined",
+                     roundTrip("Boolean", "true, false, true, false"));
+    }
+
+    public void testConversionErrors()
+    {
+        try {
+            roundTrip("Byte", "1, 2, 3, 128");
+            fail();
+        } catch (EvaluatorException ex) {
+        }
+        try {
+            roundTrip("Integer", "1, 2, 3, NaN");
+            fail();
+        } catch (EvaluatorException ex) {
+        }
+        try {
+            eval("var a = java.lang.reflect.Array.newInstance(" +
+                 "java.lang.Integer.TYPE, 1); a[1] = 0;");
+            fail();
+        } catch (EvaluatorException ex) {
+        }
+    }
+
+    public static String doubles(double[] a)
+    {
+        return Arrays.toString(a);
+    }
+
+    public static String ints(int[] a)
+    {
+        return Arrays.toString(a);
+    }
+
+    public static String chars(char[] a)
+    {
+        return Arrays.toString(a);
+    }
+
+    public static String booleans(boolean[] a)
+    {
+        return Arrays.toString(a);
+    }
+
+    public void testFromNativeArray()
+    {
+        assertEquals("[1.5, 2.0, 3.0]|[1, -2, 3]|[a, b]|[true, false]",
+            eval("var T = org.mozilla.javascript.tests.PrimitiveJavaArrayTest;\n" +
+                 "[T.doubles([1.5, 2, '3']),\n" +
+                 " T.ints([1.5, -2.5, '3']),\n" +
+                 " T.chars([97, 'b']),\n" +
+                 " T.booleans([true, false])].join('|');"));
+        try {
+            eval("org.mozilla.javascript.tests.PrimitiveJavaArrayTest" +
+                 ".ints([1, 'x']);");
+            fail();
+        } catch (EvaluatorException ex) {
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.mozilla.javascript.tests;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.SamplingProfiler;
+
+/**
+ * Samples of interpreted and compiled scripts have the script frames.
+ * @see SamplingProfiler
+ */
+public class SamplingProfilerTest extends TestCase
+{
+    private static final String SOURCE =
+        "function hot() {\n" +
+        "  var x = 0; for (var i = 0; i < 10000; i++) x += i; return x;\n" +
+        "}\n" +
+        "var end = new Date().getTime() + 300;\n" +
+        "while (new Date().getTime() < end) hot();\n";
+
+    private static String profile(int optimizationLevel, boolean lineNumbers)
+        throws IOException
+    {
+        return profile(new ContextFactory(), optimizationLevel, lineNumbers);
+    }
+
+    private static String profile(ContextFactory factory,
+                                  final int optimizationLevel,
+                                  boolean lineNumbers)
+        throws IOException
+    {
+        SamplingProfiler profiler = new SamplingProfiler(1, lineNumbers);
+        profiler.start(factory);
+        try {
+            factory.call(new ContextAction() {
+                public Object run(Context cx) {
+                    cx.setOptimizationLevel(optimizationLevel);
+                    return cx.evaluateString(cx.initStandardObjects(),
+                                             SOURCE, "test.js", 1, null);
+                }
+            });
+        } finally {
+            profiler.stop();
+        }
+        assertTrue(profiler.getSampleCount() > 0);
+        StringWriter out = new StringWriter();
+        profiler.writeFoldedStacks(out);
+        return out.toString();
+    }
+
+    public void testInterpreted() throws IOException
+    {
+        String folded = profile(-1, false);
+        assertTrue(folded, folded.indexOf("@test.js;hot()@test.js ") >= 0);
+    }
+
+    public void testCompiled() throws IOException
+    {
+        String folded = profile(9, false);
+        assertTrue(folded, folded.indexOf("@test.js;hot()@test.js ") >= 0);
+    }
+
+    public void testLineNumbers() throws IOException
+    {
+        String folded = profile(-1, true);
+        assertTrue(folded, folded.indexOf("@test.js:5;hot()@test.js:2 ") >= 0);
+    }
+
+    public void testPooledContext() throws IOException
+    {
+        ContextFactory factory = new ContextFactory();
+        factory.initContextPool(1);
+        // put a Context made before the profiler started in the pool
+        factory.call(new ContextAction() {
+            public Object run(Context cx) {
+                return null;
+            }
+        });
+        for (int i = 0; i != 2; ++i) {
+            String folded = profile(factory, -1, false);
+            assertTrue(folded,
+                       folded.indexOf("@test.js;hot()@test.js ") >= 0);
+        }
+    }
+
+    public void testStopped() throws IOException
+    {
+        ContextFactory factory = new ContextFactory();
+        SamplingProfiler profiler = new SamplingProfiler(1, false);
+        profiler.start(factory);
+        profiler.stop();
+        factory.call(new ContextAction() {
+            public Object run(Context cx) {
+                return cx.evaluateString(cx.initStandardObjects(),
+                                         SOURCE, "test.js", 1, null);
+            }
+        });
+        assertEquals(0, profiler.getSampleCount());
+    }
+}
@@ -0,0 +1,176 @@
+package org.mozilla.javascript.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Function sources decompiled from the retained script text are the same
+ * as those decompiled from the encoded source.
+ * @see Context#setSourceRetention(int)
+ */
+public class SourceRetentionTest extends TestCase
+{
+    private static final String SOURCE =
+        "function add(a, b) { return a + b; }\n" +
+        "var obj = { get x() { return 1; }, set x(v) { this._x = v; },\n" +
+        "            get functional() 2,\n" +
+        "            m: function named(c) { return c * 2; } };\n" +
+        "var closures = [function(x) x, function(y) function(z) y + z];\n" +
+        "if (true) { function inner(s) { return '\\ud800' + s; } }\n" +
+        "function outer() {\n" +
+        "  /* comment */ var re = /a(b)/g;\n" +
+        "  return function(d) { return d.replace(re, '$1'); };\n" +
+        "}\n" +
+        "var fns = [add, obj.__lookupGetter__('x'),\n" +
+        "           obj.__lookupSetter__('x'),\n" +
+        "           obj.__lookupGetter__('functional'), obj.m,\n" +
+        "           closures[0], closures[1], closures[1](1), inner, outer,\n" +
+        "           outer(), new Function('a', 'b', 'return a * b;')];\n" +
+        "var out = [];\n" +
+        "for (var i = 0; i < fns.length; i++) {\n" +
+        "  out.push(fns[i].toString(), uneval(fns[i]));\n" +
+        "}\n" +
+        "out.push(uneval(obj), outer()('abab'));\n" +
+        "out.join('\\n')";
+
+    private static Object eval(final String source, final int retention)
+    {
+        return new ContextFactory().call(new ContextAction() {
+            public Object run(Context cx) {
+                cx.setOptimizationLevel(-1);
+                cx.setLanguageVersion(Context.VERSION_1_8);
+                cx.setSourceRetention(retention);
+                Scriptable scope = cx.initStandardObjects();
+                return cx.evaluateString(scope, source, "test.js", 1, null);
+            }
+        });
+    }
+
+    public void testSameSource()
+    {
+        Object expected = eval(SOURCE, Context.SOURCE_RETENTION_ENCODED);
+        assertEquals(expected, eval(SOURCE, Context.SOURCE_RETENTION_TEXT));
+        assertEquals(expected,
+                     eval(SOURCE, Context.SOURCE_RETENTION_COMPRESSED));
+        assertEquals(expected, eval(SOURCE, Context.SOURCE_RETENTION_FILE));
+    }
+
+    public void testCompiledScriptAndFunction()
+    {
+        final String script = "var a = 1;\nfunction f(x) {\n  return x;\n}\n";
+        final String function = "function g(a) { if (a) return 1; }";
+        String[] expected = null;
+        for (int retention = Context.SOURCE_RETENTION_ENCODED;
+             retention <= Context.SOURCE_RETENTION_FILE; retention++)
+        {
+            final int mode = retention;
+            String[] actual = (String[]) new ContextFactory().call(
+                    new ContextAction() {
+                public Object run(Context cx) {
+                    cx.setOptimizationLevel(-1);
+                    cx.setSourceRetention(mode);
+                    Scriptable scope = cx.initStandardObjects();
+                    Script s = cx.compileString(script, "s.js", 1, null);
+                    Function f = cx.compileFunction(scope, function, "f.js",
+                                                    1, null);
+                    return new String[] {
+                        cx.decompileScript(s, 2),
+                        cx.decompileFunction(f, 0),
+                        cx.decompileFunctionBody(f, 4)
+                    };
+                }
+            });
+            if (expected == null) {
+                expected = actual;
+            } else {
+                for (int i = 0; i < expected.length; i++) {
+                    assertEquals(expected[i], actual[i]);
+                }
+            }
+        }
+    }
+
+    public void testSerialization() throws Exception
+    {
+        ContextFactory factory = new ContextFactory();
+        byte[] bytes = (byte[]) factory.call(new ContextAction() {
+            public Object run(Context cx) {
+                cx.setOptimizationLevel(-1);
+                cx.setSourceRetention(Context.SOURCE_RETENTION_FILE);
+                Scriptable scope = cx.initStandardObjects();
+                Object f = cx.evaluateString(scope,
+                        "(function sq(n) { return n * n; })", "sq.js", 1,
+                        null);
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    ObjectOutputStream oos = new ObjectOutputStream(out);
+                    oos.writeObject(f);
+                    oos.close();
+                    return out.toByteArray();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        final Function f = (Function) new ObjectInputStream(
+                new ByteArrayInputStream(bytes)).readObject();
+        Object source = factory.call(new ContextAction() {
+            public Object run(Context cx) {
+                return cx.decompileFunction(f, 0);
+            }
+        });
+        assertEquals("\nfunction sq(n) {\n    return n * n;\n}\n", source);
+    }
+
+    private static int countSourceFiles()
+    {
+        String[] names = new File(System.getProperty("java.io.tmpdir")).list(
+            new FilenameFilter() {
+                public boolean accept(File dir, String name) {
+                    return name.startsWith("rhino") && name.endsWith(".js");
+                }
+            });
+        return names == null ? 0 : names.length;
+    }
+
+    public void testFileDeleted()
+    {
+        int before = countSourceFiles();
+        // the script and the function it creates keep a file each
+        eval(SOURCE, Context.SOURCE_RETENTION_FILE);
+        assertTrue(countSourceFiles() >= before + 2);
+        // files of collected scripts are deleted when another is written,
+        // which keeps its own file
+        for (int i = 0; i != 20 && countSourceFiles() > before + 1; ++i) {
+            System.gc();
+            eval("1", Context.SOURCE_RETENTION_FILE);
+        }
+        assertTrue(countSourceFiles() <= before + 1);
+    }
+
+    public void testBadRetention()
+    {
+        Context cx = Context.enter();
+        try {
+            cx.setSourceRetention(4);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        } finally {
+            Context.exit();
+        }
+    }
+}
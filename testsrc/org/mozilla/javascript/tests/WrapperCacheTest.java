@@ -0,0 +1,170 @@
+package org.mozilla.javascript.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.NativeJavaArray;
+import org.mozilla.javascript.NativeJavaClass;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.WrapFactory;
+
+/**
+ * A WrapFactory caching wrappers wraps the same Java object by the same
+ * Scriptable within a top-level scope.
+ */
+public class WrapperCacheTest extends TestCase
+{
+    private static Object run(final boolean caching, final ContextAction action)
+    {
+        return new ContextFactory().call(new ContextAction() {
+            public Object run(Context cx) {
+                WrapFactory wrapFactory = new WrapFactory();
+                wrapFactory.setCachingWrappers(caching);
+                cx.setWrapFactory(wrapFactory);
+                return action.run(cx);
+            }
+        });
+    }
+
+    public void testObjects()
+    {
+        run(true, new ContextAction() {
+            public Object run(Context cx) {
+                WrapFactory wf = cx.getWrapFactory();
+                Scriptable scope = cx.initStandardObjects();
+                Object list = new ArrayList<Object>();
+                Object w = wf.wrap(cx, scope, list, null);
+                assertSame(w, wf.wrap(cx, scope, list, null));
+                assertSame(w, wf.wrapNewObject(cx, scope, list));
+                assertNotSame(w, wf.wrap(cx, scope, new ArrayList<Object>(),
+                                         null));
+                // caches are per top-level scope
+                Scriptable other = cx.initStandardObjects();
+                assertNotSame(w, wf.wrap(cx, other, list, null));
+                return null;
+            }
+        });
+    }
+
+    public void testArraysAndClasses()
+    {
+        run(true, new ContextAction() {
+            public Object run(Context cx) {
+                WrapFactory wf = cx.getWrapFactory();
+                Scriptable scope = cx.initStandardObjects();
+                int[] array = new int[3];
+                Object w = wf.wrap(cx, scope, array, null);
+                assertTrue(w instanceof NativeJavaArray);
+                assertSame(w, wf.wrap(cx, scope, array, null));
+                Scriptable c = wf.wrapJavaClass(cx, scope, ArrayList.class);
+                assertTrue(c instanceof NativeJavaClass);
+                assertSame(c, wf.wrapJavaClass(cx, scope, ArrayList.class));
+                // a class wrapped as an object is not a NativeJavaClass
+                assertNotSame(c, wf.wrap(cx, scope, ArrayList.class, null));
+                return null;
+            }
+        });
+    }
+
+    public void testScripts()
+    {
+        run(true, new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Object l = cx.evaluateString(scope,
+                    "var l = new java.util.ArrayList(); l.add(l); l;",
+                    "test.js", 1, null);
+                assertSame(l, cx.getWrapFactory().wrap(cx, scope,
+                    Context.jsToJava(l, Object.class), null));
+                // List.get returns Object, a hint the constructor had not
+                Object e = cx.evaluateString(scope, "l.get(0)",
+                                             "test.js", 1, null);
+                assertNotSame(l, e);
+                assertSame(e, cx.evaluateString(scope, "l.get(0)",
+                                                "test.js", 1, null));
+                assertEquals(Boolean.TRUE, cx.evaluateString(scope,
+                    "l.get(0).equals(l)", "test.js", 1, null));
+                return null;
+            }
+        });
+    }
+
+    public void testStaticTypes()
+    {
+        run(true, new ContextAction() {
+            public Object run(Context cx) {
+                WrapFactory wf = cx.getWrapFactory();
+                Scriptable scope = cx.initStandardObjects();
+                Object list = new ArrayList<Object>();
+                Object w = wf.wrap(cx, scope, list, null);
+                assertSame(w, wf.wrap(cx, scope, list, ArrayList.class));
+                Object asList = wf.wrap(cx, scope, list, List.class);
+                assertNotSame(w, asList);
+                assertSame(asList, wf.wrap(cx, scope, list, List.class));
+                assertNotSame(asList, wf.wrap(cx, scope, list, Object.class));
+                return null;
+            }
+        });
+    }
+
+    public void testSerialization()
+    {
+        run(true, new ContextAction() {
+            public Object run(Context cx) {
+                WrapFactory wf = cx.getWrapFactory();
+                Scriptable scope = cx.initStandardObjects();
+                ArrayList<Object> list = new ArrayList<Object>();
+                list.add("x");
+                ScriptableObject.putProperty(scope, "l",
+                    wf.wrap(cx, scope, list, null));
+                Scriptable copy;
+                try {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    ObjectOutputStream out = new ObjectOutputStream(bytes);
+                    out.writeObject(scope);
+                    out.close();
+                    copy = (Scriptable)new ObjectInputStream(
+                        new ByteArrayInputStream(bytes.toByteArray()))
+                        .readObject();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                } catch (ClassNotFoundException e) {
+                    throw new RuntimeException(e);
+                }
+                // the copy caches wrappers again from scratch
+                Object l = ScriptableObject.getProperty(copy, "l");
+                Object copied = Context.jsToJava(l, Object.class);
+                assertEquals(list, copied);
+                Object w = wf.wrap(cx, copy, copied, null);
+                assertSame(w, wf.wrap(cx, copy, copied, null));
+                return null;
+            }
+        });
+    }
+
+    public void testDisabledByDefault()
+    {
+        assertFalse(new WrapFactory().isCachingWrappers());
+        run(false, new ContextAction() {
+            public Object run(Context cx) {
+                WrapFactory wf = cx.getWrapFactory();
+                Scriptable scope = cx.initStandardObjects();
+                Object list = new ArrayList<Object>();
+                assertNotSame(wf.wrap(cx, scope, list, null),
+                              wf.wrap(cx, scope, list, null));
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,126 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.xml.XMLLib;
+
+/**
+ * Threads sharing the XML objects of a top-level scope reuse the pooled
+ * parsers and transformers of its XML processor, which come back reset
+ * even after a parse failed half way through. The pool size can be set
+ * and the uses of the pools are counted.
+ */
+public class XmlProcessorPoolTest extends TestCase
+{
+    private static final String SOURCE =
+        "function run(i) {\n" +
+        "  var x = <a xmlns='urn:test' b={'<&\"' + i}><c>{i}</c></a>;\n" +
+        "  var error;\n" +
+        "  try { new XML('<a><b></a>'); } catch (e) { error = e.name; }\n" +
+        "  return [x.toXMLString(), x.@b, x.toString(), error].join('|');\n" +
+        "}\n" +
+        "run(-1);";
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 200;
+
+    public void testConcurrentReuse() throws Exception
+    {
+        final ContextFactory factory = new ContextFactory();
+        final Scriptable scope = (Scriptable)factory.call(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                cx.evaluateString(scope, SOURCE, "test.js", 1, null);
+                return scope;
+            }
+        });
+        XMLLib lib = XMLLib.extractFromScope(scope);
+        lib.setPoolSize(THREADS);
+        assertEquals(THREADS, lib.getPoolSize());
+        final String[] expected = (String[])factory.call(new ContextAction() {
+            public Object run(Context cx) {
+                return runAll(scope);
+            }
+        });
+        assertEquals("<a xmlns=\"urn:test\" b=\"&lt;&amp;&quot;0\">\n" +
+                     "  <c>0</c>\n" +
+                     "</a>|<&\"0|<a xmlns=\"urn:test\" b=\"&lt;&amp;&quot;0\">\n" +
+                     "  <c>0</c>\n" +
+                     "</a>|TypeError", expected[0]);
+
+        final Object[] results = new Object[THREADS];
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i != threads.length; ++i) {
+            final int thread = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    results[thread] = factory.call(new ContextAction() {
+                        public Object run(Context cx) {
+                            return runAll(scope);
+                        }
+                    });
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i != threads.length; ++i) {
+            threads[i].join();
+        }
+        for (int i = 0; i != results.length; ++i) {
+            String[] values = (String[])results[i];
+            assertNotNull(values);
+            for (int j = 0; j != ITERATIONS; ++j) {
+                assertEquals(expected[j], values[j]);
+            }
+        }
+        XMLLib.PoolStatistics[] pools = {
+            lib.getParserPoolStatistics(), lib.getTransformerPoolStatistics()
+        };
+        for (int i = 0; i != pools.length; ++i) {
+            XMLLib.PoolStatistics stats = pools[i];
+            // at most one instance per thread is ever created
+            assertTrue(stats.getCreatedCount() > 0);
+            assertTrue(stats.getCreatedCount() <= THREADS);
+            assertTrue(stats.getReusedCount() > stats.getCreatedCount());
+            assertEquals(0, stats.getDiscardedCount());
+            assertEquals(stats.getCreatedCount(), stats.getIdleCount());
+        }
+    }
+
+    public void testNoPool()
+    {
+        final ContextFactory factory = new ContextFactory();
+        factory.call(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                cx.evaluateString(scope, SOURCE, "test.js", 1, null);
+                XMLLib lib = XMLLib.extractFromScope(scope);
+                lib.setPoolSize(0);
+                runAll(scope);
+                XMLLib.PoolStatistics stats = lib.getParserPoolStatistics();
+                assertEquals(0, stats.getReusedCount());
+                assertEquals(0, stats.getIdleCount());
+                assertEquals(stats.getCreatedCount(),
+                             stats.getDiscardedCount());
+                return null;
+            }
+        });
+    }
+
+    private static String[] runAll(Scriptable scope)
+    {
+        String[] values = new String[ITERATIONS];
+        for (int i = 0; i != ITERATIONS; ++i) {
+            Object[] args = { Integer.valueOf(i) };
+            values[i] = Context.toString(
+                ScriptableObject.callMethod(scope, "run", args));
+        }
+        return values;
+    }
+}
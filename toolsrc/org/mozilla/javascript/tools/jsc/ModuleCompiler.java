@@ -0,0 +1,399 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-1999
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript.tools.jsc;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.*;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.mozilla.javascript.*;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.commonjs.module.provider.ModuleDependencies;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSource;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSourceProvider;
+import org.mozilla.javascript.commonjs.module.provider.PrecompiledModuleScriptProvider;
+import org.mozilla.javascript.commonjs.module.provider.UrlModuleSourceProvider;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+import org.mozilla.javascript.tools.ToolErrorReporter;
+
+/**
+ * Compiles a tree of CommonJS modules into one jar of classes.
+ * <p>
+ * Starting from the given module IDs, each module is looked up on the module
+ * path and compiled, and every <code>require("...")</code> call with a string
+ * literal argument adds the module it names.  The jar contains the generated
+ * classes and an index read by {@link PrecompiledModuleScriptProvider}, so
+ * that <code>require()</code> can run the modules without their sources.
+ * Modules only required with computed IDs must be listed explicitly.
+ */
+public class ModuleCompiler {
+
+    /**
+     * Main entry point.
+     */
+    public static void main(String args[])
+    {
+        ModuleCompiler main = new ModuleCompiler();
+        args = main.processOptions(args);
+        if (args == null) {
+            if (main.printHelp) {
+                System.out.println(ToolErrorReporter.getMessage(
+                    "msg.jsc.modules.usage", ModuleCompiler.class.getName()));
+                System.exit(0);
+            }
+            System.exit(1);
+        }
+        if (!main.reporter.hasReportedError()) {
+            main.processModules(args);
+        }
+        if (main.reporter.hasReportedError()) {
+            System.exit(1);
+        }
+    }
+
+    public ModuleCompiler()
+    {
+        reporter = new ToolErrorReporter(true);
+        compilerEnv = new CompilerEnvirons();
+        compilerEnv.setErrorReporter(reporter);
+        compiler = new ClassCompiler(compilerEnv);
+    }
+
+    /**
+     * Parse arguments, returning the IDs of the modules to start from.
+     */
+    public String[] processOptions(String args[])
+    {
+        targetPackage = "";
+        compilerEnv.setGenerateDebugInfo(false);
+        for (int i=0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                String[] result = new String[args.length - i];
+                System.arraycopy(args, i, result, 0, result.length);
+                return result;
+            }
+            if (arg.equals("-help") || arg.equals("-h")
+                || arg.equals("--help"))
+            {
+                printHelp = true;
+                return null;
+            }
+            try {
+                if (arg.equals("-version") && ++i < args.length) {
+                    compilerEnv.setLanguageVersion(Integer.parseInt(args[i]));
+                    continue;
+                }
+                if ((arg.equals("-opt") || arg.equals("-O"))
+                    && ++i < args.length)
+                {
+                    compilerEnv.setOptimizationLevel(
+                        Integer.parseInt(args[i]));
+                    continue;
+                }
+            } catch (NumberFormatException e) {
+                badUsage(args[i]);
+                return null;
+            }
+            if (arg.equals("-nosource")) {
+                compilerEnv.setGeneratingSource(false);
+                continue;
+            }
+            if (arg.equals("-debug") || arg.equals("-g")) {
+                compilerEnv.setGenerateDebugInfo(true);
+                continue;
+            }
+            if (arg.equals("-modules") && ++i < args.length) {
+                StringTokenizer st = new StringTokenizer(args[i],
+                                                         File.pathSeparator);
+                while (st.hasMoreTokens()) {
+                    String entry = st.nextToken();
+                    URI uri = toDirectoryUri(entry);
+                    if (uri == null) {
+                        addError("msg.couldnt.open", entry);
+                        return null;
+                    }
+                    modulePath.add(uri);
+                }
+                continue;
+            }
+            if (arg.equals("-package") && ++i < args.length) {
+                String pkg = args[i];
+                if (!isValidPackage(pkg)) {
+                    addError("msg.package.name", pkg);
+                    return null;
+                }
+                targetPackage = pkg;
+                continue;
+            }
+            if (arg.equals("-o") && ++i < args.length) {
+                jarFile = new File(args[i]);
+                continue;
+            }
+            badUsage(arg);
+            return null;
+        }
+        p(ToolErrorReporter.getMessage("msg.no.module"));
+        return null;
+    }
+
+    private static void badUsage(String s) {
+        System.err.println(ToolErrorReporter.getMessage(
+            "msg.jsc.bad.usage", ModuleCompiler.class.getName(), s));
+    }
+
+    /**
+     * Compile the given modules and the modules they require into the jar.
+     */
+    public void processModules(String[] moduleIds)
+    {
+        // parsing and code generation read the Context of the thread
+        ContextFactory.getGlobal().enterContext();
+        try {
+            compileModules(moduleIds);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private void compileModules(String[] moduleIds)
+    {
+        if (jarFile == null) {
+            addError("msg.no.jar", null);
+            return;
+        }
+        ModuleSourceProvider sourceProvider =
+            new UrlModuleSourceProvider(modulePath, null);
+        Set<String> entryIds = new HashSet<String>(Arrays.asList(moduleIds));
+        LinkedList<String> pending =
+            new LinkedList<String>(Arrays.asList(moduleIds));
+        Set<String> seen = new HashSet<String>(entryIds);
+        Map<String, String> index = new LinkedHashMap<String, String>();
+        Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+        Set<String> classNames = new HashSet<String>();
+
+        while (!pending.isEmpty()) {
+            String moduleId = pending.removeFirst();
+            String source;
+            String uri;
+            try {
+                ModuleSource moduleSource = sourceProvider.getModuleSource(
+                        moduleId, null, null);
+                if (moduleSource == null) {
+                    if (entryIds.contains(moduleId)) {
+                        addError("msg.module.not.found", moduleId);
+                        return;
+                    }
+                    // it may still be provided at run time
+                    reporter.warning(ToolErrorReporter.getMessage(
+                        "msg.module.not.found", moduleId), null, -1, null, -1);
+                    continue;
+                }
+                Reader reader = moduleSource.getReader();
+                try {
+                    source = Kit.readReader(reader);
+                } finally {
+                    reader.close();
+                }
+                uri = moduleSource.getUri();
+            } catch (Exception ex) {
+                addFormatedError(ex.toString());
+                return;
+            }
+
+            AstRoot ast = new Parser(compilerEnv, reporter)
+                    .parse(source, uri, 1);
+            if (reporter.hasReportedError()) {
+                return;
+            }
+            for (String id : ModuleDependencies.getRequiredIds(ast,
+                                                               moduleId)) {
+                if (seen.add(id)) {
+                    pending.add(id);
+                }
+            }
+
+            // compile the tree the dependencies were read from instead of
+            // parsing the source again
+            String className = getClassName(moduleId, classNames);
+            Object[] compiled = compiler.compileToClassFiles(ast, className);
+            if (compiled == null || compiled.length == 0) {
+                return;
+            }
+            for (int j = 0; j != compiled.length; j += 2) {
+                classes.put((String)compiled[j], (byte[])compiled[j + 1]);
+            }
+            index.put(moduleId, uri == null ? className
+                                            : className + " " + uri);
+        }
+
+        try {
+            writeJar(classes, index);
+        } catch (IOException ioe) {
+            addFormatedError(ioe.toString());
+        }
+    }
+
+    private void writeJar(Map<String, byte[]> classes,
+                          Map<String, String> index)
+        throws IOException
+    {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+        JarOutputStream out = new JarOutputStream(
+                new FileOutputStream(jarFile), manifest);
+        try {
+            for (Map.Entry<String, byte[]> e : classes.entrySet()) {
+                out.putNextEntry(new ZipEntry(
+                        e.getKey().replace('.', '/') + ".class"));
+                out.write(e.getValue());
+                out.closeEntry();
+            }
+            Properties properties = new Properties();
+            properties.putAll(index);
+            out.putNextEntry(new ZipEntry(
+                    PrecompiledModuleScriptProvider.DEFAULT_INDEX));
+            properties.store(out, null);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Derive a class name from the module ID that is unique in the jar.
+     */
+    private String getClassName(String moduleId, Set<String> classNames)
+    {
+        StringBuilder sb = new StringBuilder();
+        if (targetPackage.length() != 0) {
+            sb.append(targetPackage).append('.');
+        }
+        if (moduleId.length() == 0
+            || !Character.isJavaIdentifierStart(moduleId.charAt(0)))
+        {
+            sb.append('_');
+        }
+        for (int i = 0; i < moduleId.length(); i++) {
+            char c = moduleId.charAt(i);
+            sb.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        String base = sb.toString();
+        String name = base;
+        for (int n = 1; !classNames.add(name); n++) {
+            name = base + "_" + n;
+        }
+        return name;
+    }
+
+    private static URI toDirectoryUri(String entry)
+    {
+        File dir = new File(entry);
+        if (dir.isDirectory()) {
+            return dir.getAbsoluteFile().toURI();
+        }
+        try {
+            URI uri = new URI(entry);
+            if (uri.getScheme() == null) {
+                return null;
+            }
+            return entry.endsWith("/") ? uri : new URI(entry + "/");
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private static boolean isValidPackage(String pkg)
+    {
+        StringTokenizer st = new StringTokenizer(pkg, ".", true);
+        boolean expectPart = true;
+        while (st.hasMoreTokens()) {
+            String part = st.nextToken();
+            if (expectPart) {
+                if (!Character.isJavaIdentifierStart(part.charAt(0))) {
+                    return false;
+                }
+                for (int i = 1; i < part.length(); i++) {
+                    if (!Character.isJavaIdentifierPart(part.charAt(i))) {
+                        return false;
+                    }
+                }
+            }
+            expectPart = !expectPart;
+        }
+        return pkg.length() != 0 && !expectPart;
+    }
+
+    private static void p(String s) {
+        System.out.println(s);
+    }
+
+    private void addError(String messageId, String arg)
+    {
+        String msg;
+        if (arg == null) {
+            msg = ToolErrorReporter.getMessage(messageId);
+        } else {
+            msg = ToolErrorReporter.getMessage(messageId, arg);
+        }
+        addFormatedError(msg);
+    }
+
+    private void addFormatedError(String message)
+    {
+        reporter.error(message, null, -1, null, -1);
+    }
+
+    /**
+     * Return true if an error was reported while compiling.
+     */
+    public boolean hasReportedError()
+    {
+        return reporter.hasReportedError();
+    }
+
+    private boolean printHelp;
+    private ToolErrorReporter reporter;
+    private CompilerEnvirons compilerEnv;
+    private ClassCompiler compiler;
+    private List<URI> modulePath = new ArrayList<URI>();
+    private String targetPackage;
+    private File jarFile;
+}
@@ -48,12 +48,12 @@ class XMLCtor extends IdFunctionObject
     private static final Object XMLCTOR_TAG = "XMLCtor";
 
     private XmlProcessor options;
-//    private XMLLibImpl lib;
+    private XMLLibImpl lib;
 
     XMLCtor(XML xml, Object tag, int id, int arity)
     {
         super(xml, tag, id, arity);
-//        this.lib = xml.lib;
+        this.lib = xml.getLib();
         this.options = xml.getProcessor();
         activatePrototypeMap(MAX_FUNCTION_ID);
     }
@@ -210,7 +210,8 @@ class XMLCtor extends IdFunctionObject
         Id_defaultSettings              = 1,
         Id_settings                     = 2,
         Id_setSettings                  = 3,
-        MAX_FUNCTION_ID                 = 3;
+        Id_stream                       = 4,
+        MAX_FUNCTION_ID                 = 4;
 
     @Override
     protected int findPrototypeId(String s)
@@ -219,7 +220,8 @@ class XMLCtor extends IdFunctionObject
 // #generated# Last update: 2007-08-20 09:01:10 EDT
         L0: { id = 0; String X = null;
             int s_length = s.length();
-            if (s_length==8) { X="settings";id=Id_settings; }
+            if (s_length==6) { X="stream";id=Id_stream; }
+            else if (s_length==8) { X="settings";id=Id_settings; }
             else if (s_length==11) { X="setSettings";id=Id_setSettings; }
             else if (s_length==15) { X="defaultSettings";id=Id_defaultSettings; }
             if (X!=null && X!=s && !X.equals(s)) id = 0;
@@ -239,6 +241,7 @@ class XMLCtor extends IdFunctionObject
           case Id_defaultSettings:  arity=0; s="defaultSettings";  break;
           case Id_settings:         arity=0; s="settings";         break;
           case Id_setSettings:      arity=1; s="setSettings";      break;
+          case Id_stream:           arity=2; s="stream";           break;
           default: throw new IllegalArgumentException(String.valueOf(id));
         }
         initPrototypeMethod(XMLCTOR_TAG, id, s, arity);
@@ -275,10 +278,79 @@ class XMLCtor extends IdFunctionObject
             }
             return Undefined.instance;
           }
+          case Id_stream: {
+            return stream(cx, scope, args);
+          }
         }
         throw new IllegalArgumentException(String.valueOf(id));
     }
 
+    /**
+     * Implements the <code>XML.stream(source, callback)</code> extension.
+     * The source is an XML string or a wrapped java.io.Reader,
+     * java.io.InputStream or java.io.File. Each child element of the
+     * document element is converted to an XML object and passed to the
+     * callback together with its index; returning false from the callback
+     * stops parsing. Returns the number of elements passed to the callback.
+     */
+    private Object stream(final Context cx, final Scriptable scope,
+                          Object[] args)
+    {
+        if (args.length < 2 || !(args[1] instanceof Function)) {
+            throw ScriptRuntime.typeError0("msg.XML.stream.args");
+        }
+        final Function callback = (Function)args[1];
+        Object source = args[0];
+        if (source instanceof Wrapper) {
+            source = ((Wrapper)source).unwrap();
+        }
+        java.io.Reader reader;
+        try {
+            if (source instanceof java.io.Reader) {
+                reader = (java.io.Reader)source;
+            } else if (source instanceof java.io.InputStream) {
+                reader = new java.io.InputStreamReader(
+                    (java.io.InputStream)source, "UTF-8");
+            } else if (source instanceof java.io.File) {
+                reader = new java.io.InputStreamReader(
+                    new java.io.FileInputStream((java.io.File)source),
+                    "UTF-8");
+            } else {
+                reader = new java.io.StringReader(
+                    ScriptRuntime.toString(source));
+            }
+        } catch (java.io.IOException e) {
+            throw Context.throwAsScriptRuntimeEx(e);
+        }
+
+        XmlStreamParser.ElementHandler handler =
+            new XmlStreamParser.ElementHandler() {
+                public boolean element(org.w3c.dom.Element element, int index) {
+                    XML xml = lib.newXML(XmlNode.createElementFromNode(element));
+                    Object result = callback.call(cx, scope, scope,
+                        new Object[] { xml, ScriptRuntime.wrapInt(index) });
+                    return result != Boolean.FALSE;
+                }
+            };
+        try {
+            int count = new XmlStreamParser(options).parse(reader, handler);
+            return ScriptRuntime.wrapInt(count);
+        } catch (javax.xml.stream.XMLStreamException e) {
+            throw ScriptRuntime.typeError1("msg.XML.stream.parse",
+                                           e.getMessage());
+        } finally {
+            if (!(source instanceof java.io.Reader)
+                && !(source instanceof java.io.InputStream))
+            {
+                try {
+                    reader.close();
+                } catch (java.io.IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
     /**
         hasInstance for XML objects works differently than other objects; see ECMA357 13.4.3.10.
      */
@@ -113,6 +113,26 @@ public final class XMLLibImpl extends XMLLib implements Serializable {
         return options.getPrettyIndent();
     }
 
+    @Override
+    public void setPoolSize(int size) {
+        options.setPoolSize(size);
+    }
+
+    @Override
+    public int getPoolSize() {
+        return options.getPoolSize();
+    }
+
+    @Override
+    public PoolStatistics getParserPoolStatistics() {
+        return options.getDocumentBuilderPoolStatistics();
+    }
+
+    @Override
+    public PoolStatistics getTransformerPoolStatistics() {
+        return options.getTransformerPoolStatistics();
+    }
+
 
     private Scriptable globalScope;
 
@@ -45,8 +45,12 @@ import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.mozilla.javascript.*;
+import org.mozilla.javascript.xml.XMLLib;
 
 //    Disambiguate from org.mozilla.javascript.Node
 import org.w3c.dom.Node;
@@ -56,7 +60,28 @@ import org.xml.sax.SAXParseException;
 class XmlProcessor implements Serializable {
     
     private static final long serialVersionUID = 6903514433204808713L;
-    
+
+    /**
+     * Default number of idle DocumentBuilder and Transformer instances kept
+     * by each processor. Can be overridden with the system property
+     * {@code rhino.xml.poolSize}; a size of 0 disables pooling. The size of
+     * one processor is set through {@link XMLLib#setPoolSize(int)}.
+     */
+    private static final int DEFAULT_POOL_SIZE = defaultPoolSize();
+
+    private static int defaultPoolSize() {
+        int size = Runtime.getRuntime().availableProcessors() * 2;
+        String prop = System.getProperty("rhino.xml.poolSize");
+        if (prop != null) {
+            try {
+                size = Integer.parseInt(prop.trim());
+            } catch (NumberFormatException e) {
+                // ignore malformed value and use the default
+            }
+        }
+        return Math.max(size, 0);
+    }
+
     private boolean ignoreComments;
     private boolean ignoreProcessingInstructions;
     private boolean ignoreWhitespace;
@@ -65,7 +90,10 @@ class XmlProcessor implements Serializable {
 
     private transient javax.xml.parsers.DocumentBuilderFactory dom;
     private transient javax.xml.transform.TransformerFactory xform;
-    private transient DocumentBuilder documentBuilder;
+    // Replaced when the size is set, not serialized
+    private transient volatile Pool<DocumentBuilder> documentBuilderPool;
+    private transient volatile Pool<javax.xml.transform.Transformer>
+        transformerPool;
     private RhinoSAXErrorHandler errorHandler = new RhinoSAXErrorHandler();
 
     private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
@@ -74,6 +102,75 @@ class XmlProcessor implements Serializable {
         this.dom.setNamespaceAware(true);
         this.dom.setIgnoringComments(false);
         this.xform = javax.xml.transform.TransformerFactory.newInstance();
+        initPools(DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Bounded, lock-free pool of objects which are expensive to create and
+     * not thread-safe, such as DocumentBuilder and Transformer. Objects are
+     * handed out to one thread at a time; when the pool is full, returned
+     * objects are simply dropped. Counters are kept for monitoring.
+     */
+    static final class Pool<T> {
+        private final ConcurrentLinkedQueue<T> idle =
+            new ConcurrentLinkedQueue<T>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+        private final int maxIdle;
+
+        private final AtomicLong created = new AtomicLong();
+        private final AtomicLong reused = new AtomicLong();
+        private final AtomicLong discarded = new AtomicLong();
+
+        Pool(int maxIdle) {
+            this.maxIdle = maxIdle;
+        }
+
+        /**
+         * Returns a pooled object, or null if the caller has to create one.
+         */
+        T poll() {
+            T result = idle.poll();
+            if (result != null) {
+                idleCount.decrementAndGet();
+                reused.incrementAndGet();
+            } else {
+                created.incrementAndGet();
+            }
+            return result;
+        }
+
+        /**
+         * Offers an object which has already been reset back to the pool.
+         */
+        void offer(T object) {
+            for (;;) {
+                int count = idleCount.get();
+                if (count >= maxIdle) {
+                    discarded.incrementAndGet();
+                    return;
+                }
+                if (idleCount.compareAndSet(count, count + 1)) {
+                    idle.offer(object);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Counts an object which could not be reset for reuse.
+         */
+        void discard() {
+            discarded.incrementAndGet();
+        }
+
+        int getMaxIdle() {
+            return maxIdle;
+        }
+
+        XMLLib.PoolStatistics getStatistics() {
+            return new XMLLib.PoolStatistics(created.get(), reused.get(),
+                                             discarded.get(), idleCount.get());
+        }
     }
     
     private static class RhinoSAXErrorHandler implements ErrorHandler, Serializable {
@@ -104,6 +201,33 @@ class XmlProcessor implements Serializable {
         this.dom.setNamespaceAware(true);
         this.dom.setIgnoringComments(false);
         this.xform = javax.xml.transform.TransformerFactory.newInstance();
+        initPools(DEFAULT_POOL_SIZE);
+    }
+
+    private void initPools(int size) {
+        this.documentBuilderPool = new Pool<DocumentBuilder>(size);
+        this.transformerPool = new Pool<javax.xml.transform.Transformer>(size);
+    }
+
+    /**
+     * Changes the number of idle DocumentBuilder and Transformer instances
+     * kept by this processor. Instances already pooled are discarded.
+     */
+    final void setPoolSize(int size) {
+        if (size < 0) throw new IllegalArgumentException(String.valueOf(size));
+        initPools(size);
+    }
+
+    final int getPoolSize() {
+        return documentBuilderPool.getMaxIdle();
+    }
+
+    final XMLLib.PoolStatistics getDocumentBuilderPoolStatistics() {
+        return documentBuilderPool.getStatistics();
+    }
+
+    final XMLLib.PoolStatistics getTransformerPoolStatistics() {
+        return transformerPool.getStatistics();
     }
 
     final void setDefault() {
@@ -175,31 +299,56 @@ class XmlProcessor implements Serializable {
         return dom;
     }
     
-    private synchronized DocumentBuilder getDocumentBuilderFromPool()
+    private DocumentBuilder getDocumentBuilderFromPool()
         throws javax.xml.parsers.ParserConfigurationException
     {
-        DocumentBuilder result;
-        if (documentBuilder == null) {
+        DocumentBuilder result = documentBuilderPool.poll();
+        if (result == null) {
             javax.xml.parsers.DocumentBuilderFactory factory = getDomFactory();
-            result = factory.newDocumentBuilder();
-        } else {
-            result = documentBuilder;
-            documentBuilder = null;
+            // DocumentBuilderFactory is not required to be thread-safe
+            synchronized (factory) {
+                result = factory.newDocumentBuilder();
+            }
         }
         result.setErrorHandler(errorHandler);
         return result;
     }
-        
-    private synchronized void returnDocumentBuilderToPool(DocumentBuilder db) {
-        if (documentBuilder == null) {
-            try {
-                db.reset();
-                documentBuilder = db;
-            } catch (UnsupportedOperationException e) {
-                // document builders that don't support reset() can't
-                // be pooled
+
+    private void returnDocumentBuilderToPool(DocumentBuilder db) {
+        try {
+            db.reset();
+            documentBuilderPool.offer(db);
+        } catch (UnsupportedOperationException e) {
+            // document builders that don't support reset() can't
+            // be pooled
+            documentBuilderPool.discard();
+        }
+    }
+
+    private javax.xml.transform.Transformer getTransformerFromPool()
+        throws javax.xml.transform.TransformerConfigurationException
+    {
+        javax.xml.transform.Transformer result = transformerPool.poll();
+        if (result == null) {
+            // TransformerFactory is not required to be thread-safe
+            synchronized (xform) {
+                result = xform.newTransformer();
             }
         }
+        result.setOutputProperty(javax.xml.transform.OutputKeys.OMIT_XML_DECLARATION, "yes");
+        result.setOutputProperty(javax.xml.transform.OutputKeys.INDENT, "no");
+        result.setOutputProperty(javax.xml.transform.OutputKeys.METHOD, "xml");
+        return result;
+    }
+
+    private void returnTransformerToPool(javax.xml.transform.Transformer t) {
+        try {
+            t.reset();
+            transformerPool.offer(t);
+        } catch (UnsupportedOperationException e) {
+            // transformers that don't support reset() can't be pooled
+            transformerPool.discard();
+        }
     }
 
     private void addProcessingInstructionsTo(List<Node> list, Node node) {
@@ -321,11 +470,9 @@ class XmlProcessor implements Serializable {
         javax.xml.transform.dom.DOMSource source = new javax.xml.transform.dom.DOMSource(node);
         java.io.StringWriter writer = new java.io.StringWriter();
         javax.xml.transform.stream.StreamResult result = new javax.xml.transform.stream.StreamResult(writer);
+        javax.xml.transform.Transformer transformer = null;
         try {
-            javax.xml.transform.Transformer transformer = xform.newTransformer();
-            transformer.setOutputProperty(javax.xml.transform.OutputKeys.OMIT_XML_DECLARATION, "yes");
-            transformer.setOutputProperty(javax.xml.transform.OutputKeys.INDENT, "no");
-            transformer.setOutputProperty(javax.xml.transform.OutputKeys.METHOD, "xml");
+            transformer = getTransformerFromPool();
             transformer.transform(source, result);
         } catch (javax.xml.transform.TransformerConfigurationException ex) {
             //    TODO    How to handle these runtime errors?
@@ -333,6 +480,9 @@ class XmlProcessor implements Serializable {
         } catch (javax.xml.transform.TransformerException ex) {
             //    TODO    How to handle these runtime errors?
             throw new RuntimeException(ex);
+        } finally {
+            if (transformer != null)
+                returnTransformerToPool(transformer);
         }
         return toXmlNewlines(writer.toString());
     }
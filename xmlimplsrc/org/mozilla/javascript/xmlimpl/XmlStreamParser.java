@@ -0,0 +1,250 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino DOM-only E4X implementation.
+ *
+ * The Initial Developer of the Original Code is
+ * David P. Caldwell.
+ * Portions created by David P. Caldwell are Copyright (C)
+ * 2007 David P. Caldwell. All Rights Reserved.
+ *
+ *
+ * Contributor(s):
+ *   David P. Caldwell <inonit@inonit.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript.xmlimpl;
+
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ *  Streaming parser which reads a document with StAX and hands out the
+ *  children of the document element one at a time. Only the element
+ *  currently being delivered is kept in memory as a DOM subtree, so
+ *  documents much larger than the heap can be processed as long as each
+ *  top-level record is small.
+ */
+class XmlStreamParser {
+
+    /**
+     *  Receives the top-level elements of a streamed document.
+     */
+    interface ElementHandler {
+        /**
+         *  @return false to stop parsing, true to continue
+         */
+        boolean element(Element element, int index);
+    }
+
+    private static final String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+
+    private static XMLInputFactory factory;
+
+    private final XmlProcessor processor;
+
+    XmlStreamParser(XmlProcessor processor) {
+        this.processor = processor;
+    }
+
+    private static synchronized XMLInputFactory getFactory() {
+        if (factory == null) {
+            XMLInputFactory f = XMLInputFactory.newInstance();
+            f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            f.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            // Do not resolve external entities while streaming untrusted input
+            f.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            factory = f;
+        }
+        return factory;
+    }
+
+    /**
+     *  Parses the document read from <code>in</code> and passes every child
+     *  element of the document element to <code>handler</code>. The
+     *  namespaces declared by the document element are declared again on
+     *  each child element, so that its prefixes stay bound once it is
+     *  detached from the document.
+     *
+     *  @return the number of elements delivered
+     */
+    int parse(Reader in, ElementHandler handler) throws XMLStreamException {
+        XMLStreamReader reader;
+        synchronized (XmlStreamParser.class) {
+            reader = getFactory().createXMLStreamReader(in);
+        }
+        try {
+            Map<String,String> inherited = new LinkedHashMap<String,String>();
+            int depth = 0;
+            int count = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (depth == 0) {
+                        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                            String name =
+                                xmlnsName(reader.getNamespacePrefix(i));
+                            inherited.put(name, reader.getNamespaceURI(i));
+                        }
+                    } else if (depth == 1) {
+                        Element e = readElement(reader, inherited);
+                        if (!handler.element(e, count++)) {
+                            break;
+                        }
+                        // readElement consumed the matching END_ELEMENT
+                        continue;
+                    }
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     *  Builds a DOM element from the START_ELEMENT the reader is positioned
+     *  on up to and including its END_ELEMENT, honoring the processor's
+     *  ignoreComments, ignoreProcessingInstructions and ignoreWhitespace
+     *  settings the same way {@link XmlProcessor#toXml} does. The
+     *  <code>inherited</code> namespace declarations, keyed by attribute
+     *  name, are added to the element unless it overrides them.
+     */
+    private Element readElement(XMLStreamReader reader,
+                                Map<String,String> inherited)
+        throws XMLStreamException
+    {
+        Document document = processor.newDocument();
+        Element root = createElement(document, reader);
+        for (Map.Entry<String,String> ns : inherited.entrySet()) {
+            String name = ns.getKey();
+            String uri = ns.getValue();
+            // an undeclared default namespace needs no declaration
+            if (uri == null || uri.length() == 0) continue;
+            if (!root.hasAttributeNS(XMLNS_URI, localName(name))) {
+                root.setAttributeNS(XMLNS_URI, name, uri);
+            }
+        }
+        Node current = root;
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            switch (event) {
+              case XMLStreamConstants.START_ELEMENT: {
+                Element e = createElement(document, reader);
+                current.appendChild(e);
+                current = e;
+                depth++;
+                break;
+              }
+              case XMLStreamConstants.END_ELEMENT:
+                current = current.getParentNode();
+                depth--;
+                break;
+              case XMLStreamConstants.CHARACTERS:
+              case XMLStreamConstants.CDATA:
+              case XMLStreamConstants.SPACE: {
+                String text = reader.getText();
+                if (processor.isIgnoreWhitespace()) {
+                    text = text.trim();
+                    if (text.length() == 0) break;
+                }
+                current.appendChild(document.createTextNode(text));
+                break;
+              }
+              case XMLStreamConstants.COMMENT:
+                if (!processor.isIgnoreComments()) {
+                    current.appendChild(
+                        document.createComment(reader.getText()));
+                }
+                break;
+              case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                if (!processor.isIgnoreProcessingInstructions()) {
+                    current.appendChild(
+                        document.createProcessingInstruction(
+                            reader.getPITarget(), reader.getPIData()));
+                }
+                break;
+              case XMLStreamConstants.ENTITY_REFERENCE:
+                current.appendChild(document.createTextNode(reader.getText()));
+                break;
+              default:
+                break;
+            }
+        }
+        document.appendChild(root);
+        return root;
+    }
+
+    private static Element createElement(Document document,
+                                         XMLStreamReader reader)
+    {
+        Element e = document.createElementNS(
+            emptyToNull(reader.getNamespaceURI()),
+            qualify(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            e.setAttributeNS(XMLNS_URI,
+                             xmlnsName(reader.getNamespacePrefix(i)),
+                             reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            e.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)),
+                             qualify(reader.getAttributePrefix(i),
+                                     reader.getAttributeLocalName(i)),
+                             reader.getAttributeValue(i));
+        }
+        return e;
+    }
+
+    private static String xmlnsName(String prefix) {
+        return (prefix == null || prefix.length() == 0)
+            ? "xmlns" : "xmlns:" + prefix;
+    }
+
+    private static String localName(String qualifiedName) {
+        return qualifiedName.substring(qualifiedName.indexOf(':') + 1);
+    }
+
+    private static String qualify(String prefix, String localName) {
+        return (prefix == null || prefix.length() == 0)
+            ? localName : prefix + ":" + localName;
+    }
+
+    private static String emptyToNull(String s) {
+        return (s == null || s.length() == 0) ? null : s;
+    }
+}